@@ -1,10 +1,14 @@
 package jp.co.disney.spplogin;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.http.HttpHost;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
@@ -12,13 +16,17 @@ import org.apache.http.impl.client.ProxyAuthenticationStrategy;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.embedded.EmbeddedServletContainerCustomizer;
 import org.springframework.boot.context.embedded.ErrorPage;
+import org.springframework.boot.context.embedded.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Scope;
 import org.springframework.context.annotation.ScopedProxyMode;
+import org.springframework.core.Ordered;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.web.client.ResponseErrorHandler;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.context.WebApplicationContext;
@@ -26,13 +34,21 @@ import org.springframework.web.servlet.HandlerInterceptor;
 
 import jp.co.disney.spplogin.exception.ApplicationErrors;
 import jp.co.disney.spplogin.exception.ApplicationException;
+import jp.co.disney.spplogin.filter.ConcurrencyLimitFilter;
+import jp.co.disney.spplogin.filter.LoginAdmissionFilter;
+import jp.co.disney.spplogin.filter.PriorityGateFilter;
+import jp.co.disney.spplogin.filter.ServerTimingFilter;
 import jp.co.disney.spplogin.interceptor.MaintenanceInterceptor;
 import jp.co.disney.spplogin.interceptor.UserAgentInterceptor;
+import jp.co.disney.spplogin.metrics.CoreWebApiTimingInterceptor;
+import jp.co.disney.spplogin.metrics.LatencyHistograms;
+import jp.co.disney.spplogin.pool.MeteredPoolingHttpClientConnectionManager;
 import jp.co.disney.spplogin.web.model.Guest;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 @Configuration
+@EnableScheduling
 public class AppConfig {
 	@Value("${spplogin.core-webapi.proxy.enable}")
 	private boolean proxyEnable;
@@ -46,6 +62,20 @@ public class AppConfig {
     private String proxyUser;
 	@Value("${spplogin.core-webapi.proxy.password}")
     private String proxyPass;
+	@Value("${spplogin.core-webapi.cor-901.path}")
+	private String cor901path;
+	@Value("${spplogin.core-webapi.cor-112.path}")
+	private String cor112path;
+	@Value("${spplogin.core-webapi.cor-001.path}")
+	private String cor001path;
+	@Value("${spplogin.core-webapi.pool.max-total}")
+	private int poolMaxTotal;
+	@Value("${spplogin.core-webapi.pool.max-per-route}")
+	private int poolMaxPerRoute;
+	@Value("${spplogin.scheduler.pool-size}")
+	private int schedulerPoolSize;
+	@Value("${spplogin.health.timeout-millis}")
+	private int healthTimeoutMillis;
     
 	@Bean
     HandlerInterceptor maintenanceInterceptor(){
@@ -53,10 +83,67 @@ public class AppConfig {
 	}
 
     @Bean
-	HandlerInterceptor userAgentInterceptor(){
+	UserAgentInterceptor userAgentInterceptor(){
     	return new UserAgentInterceptor();
 	}
     
+    /**
+     * ログインの流量制限。セッション（Redis）にアクセスする前に判定するため、SessionRepositoryFilterより先に実行する。
+     * 新規登録後のログイン（POST /Regist?login）も認証認可APIを呼び出すため対象とする。
+     * @param filter
+     * @return
+     */
+    @Bean
+    public FilterRegistrationBean loginAdmissionFilterRegistration(LoginAdmissionFilter filter) {
+    	final FilterRegistrationBean registration = new FilterRegistrationBean(filter);
+    	registration.addUrlPatterns("/Login", "/Regist");
+    	registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 20);
+    	return registration;
+    }
+    
+    /**
+     * 優先度付きの同時実行数制限。全リクエストが対象。
+     * 流量制限（LoginAdmissionFilter）、同時実行数制限（ConcurrencyLimitFilter）で拒否されるリクエストが
+     * 実行枠を待たないよう、それらの後に実行する。
+     * @param filter
+     * @return
+     */
+    @Bean
+    public FilterRegistrationBean priorityGateFilterRegistration(PriorityGateFilter filter) {
+    	final FilterRegistrationBean registration = new FilterRegistrationBean(filter);
+    	registration.addUrlPatterns("/*");
+    	registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 25);
+    	return registration;
+    }
+    
+    /**
+     * ログイン／新規登録画面の同時実行数制限。流量制限（LoginAdmissionFilter）の後に実行する。
+     * 上限超過時に実行枠（PriorityGateFilter）を待たずに即時に拒否し、
+     * また実行枠の待ち時間も応答時間として上限の調整に反映するため、PriorityGateFilterより先に実行する。
+     * @param filter
+     * @return
+     */
+    @Bean
+    public FilterRegistrationBean concurrencyLimitFilterRegistration(ConcurrencyLimitFilter filter) {
+    	final FilterRegistrationBean registration = new FilterRegistrationBean(filter);
+    	registration.addUrlPatterns("/Login/*", "/Regist/*");
+    	registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 22);
+    	return registration;
+    }
+    
+    /**
+     * ログイン／新規登録画面の処理時間の内訳。セッションの保存を含めるため、SessionRepositoryFilterより先に実行する。
+     * @param filter
+     * @return
+     */
+    @Bean
+    public FilterRegistrationBean serverTimingFilterRegistration(ServerTimingFilter filter) {
+    	final FilterRegistrationBean registration = new FilterRegistrationBean(filter);
+    	registration.addUrlPatterns("/Login", "/Login/*", "/Regist", "/Regist/*");
+    	registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 35);
+    	return registration;
+    }
+    
     @Bean
     public EmbeddedServletContainerCustomizer containerCustomizer() {
     	return (container -> {
@@ -74,21 +161,45 @@ public class AppConfig {
     	return new Guest();
     }
     
+    /**
+     * スケジュール実行用スレッドプール。
+     * 連携キー棚卸しなど時間のかかる処理が他のスケジュール処理を遅延させないよう複数スレッドとする。
+     * @return
+     */
     @Bean
-    public RestTemplate restTemplate() {
-		
-		HttpClientBuilder clientBuilder = HttpClientBuilder.create();
-		
-		if(proxyEnable) {
-			CredentialsProvider credsProvider = new BasicCredentialsProvider();
-			credsProvider.setCredentials(new AuthScope(proxyHost, proxyPort), new UsernamePasswordCredentials(proxyUser, proxyPass));
-			clientBuilder.setProxy(new HttpHost(proxyHost, proxyPort, proxySchema));
-			clientBuilder.setDefaultCredentialsProvider(credsProvider);
-			clientBuilder.setProxyAuthenticationStrategy(new ProxyAuthenticationStrategy());
-		}
+    public ThreadPoolTaskScheduler taskScheduler() {
+    	final ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    	scheduler.setPoolSize(schedulerPoolSize);
+    	scheduler.setThreadNamePrefix("scheduler-");
+    	return scheduler;
+    }
+    
+    /**
+     * Core WebAPI呼び出し用のコネクションプール。使用状況はPoolSaturationMetricsで公開する。
+     * @param latencyHistograms
+     * @return
+     */
+    @Bean
+    public MeteredPoolingHttpClientConnectionManager coreWebApiConnectionManager(LatencyHistograms latencyHistograms) {
+    	final MeteredPoolingHttpClientConnectionManager connectionManager =
+    			new MeteredPoolingHttpClientConnectionManager("core-http", latencyHistograms);
+    	connectionManager.setMaxTotal(poolMaxTotal);
+    	connectionManager.setDefaultMaxPerRoute(poolMaxPerRoute);
+    	return connectionManager;
+    }
+    
+    /**
+     * Core WebAPI呼び出し用。応答時間はAPIID毎にLatencyHistogramsに記録する。
+     * @param latencyHistograms
+     * @param connectionManager
+     * @return
+     */
+    @Bean
+    public RestTemplate restTemplate(LatencyHistograms latencyHistograms,
+    		MeteredPoolingHttpClientConnectionManager connectionManager) {
 		
-		clientBuilder.disableCookieManagement();
-		clientBuilder.disableRedirectHandling();
+		HttpClientBuilder clientBuilder = coreWebApiClientBuilder();
+		clientBuilder.setConnectionManager(connectionManager);
 		
 		CloseableHttpClient client = clientBuilder.build();
 		HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory();
@@ -96,6 +207,12 @@ public class AppConfig {
 	    
 		final RestTemplate restTemplate = new RestTemplate(factory);
 		
+		final Map<String, String> apiIds = new HashMap<>();
+		apiIds.put(cor901path, "COR-901");
+		apiIds.put(cor112path, "COR-112");
+		apiIds.put(cor001path, "COR-001");
+		restTemplate.setInterceptors(Collections.singletonList(new CoreWebApiTimingInterceptor(latencyHistograms, apiIds)));
+		
 	    restTemplate.setErrorHandler(new ResponseErrorHandler(){
 
 			@Override
@@ -118,4 +235,46 @@ public class AppConfig {
 	    
 	    return restTemplate;
     }
+    
+    /**
+     * <pre>
+     * Core WebAPIのヘルスチェック用。
+     * Core WebAPI呼び出し用のコネクションプール、応答時間の計測、エラーハンドラを経由せず、
+     * 接続、応答待ちはspplogin.health.timeout-millisで打ち切る。
+     * </pre>
+     * @return
+     */
+    @Bean
+    public CloseableHttpClient coreWebApiHealthHttpClient() {
+    	final RequestConfig requestConfig = RequestConfig.custom()
+    			.setConnectTimeout(healthTimeoutMillis)
+    			.setSocketTimeout(healthTimeoutMillis)
+    			.setConnectionRequestTimeout(healthTimeoutMillis)
+    			.build();
+    	return coreWebApiClientBuilder()
+    			.setDefaultRequestConfig(requestConfig)
+    			.setMaxConnTotal(1)
+    			.setMaxConnPerRoute(1)
+    			.build();
+    }
+    
+    /**
+     * Core WebAPI呼び出し用のHttpClientの共通設定（プロキシ、Cookie、リダイレクト）
+     * @return
+     */
+    private HttpClientBuilder coreWebApiClientBuilder() {
+		HttpClientBuilder clientBuilder = HttpClientBuilder.create();
+		
+		if(proxyEnable) {
+			CredentialsProvider credsProvider = new BasicCredentialsProvider();
+			credsProvider.setCredentials(new AuthScope(proxyHost, proxyPort), new UsernamePasswordCredentials(proxyUser, proxyPass));
+			clientBuilder.setProxy(new HttpHost(proxyHost, proxyPort, proxySchema));
+			clientBuilder.setDefaultCredentialsProvider(credsProvider);
+			clientBuilder.setProxyAuthenticationStrategy(new ProxyAuthenticationStrategy());
+		}
+		
+		clientBuilder.disableCookieManagement();
+		clientBuilder.disableRedirectHandling();
+		return clientBuilder;
+    }
 }
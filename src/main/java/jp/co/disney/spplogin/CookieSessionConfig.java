@@ -0,0 +1,37 @@
+package jp.co.disney.spplogin;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.session.config.annotation.web.http.EnableSpringHttpSession;
+
+import jp.co.disney.spplogin.session.CookieSessionCodec;
+import jp.co.disney.spplogin.session.CookieSessionRepository;
+
+/**
+ * <pre>
+ * セッションの内容を暗号化Cookieに保持する設定。
+ * spplogin.session.store=cookie の場合に有効となり、Redisによるセッション管理（RedisConfig）の代わりに使用する。
+ * ゲスト情報（scopedTarget.guest）を含むセッション属性は全てCookieに保持される。
+ * </pre>
+ */
+@Configuration
+@EnableSpringHttpSession
+@ConditionalOnProperty(prefix = "spplogin.session", name = "store", havingValue = "cookie")
+public class CookieSessionConfig {
+
+	@Value("${spplogin.session.cookie.keys}")
+	private String keys;
+
+	@Value("${spplogin.session.cookie.max-length}")
+	private int maxLength;
+
+	@Value("${spplogin.session.cookie.max-inactive-seconds}")
+	private int maxInactiveSeconds;
+
+	@Bean
+	public CookieSessionRepository sessionRepository() {
+		return new CookieSessionRepository(new CookieSessionCodec(keys, maxLength), maxInactiveSeconds);
+	}
+}
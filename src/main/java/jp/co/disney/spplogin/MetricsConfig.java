@@ -0,0 +1,55 @@
+package jp.co.disney.spplogin;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import jp.co.disney.spplogin.mail.MailSenderMeteringPostProcessor;
+import jp.co.disney.spplogin.metrics.LatencyHistograms;
+import jp.co.disney.spplogin.metrics.PrometheusEndpoint;
+import jp.co.disney.spplogin.metrics.PrometheusMvcEndpoint;
+import jp.co.disney.spplogin.timing.RequestTimingPostProcessor;
+
+/**
+ * <pre>
+ * 外部呼び出しの応答時間計測（LatencyHistograms）の設定。
+ *   Core WebAPI : RestTemplateのインターセプタ（AppConfig）
+ *   Redis       : コネクションファクトリのラップ（RedisConfig）
+ *   SMTP        : MailSenderのラップ
+ *   /metrics    : spplogin.latency.*
+ *   /prometheus : Prometheusのテキスト形式
+ *
+ * ログイン／新規登録画面の処理時間の内訳（RequestTiming）の設定。
+ * 出力はServerTimingFilter、入力チェック・画面描画の計測はWebMvcConfigで設定する。
+ * </pre>
+ */
+@Configuration
+public class MetricsConfig {
+
+	/**
+	 * MailSenderを応答時間計測用にラップする。
+	 * @return
+	 */
+	@Bean
+	public static MailSenderMeteringPostProcessor mailSenderMeteringPostProcessor() {
+		return new MailSenderMeteringPostProcessor();
+	}
+
+	/**
+	 * セッションの読み込み・保存、連携キー操作を処理時間の内訳に記録するようラップする。
+	 * @return
+	 */
+	@Bean
+	public static RequestTimingPostProcessor requestTimingPostProcessor() {
+		return new RequestTimingPostProcessor();
+	}
+
+	@Bean
+	public PrometheusEndpoint prometheusEndpoint(LatencyHistograms latencyHistograms) {
+		return new PrometheusEndpoint(latencyHistograms);
+	}
+
+	@Bean
+	public PrometheusMvcEndpoint prometheusMvcEndpoint(PrometheusEndpoint prometheusEndpoint) {
+		return new PrometheusMvcEndpoint(prometheusEndpoint);
+	}
+}
@@ -1,33 +1,187 @@
 package jp.co.disney.spplogin;
 
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.redis.RedisProperties;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.SyncTaskExecutor;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.session.data.redis.RedisOperationsSessionRepository;
 import org.springframework.session.data.redis.config.ConfigureRedisAction;
 import org.springframework.session.data.redis.config.annotation.web.http.EnableRedisHttpSession;
+import org.springframework.util.StringUtils;
 
+import jp.co.disney.spplogin.maintenance.MaintenanceSwitch;
+import jp.co.disney.spplogin.metrics.LatencyHistograms;
+import jp.co.disney.spplogin.redis.RedisCommandMetrics;
+import jp.co.disney.spplogin.redis.RedisConnectionFactoryMeteringPostProcessor;
+import jp.co.disney.spplogin.redis.RedisReadRouter;
+import jp.co.disney.spplogin.redis.RedisScriptExecutor;
+import jp.co.disney.spplogin.service.SessionCoopKeyFilter;
+import jp.co.disney.spplogin.session.NativeTtlRedisSessionRepository;
 import jp.co.disney.spplogin.web.model.Guest;
 
 @Configuration
-@EnableRedisHttpSession
 public class RedisConfig {
 
-	/**
-	 * セキュアなRedis環境では設定変更コマンド発行が無効化されているため、EnableRedisHttpSessionによる
-	 * Redisの自動設定処理時にエラーが発生する。このためSpringによる自動設定処理を無効化する必要がある。
-	 * @return
-	 */
+	@Value("${spplogin.redis.replica.enabled}")
+	private boolean replicaEnabled;
+
+	@Value("${spplogin.redis.replica.host}")
+	private String replicaHost;
+
+	@Value("${spplogin.redis.replica.port}")
+	private int replicaPort;
+
+    /**
+     * <pre>
+     * spplogin.redis.client=lettuce の場合、Lettuceによるコネクションファクトリを使用する。
+     * 通常のコマンドは共有の1コネクション上に多重化（パイプライン化）されるため、
+     * Jedisのようにリクエストスレッドがプールのコネクション空きを待つことがない。
+     * 未指定時はSpring Boot標準のJedisコネクションファクトリを使用する。
+     * spring.redis.sentinel.*が設定されている場合はSentinel経由でプライマリに接続する（Jedisの場合はSpring Bootが対応）。
+     * </pre>
+     * @param properties spring.redis.*の設定
+     * @return
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "spplogin.redis", name = "client", havingValue = "lettuce")
+    public LettuceConnectionFactory redisConnectionFactory(RedisProperties properties) {
+        LettuceConnectionFactory factory;
+        if (properties.getSentinel() != null) {
+            factory = new LettuceConnectionFactory(new RedisSentinelConfiguration(properties.getSentinel().getMaster(),
+                    StringUtils.commaDelimitedListToSet(StringUtils.trimAllWhitespace(properties.getSentinel().getNodes()))));
+        } else {
+            factory = new LettuceConnectionFactory(properties.getHost(), properties.getPort());
+        }
+        factory.setPassword(properties.getPassword());
+        factory.setDatabase(properties.getDatabase());
+        factory.setTimeout(properties.getTimeout());
+        factory.setShareNativeConnection(true);
+        return factory;
+    }
+    
+    /**
+     * Redisノード毎のコマンド数
+     * @return
+     */
+    @Bean
+    public RedisCommandMetrics redisCommandMetrics() {
+        return new RedisCommandMetrics();
+    }
+    
+    /**
+     * プライマリ用のコネクションファクトリをコマンド数、応答時間計測用にラップする。
+     * @return
+     */
+    @Bean
+    public static RedisConnectionFactoryMeteringPostProcessor redisConnectionFactoryMeteringPostProcessor() {
+        return new RedisConnectionFactoryMeteringPostProcessor();
+    }
+    
+    /**
+     * <pre>
+     * 読み取り先の振り分け。
+     * spplogin.redis.replica.enabled=true の場合、複製遅延を許容できる読み取りをレプリカ
+     * （ElastiCacheのリーダーエンドポイント等）で実行する。接続設定（パスワード、タイムアウト）はプライマリと共通。
+     * </pre>
+     * @param stringRedisTemplate
+     * @param properties
+     * @param metrics
+     * @param latencyHistograms
+     * @return
+     */
+    @Bean
+    public RedisReadRouter redisReadRouter(StringRedisTemplate stringRedisTemplate, RedisProperties properties,
+            RedisCommandMetrics metrics, LatencyHistograms latencyHistograms) {
+        if (!replicaEnabled) {
+            return new RedisReadRouter(stringRedisTemplate);
+        }
+        JedisConnectionFactory replica = new JedisConnectionFactory();
+        replica.setHostName(replicaHost);
+        replica.setPort(replicaPort);
+        replica.setPassword(properties.getPassword());
+        replica.setDatabase(properties.getDatabase());
+        replica.setTimeout(properties.getTimeout());
+        replica.getPoolConfig().setJmxNamePrefix("redis-replica");
+        replica.afterPropertiesSet();
+        return new RedisReadRouter(stringRedisTemplate, replica, metrics, latencyHistograms);
+    }
+    
+    /**
+     * 連携キー作成通知の受信設定。作成されたキーを各ノードの連携キーフィルタに反映する。
+     * @param connectionFactory
+     * @param sessionCoopKeyFilter
+     * @param channel
+     * @return
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "spplogin.emptymail.session-coop-key.filter", name = "enabled", havingValue = "true")
+    public RedisMessageListenerContainer sessionCoopKeyListenerContainer(RedisConnectionFactory connectionFactory,
+            SessionCoopKeyFilter sessionCoopKeyFilter,
+            @Value("${spplogin.emptymail.session-coop-key.filter.channel}") String channel) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        // 連番の欠落を判定するため、受信した順に処理する（購読は受信処理と別スレッドで行う）
+        container.setTaskExecutor(new SyncTaskExecutor());
+        container.setSubscriptionExecutor(new SimpleAsyncTaskExecutor("coopkey-subscription-"));
+        container.addMessageListener(sessionCoopKeyFilter, new ChannelTopic(channel));
+        return container;
+    }
+    
+    /**
+     * メンテナンス状態の変更通知の受信設定。spplogin.maintenance.source=redis の場合のみ有効。
+     * @param connectionFactory
+     * @param maintenanceSwitch
+     * @param channel
+     * @return
+     */
     @Bean
-    public static ConfigureRedisAction configureRedisAction() {
-        return ConfigureRedisAction.NO_OP;
+    @ConditionalOnProperty(prefix = "spplogin.maintenance", name = "source", havingValue = "redis")
+    public RedisMessageListenerContainer maintenanceListenerContainer(RedisConnectionFactory connectionFactory,
+            MaintenanceSwitch maintenanceSwitch,
+            @Value("${spplogin.maintenance.redis.channel}") String channel) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(maintenanceSwitch, new ChannelTopic(channel));
+        return container;
+    }
+    
+    /**
+     * <pre>
+     * 連携キーの非同期操作用のスクリプト実行。
+     * Lettuceの場合は共有コネクションの非同期コマンドで実行し、Jedisの場合は呼び出し元スレッドで同期実行する。
+     * </pre>
+     * @param stringRedisTemplate
+     * @param connectionFactory
+     * @param metrics
+     * @param latencyHistograms
+     * @return
+     */
+    @Bean
+    public RedisScriptExecutor redisScriptExecutor(StringRedisTemplate stringRedisTemplate,
+            RedisConnectionFactory connectionFactory, RedisCommandMetrics metrics, LatencyHistograms latencyHistograms) {
+        return new RedisScriptExecutor(stringRedisTemplate, connectionFactory, metrics, latencyHistograms);
     }
     
     /**
      * GuestクラスインスタンスをRedisにJson形式でシリアライズ／デシリアライズするための設定
+     * 連携キーはハッシュ形式で保持するため、旧形式(JSON)で保存されたレコードの読み書きにのみ使用する。
      * @param connectionFactory
      * @return
      */
@@ -41,4 +195,46 @@ public class RedisConfig {
         redisTemplate.setHashValueSerializer(redisTemplate.getValueSerializer());
         return redisTemplate;
     }
+    
+    /**
+     * <pre>
+     * Redisによるセッション管理の設定。
+     * spplogin.session.store=cookie の場合は無効となり、CookieSessionConfigの設定を使用する。
+     * </pre>
+     */
+    @Configuration
+    @EnableRedisHttpSession
+    @ConditionalOnProperty(prefix = "spplogin.session", name = "store", havingValue = "redis", matchIfMissing = true)
+    static class RedisHttpSessionConfig {
+    	
+		/**
+		 * セキュアなRedis環境では設定変更コマンド発行が無効化されているため、EnableRedisHttpSessionによる
+		 * Redisの自動設定処理時にエラーが発生する。このためSpringによる自動設定処理を無効化する必要がある。
+		 * @return
+		 */
+	    @Bean
+	    public static ConfigureRedisAction configureRedisAction() {
+	        return ConfigureRedisAction.NO_OP;
+	    }
+    
+	    /**
+	     * <pre>
+	     * spplogin.session.expiry.mode=native の場合、EnableRedisHttpSessionが定義するセッションリポジトリを
+	     * 置き換え、全ノードによる毎分の期限切れセッション掃除を無効化する。
+	     * 掃除はSessionExpirationSweeperがリーダーノードでのみ行う。
+	     * </pre>
+	     * @param sessionRedisTemplate
+	     * @param applicationEventPublisher
+	     * @return
+	     */
+	    @Bean
+	    @ConditionalOnProperty(prefix = "spplogin.session.expiry", name = "mode", havingValue = "native")
+	    public RedisOperationsSessionRepository sessionRepository(
+	            @Qualifier("sessionRedisTemplate") RedisOperations<Object, Object> sessionRedisTemplate,
+	            ApplicationEventPublisher applicationEventPublisher) {
+	        RedisOperationsSessionRepository sessionRepository = new NativeTtlRedisSessionRepository(sessionRedisTemplate);
+	        sessionRepository.setApplicationEventPublisher(applicationEventPublisher);
+	        return sessionRepository;
+	    }
+    }
 }
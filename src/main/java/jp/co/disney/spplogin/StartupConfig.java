@@ -0,0 +1,59 @@
+package jp.co.disney.spplogin;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import jp.co.disney.spplogin.startup.ExitOnReadyListener;
+import jp.co.disney.spplogin.startup.LazyInitBeanFactoryPostProcessor;
+import jp.co.disney.spplogin.startup.ReadinessEndpoint;
+import jp.co.disney.spplogin.startup.ReadinessMvcEndpoint;
+import jp.co.disney.spplogin.startup.StartupTimeline;
+import jp.co.disney.spplogin.startup.WarmUp;
+
+/**
+ * <pre>
+ * 起動時間短縮、準備完了判定用の設定。起動時間短縮はstartupプロファイル（application-startup.yml）で有効にする。
+ *   spplogin.startup.lazy-init.enabled=true     : コンポーネントを遅延初期化する
+ *   spplogin.startup.timeline.enabled=true      : 起動時のBean生成時間をログに出力する
+ *   spplogin.startup.exit-on-ready=true         : 起動完了後に終了する（CDSアーカイブ作成用、pom.xmlのcdsプロファイル参照）
+ *   /readiness                                  : ウォームアップ（WarmUp）完了までは503を返す
+ * </pre>
+ */
+@Configuration
+public class StartupConfig {
+
+	@Bean
+	@ConditionalOnProperty(prefix = "spplogin.startup.lazy-init", name = "enabled", havingValue = "true")
+	public static LazyInitBeanFactoryPostProcessor lazyInitBeanFactoryPostProcessor() {
+		return new LazyInitBeanFactoryPostProcessor();
+	}
+
+	@Bean
+	@ConditionalOnProperty(prefix = "spplogin.startup.timeline", name = "enabled", havingValue = "true")
+	public static StartupTimeline startupTimeline(Environment environment) {
+		return new StartupTimeline(environment.getProperty("spplogin.startup.timeline.top", Integer.class, 20));
+	}
+
+	/**
+	 * 準備完了（ウォームアップ完了）状態のエンドポイント
+	 * @param warmUp
+	 * @return
+	 */
+	@Bean
+	public ReadinessEndpoint readinessEndpoint(WarmUp warmUp) {
+		return new ReadinessEndpoint(warmUp);
+	}
+
+	@Bean
+	public ReadinessMvcEndpoint readinessMvcEndpoint(ReadinessEndpoint readinessEndpoint) {
+		return new ReadinessMvcEndpoint(readinessEndpoint);
+	}
+
+	@Bean
+	@ConditionalOnProperty(prefix = "spplogin.startup", name = "exit-on-ready", havingValue = "true")
+	public ExitOnReadyListener exitOnReadyListener() {
+		return new ExitOnReadyListener();
+	}
+}
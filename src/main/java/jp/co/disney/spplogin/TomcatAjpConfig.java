@@ -1,39 +1,145 @@
 package jp.co.disney.spplogin;
 
+import java.util.concurrent.Executor;
+
 import org.apache.catalina.connector.Connector;
-import org.springframework.beans.factory.annotation.Value;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.coyote.AbstractProtocol;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.embedded.EmbeddedServletContainerFactory;
+import org.springframework.boot.context.embedded.tomcat.TomcatEmbeddedServletContainer;
 import org.springframework.boot.context.embedded.tomcat.TomcatEmbeddedServletContainerFactory;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import jp.co.disney.spplogin.metrics.LatencyHistograms;
+import jp.co.disney.spplogin.tomcat.MeteredThreadExecutor;
+import jp.co.disney.spplogin.util.VirtualThreads;
+import lombok.extern.slf4j.Slf4j;
+
 /**
+ * <pre>
  * Apache-Tomcat連携用設定。
+ * HTTP／AJPコネクタの設定はtomcat.*（TomcatProperties）で行う。
+ * tomcat.executor.enabled=true の場合、両コネクタは名前付きの共有スレッドプールでリクエストを処理する。
+ * tomcat.executor.type=virtual の場合、共有スレッドプールの代わりにリクエスト毎の仮想スレッドで処理する
+ * （実行中のJDKが対応していない場合は共有スレッドプールを使用する）。
+ * </pre>
  */
+@Slf4j
 @Configuration
+@EnableConfigurationProperties(TomcatProperties.class)
 public class TomcatAjpConfig {
 
-	@Value("${tomcat.ajp.port}")
-	private int ajpPort;
+	@Autowired
+	private TomcatProperties properties;
 
-	@Value("${tomcat.ajp.enabled}")
-	boolean tomcatAjpEnabled;
+	@Autowired
+	private LatencyHistograms latencyHistograms;
 
 	@Bean
 	public EmbeddedServletContainerFactory servletContainer() {
 
-		TomcatEmbeddedServletContainerFactory tomcat = new TomcatEmbeddedServletContainerFactory();
-		if (tomcatAjpEnabled) {
-			Connector ajpConnector = new Connector("AJP/1.3");
-			ajpConnector.setProtocol("AJP/1.3");
-			ajpConnector.setPort(ajpPort);
+		TomcatEmbeddedServletContainerFactory tomcat = new TomcatEmbeddedServletContainerFactory() {
+			@Override
+			protected TomcatEmbeddedServletContainer getTomcatEmbeddedServletContainer(Tomcat server) {
+				if (properties.getExecutor().isEnabled() && !useVirtualThreads(server)) {
+					shareExecutor(server);
+				}
+				return super.getTomcatEmbeddedServletContainer(server);
+			}
+		};
+		tomcat.setProtocol(httpProtocol(properties.getHttp().getProtocol()));
+		tomcat.addConnectorCustomizers(connector -> customize(connector, properties.getHttp()));
+
+		final TomcatProperties.Ajp ajp = properties.getAjp();
+		if (ajp.isEnabled()) {
+			Connector ajpConnector = new Connector(ajpProtocol(ajp.getProtocol()));
+			ajpConnector.setPort(ajp.getPort());
 			ajpConnector.setSecure(false);
 			ajpConnector.setAllowTrace(false);
 			ajpConnector.setScheme("http");
+			customize(ajpConnector, ajp);
+			setIfPresent(ajpConnector, "packetSize", ajp.getPacketSize());
 			tomcat.addAdditionalTomcatConnectors(ajpConnector);
 		}
 
 		return tomcat;
 	}
 
+	/**
+	 * 共有スレッドプールをServiceに登録し、全コネクタに設定する。
+	 * Serviceに登録することで、スレッドプールの開始・停止はコネクタと合わせてTomcatが行う。
+	 * 処理待ちキューでの待ち時間はLatencyHistogramsに記録する（MeteredThreadExecutor）。
+	 */
+	private void shareExecutor(Tomcat server) {
+		final TomcatProperties.Executor settings = properties.getExecutor();
+		final MeteredThreadExecutor executor = new MeteredThreadExecutor(latencyHistograms);
+		executor.setName(settings.getName());
+		executor.setNamePrefix(settings.getName() + "-");
+		executor.setMinSpareThreads(settings.getMinSpareThreads());
+		executor.setMaxThreads(settings.getMaxThreads());
+		executor.setMaxQueueSize(settings.getMaxQueueSize());
+		executor.setMaxIdleTime(settings.getMaxIdleTime());
+		executor.setPrestartminSpareThreads(settings.isPrestartMinSpareThreads());
+		server.getService().addExecutor(executor);
+		setExecutor(server, executor, settings.getName());
+	}
+
+	/**
+	 * tomcat.executor.type=virtual の場合、全コネクタにリクエスト毎の仮想スレッドを設定する。
+	 * 仮想スレッドはJVMの終了を妨げないため、Executorの停止は行わない。
+	 * @return 設定した場合true
+	 */
+	private boolean useVirtualThreads(Tomcat server) {
+		if (!"virtual".equalsIgnoreCase(properties.getExecutor().getType())) {
+			return false;
+		}
+		final String name = properties.getExecutor().getName();
+		final Executor executor = VirtualThreads.newVirtualThreadPerTaskExecutor(name + "-");
+		if (executor == null) {
+			log.warn("実行中のJDKは仮想スレッドに対応していないため、共有スレッドプールを使用します。 : java.version={}",
+					System.getProperty("java.version"));
+			return false;
+		}
+		setExecutor(server, executor, name + "(virtual)");
+		return true;
+	}
+
+	private static void setExecutor(Tomcat server, Executor executor, String name) {
+		for (Connector connector : server.getService().findConnectors()) {
+			if (connector.getProtocolHandler() instanceof AbstractProtocol) {
+				((AbstractProtocol<?>) connector.getProtocolHandler()).setExecutor(executor);
+				log.info("スレッドプールを設定しました。 : connector={} executor={}", connector, name);
+			}
+		}
+	}
+
+	private static void customize(Connector connector, TomcatProperties.Connector settings) {
+		setIfPresent(connector, "acceptCount", settings.getAcceptCount());
+		setIfPresent(connector, "maxConnections", settings.getMaxConnections());
+		setIfPresent(connector, "connectionTimeout", settings.getConnectionTimeout());
+		setIfPresent(connector, "keepAliveTimeout", settings.getKeepAliveTimeout());
+		setIfPresent(connector, "maxKeepAliveRequests", settings.getMaxKeepAliveRequests());
+	}
+
+	private static void setIfPresent(Connector connector, String name, Integer value) {
+		if (value != null && !connector.setProperty(name, String.valueOf(value))) {
+			log.warn("コネクタに設定できない項目です。 : connector={} {}={}", connector, name, value);
+		}
+	}
+
+	private static String httpProtocol(String protocol) {
+		return "nio2".equalsIgnoreCase(protocol)
+				? "org.apache.coyote.http11.Http11Nio2Protocol"
+				: "org.apache.coyote.http11.Http11NioProtocol";
+	}
+
+	private static String ajpProtocol(String protocol) {
+		return "nio2".equalsIgnoreCase(protocol)
+				? "org.apache.coyote.ajp.AjpNio2Protocol"
+				: "org.apache.coyote.ajp.AjpNioProtocol";
+	}
+
 }
@@ -0,0 +1,71 @@
+package jp.co.disney.spplogin;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * <pre>
+ * 組み込みTomcatのコネクタ設定（tomcat.*）。
+ * HTTPコネクタ（server.port）とAJPコネクタの設定、および両コネクタで共有するスレッドプールの設定を保持する。
+ * 未設定の項目（null）はTomcatの既定値のままとする。
+ * </pre>
+ */
+@Data
+@ConfigurationProperties(prefix = "tomcat")
+public class TomcatProperties {
+
+	/** 共有スレッドプール */
+	private Executor executor = new Executor();
+
+	/** HTTPコネクタ */
+	private Connector http = new Connector();
+
+	/** AJPコネクタ */
+	private Ajp ajp = new Ajp();
+
+	@Data
+	public static class Executor {
+		/** 共有スレッドプールを使用するか。falseの場合は各コネクタが個別のスレッドプールを持つ */
+		private boolean enabled = true;
+		/**
+		 * スレッドの種類（platform / virtual）。
+		 * virtualの場合、リクエスト毎に仮想スレッドを生成する（JDK 21以降。非対応のJDKではplatformとして動作する）。
+		 * 仮想スレッドの数には上限がないため、スレッド数・キューの設定は使用せず、同時実行数はmaxConnections等で制限する。
+		 */
+		private String type = "platform";
+		/** スレッドプール名（JMXのname、スレッド名の接頭辞） */
+		private String name = "spplogin-exec";
+		private int minSpareThreads = 25;
+		private int maxThreads = 200;
+		/** 処理待ちキューの上限。超過した接続は切断される */
+		private int maxQueueSize = 100;
+		/** 余剰スレッドを終了するまでのアイドル時間（ミリ秒） */
+		private int maxIdleTime = 60000;
+		private boolean prestartMinSpareThreads = false;
+	}
+
+	@Data
+	public static class Connector {
+		/** プロトコルハンドラ（nio / nio2） */
+		private String protocol = "nio";
+		/** 全スレッド使用中に受け付ける接続要求のキュー長（backlog） */
+		private Integer acceptCount;
+		private Integer maxConnections;
+		/** 接続後、リクエスト受信までの待ち時間（ミリ秒） */
+		private Integer connectionTimeout;
+		/** Keep-Alive接続で次のリクエストを待つ時間（ミリ秒） */
+		private Integer keepAliveTimeout;
+		private Integer maxKeepAliveRequests;
+	}
+
+	@Data
+	@EqualsAndHashCode(callSuper = true)
+	public static class Ajp extends Connector {
+		private boolean enabled = false;
+		private int port = 8009;
+		/** AJPパケットサイズ。Apache側（ProxyIOBufferSize / worker.max_packet_size）と合わせること */
+		private Integer packetSize;
+	}
+}
@@ -1,11 +1,17 @@
 package jp.co.disney.spplogin;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.Validator;
+import org.springframework.validation.beanvalidation.OptionalValidatorFactoryBean;
 import org.springframework.web.servlet.HandlerInterceptor;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
 
+import jp.co.disney.spplogin.interceptor.RenderTimingInterceptor;
+import jp.co.disney.spplogin.timing.RequestTimingValidator;
+
 @Configuration
 public class WebMvcConfig extends WebMvcConfigurerAdapter {
     @Autowired
@@ -13,10 +19,27 @@ public class WebMvcConfig extends WebMvcConfigurerAdapter {
     
     @Autowired
     HandlerInterceptor userAgentInterceptor;
+    
+    @Autowired
+    ApplicationContext applicationContext;
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
-    	registry.addInterceptor(userAgentInterceptor);
+    	// 静的リソースおよび対象外端末画面は判定しない
+    	registry.addInterceptor(userAgentInterceptor)
+    			.excludePathPatterns("/css/**", "/js/**", "/img/**", "/unsupported");
         registry.addInterceptor(maintenanceInterceptor);
+        registry.addInterceptor(new RenderTimingInterceptor());
+    }
+    
+    /**
+     * 入力チェックの処理時間をServer-Timingの内訳に含めるため、Spring MVC標準のValidatorをラップする。
+     */
+    @Override
+    public Validator getValidator() {
+    	final OptionalValidatorFactoryBean validator = new OptionalValidatorFactoryBean();
+    	validator.setApplicationContext(applicationContext);
+    	validator.afterPropertiesSet();
+    	return new RequestTimingValidator(validator);
     }
 }
@@ -0,0 +1,132 @@
+package jp.co.disney.spplogin.filter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jp.co.disney.spplogin.util.GradientConcurrencyLimit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * ログイン／新規登録画面（LoginController、MemberRegistController）の同時実行数を制限するフィルタ。
+ * 上限は応答時間（認証認可API等の遅延を含む）から自動で調整し（GradientConcurrencyLimit）、
+ * 上限を超えたリクエストは待たせずに固定の混雑ページ（503）を返す。
+ * これによりCore WebAPIの遅延時にTomcatのキューにリクエストが滞留し、全てがタイムアウトすることを防ぐ。
+ * </pre>
+ */
+@Slf4j
+@Component
+public class ConcurrencyLimitFilter extends OncePerRequestFilter implements PublicMetrics {
+
+	@Value("${spplogin.concurrency-limit.enabled}")
+	private boolean enabled;
+
+	@Value("${spplogin.concurrency-limit.initial-limit}")
+	private int initialLimit;
+
+	@Value("${spplogin.concurrency-limit.min-limit}")
+	private int minLimit;
+
+	@Value("${spplogin.concurrency-limit.max-limit}")
+	private int maxLimit;
+
+	@Value("${spplogin.concurrency-limit.smoothing}")
+	private double smoothing;
+
+	@Value("${spplogin.concurrency-limit.window-millis}")
+	private long windowMillis;
+
+	@Value("${spplogin.concurrency-limit.min-window-samples}")
+	private int minWindowSamples;
+
+	@Value("${spplogin.concurrency-limit.long-windows}")
+	private int longWindows;
+
+	@Value("${spplogin.concurrency-limit.rtt-tolerance}")
+	private double rttTolerance;
+
+	@Value("${spplogin.concurrency-limit.retry-after-seconds}")
+	private int retryAfterSeconds;
+
+	@Value("${spplogin.priority.enabled}")
+	private boolean priorityEnabled;
+
+	@Value("${spplogin.priority.permits}")
+	private int priorityPermits;
+
+	@Value("${tomcat.executor.max-threads}")
+	private int maxThreads;
+
+	private GradientConcurrencyLimit limit;
+	private PrebuiltResponse busy;
+
+	private final LongAdder shed = new LongAdder();
+
+	@PostConstruct
+	public void init() {
+		limit = new GradientConcurrencyLimit(initialLimit, minLimit, maxLimit, smoothing, windowMillis,
+				minWindowSamples, longWindows, rttTolerance);
+		if (enabled && maxLimit >= maxThreads) {
+			log.warn("同時実行数の上限の最大値がTomcatの最大スレッド数以上です。ヘルスチェック等のスレッドが残らない場合があります。 : {} >= {}",
+					maxLimit, maxThreads);
+		}
+		if (enabled && priorityEnabled && maxLimit >= priorityPermits) {
+			log.warn("同時実行数の上限の最大値が優先度付き同時実行数制限の実行枠以上です。下位の優先度のリクエストが実行枠を使い切る場合があります。 : {} >= {}",
+					maxLimit, priorityPermits);
+		}
+		busy = new PrebuiltResponse(HttpStatus.SERVICE_UNAVAILABLE.value(), retryAfterSeconds, "prebuilt/busy.html");
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) throws ServletException {
+		return !enabled;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		if (!limit.tryAcquire()) {
+			shed.increment();
+			log.debug("同時実行数の上限を超えたためリクエストを破棄しました。 : limit={}", limit.limit());
+			busy.write(response);
+			return;
+		}
+		final long start = System.nanoTime();
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			final long now = System.nanoTime();
+			limit.release(now - start, now);
+		}
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		final List<Metric<?>> metrics = new ArrayList<>();
+		if (!enabled) {
+			return metrics;
+		}
+		metrics.add(new Metric<>("spplogin.concurrency-limit.limit", limit.limit()));
+		metrics.add(new Metric<>("spplogin.concurrency-limit.in-flight", limit.inFlight()));
+		metrics.add(new Metric<>("spplogin.concurrency-limit.shed", shed.sum()));
+		metrics.add(new Metric<>("spplogin.concurrency-limit.rtt-short-millis", limit.shortRttMillis()));
+		metrics.add(new Metric<>("spplogin.concurrency-limit.rtt-long-millis", limit.longRttMillis()));
+		return metrics;
+	}
+}
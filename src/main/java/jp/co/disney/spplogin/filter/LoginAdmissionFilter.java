@@ -0,0 +1,240 @@
+package jp.co.disney.spplogin.filter;
+
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jp.co.disney.spplogin.util.TokenBucketTable;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * ログイン（POST /Login?login、および新規登録後のログイン POST /Regist?login）の流量制限を行うフィルタ。
+ * クライアントのIPアドレスと正規化したメンバー名／メールアドレスそれぞれについてトークンバケットで制限し、
+ * 超過した場合は認証認可API（COR-901）を呼び出さずに固定の429レスポンスを返す。
+ *
+ * 1段目は各ノードのメモリ上の表（TokenBucketTable）で判定する。
+ * spplogin.login.admission.redis.enabled=true の場合、1段目を通過したリクエストについて
+ * Redis上の固定ウィンドウのカウンタでクラスタ全体の上限を判定する。Redisに接続できない場合は制限しない。
+ * </pre>
+ */
+@Slf4j
+@Component
+public class LoginAdmissionFilter extends OncePerRequestFilter implements PublicMetrics {
+
+	/** ログイン画面のメンバー名／メールアドレス */
+	private static final String MEMBER_PARAMETER = "memberNameOrEmailAddr";
+
+	/** 新規登録後のログインのパスとメンバー名 */
+	private static final String REGIST_PATH = "/Regist";
+	private static final String REGIST_MEMBER_PARAMETER = "memberName";
+
+	/**
+	 * <pre>
+	 * IPアドレスとメンバーのカウンタを1往復で加算し、上限を超えたか判定するスクリプト。
+	 * KEYS[1]:IPアドレスのカウンタ KEYS[2]:メンバーのカウンタ（省略可）
+	 * ARGV[1]:ウィンドウ(ミリ秒) ARGV[2]:IPアドレスの上限 ARGV[3]:メンバーの上限
+	 * 戻り値 0:許可 1:IPアドレスの上限超過 2:メンバーの上限超過
+	 * </pre>
+	 */
+	private static final RedisScript<Long> ADMISSION_SCRIPT = new DefaultRedisScript<>(
+			"local limits = { tonumber(ARGV[2]), tonumber(ARGV[3]) } "
+			+ "for i, key in ipairs(KEYS) do "
+			+ "  local count = redis.call('INCR', key) "
+			+ "  if count == 1 then redis.call('PEXPIRE', key, ARGV[1]) end "
+			+ "  if count > limits[i] then return i end "
+			+ "end "
+			+ "return 0",
+			Long.class);
+
+	@Value("${spplogin.login.admission.enabled}")
+	private boolean enabled;
+
+	@Value("${spplogin.login.admission.slots}")
+	private int slots;
+
+	@Value("${spplogin.login.admission.ip.burst}")
+	private int ipBurst;
+
+	@Value("${spplogin.login.admission.ip.rate-per-second}")
+	private double ipRate;
+
+	@Value("${spplogin.login.admission.member.burst}")
+	private int memberBurst;
+
+	@Value("${spplogin.login.admission.member.rate-per-second}")
+	private double memberRate;
+
+	@Value("${spplogin.login.admission.forwarded-header}")
+	private String forwardedHeader;
+
+	@Value("${spplogin.login.admission.retry-after-seconds}")
+	private int retryAfterSeconds;
+
+	@Value("${spplogin.login.admission.redis.enabled}")
+	private boolean redisEnabled;
+
+	@Value("${spplogin.login.admission.redis.key-prefix}")
+	private String redisKeyPrefix;
+
+	@Value("${spplogin.login.admission.redis.window-seconds}")
+	private int redisWindowSeconds;
+
+	@Value("${spplogin.login.admission.redis.ip-limit}")
+	private int redisIpLimit;
+
+	@Value("${spplogin.login.admission.redis.member-limit}")
+	private int redisMemberLimit;
+
+	@Autowired
+	private StringRedisTemplate stringRedisTemplate;
+
+	private TokenBucketTable ipBuckets;
+	private TokenBucketTable memberBuckets;
+	private PrebuiltResponse tooManyRequests;
+
+	private final LongAdder allowed = new LongAdder();
+	private final LongAdder rejectedIp = new LongAdder();
+	private final LongAdder rejectedMember = new LongAdder();
+	private final LongAdder rejectedClusterIp = new LongAdder();
+	private final LongAdder rejectedClusterMember = new LongAdder();
+	private final LongAdder redisErrors = new LongAdder();
+
+	@PostConstruct
+	public void init() {
+		ipBuckets = new TokenBucketTable(slots, ipBurst, ipRate);
+		memberBuckets = new TokenBucketTable(slots, memberBurst, memberRate);
+		tooManyRequests = new PrebuiltResponse(HttpStatus.TOO_MANY_REQUESTS.value(), retryAfterSeconds,
+				"prebuilt/too-many-requests.html");
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) throws ServletException {
+		return !enabled || !"POST".equals(request.getMethod()) || request.getParameter("login") == null;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		final String ip = clientAddress(request);
+		final String member = normalize(request.getParameter(memberParameter(request)));
+		final long memberKey = member.isEmpty() ? 0L : TokenBucketTable.key(member);
+		final long now = System.currentTimeMillis();
+
+		if (!ipBuckets.tryAcquire(TokenBucketTable.key(ip), now)) {
+			reject(response, rejectedIp, ip);
+			return;
+		}
+		if (!member.isEmpty() && !memberBuckets.tryAcquire(memberKey, now)) {
+			reject(response, rejectedMember, ip);
+			return;
+		}
+		if (redisEnabled) {
+			final long result = clusterAdmission(ip, member.isEmpty() ? null : Long.toHexString(memberKey));
+			if (result != 0) {
+				reject(response, result == 1 ? rejectedClusterIp : rejectedClusterMember, ip);
+				return;
+			}
+		}
+		allowed.increment();
+		filterChain.doFilter(request, response);
+	}
+
+	private long clusterAdmission(String ip, String memberHash) {
+		final List<String> keys = memberHash == null
+				? Arrays.asList(redisKeyPrefix + "ip:" + ip)
+				: Arrays.asList(redisKeyPrefix + "ip:" + ip, redisKeyPrefix + "member:" + memberHash);
+		try {
+			final Long result = stringRedisTemplate.execute(ADMISSION_SCRIPT, keys,
+					String.valueOf(TimeUnit.SECONDS.toMillis(redisWindowSeconds)),
+					String.valueOf(redisIpLimit), String.valueOf(redisMemberLimit));
+			return result == null ? 0L : result;
+		} catch (RuntimeException e) {
+			redisErrors.increment();
+			log.debug("ログイン流量制限のカウンタを更新できませんでした。", e);
+			return 0L;
+		}
+	}
+
+	private void reject(HttpServletResponse response, LongAdder counter, String ip) throws IOException {
+		counter.increment();
+		log.debug("ログインの流量制限により拒否しました。 : {}", ip);
+		tooManyRequests.write(response);
+	}
+
+	/**
+	 * メンバーを指定するパラメータ名。新規登録後のログインはメンバー名、それ以外はメンバー名／メールアドレス。
+	 */
+	private static String memberParameter(HttpServletRequest request) {
+		final String path = request.getRequestURI().substring(request.getContextPath().length());
+		return path.startsWith(REGIST_PATH) ? REGIST_MEMBER_PARAMETER : MEMBER_PARAMETER;
+	}
+
+	/**
+	 * クライアントのIPアドレス。
+	 * AJP連携時はApacheから引き継いだアドレスがgetRemoteAddrで取得できる。
+	 * spplogin.login.admission.forwarded-header が設定されている場合は、そのヘッダの末尾（直近のプロキシが付与した）アドレスを使用する。
+	 */
+	private String clientAddress(HttpServletRequest request) {
+		if (StringUtils.hasText(forwardedHeader)) {
+			final String forwarded = request.getHeader(forwardedHeader);
+			if (StringUtils.hasText(forwarded)) {
+				return forwarded.substring(forwarded.lastIndexOf(',') + 1).trim();
+			}
+		}
+		return request.getRemoteAddr();
+	}
+
+	/**
+	 * メンバー名／メールアドレスの正規化。全角・半角や大文字・小文字の違いで制限を回避されないようにする。
+	 */
+	static String normalize(String memberNameOrEmailAddr) {
+		if (memberNameOrEmailAddr == null) {
+			return "";
+		}
+		return Normalizer.normalize(memberNameOrEmailAddr, Normalizer.Form.NFKC).trim().toLowerCase(Locale.ROOT);
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		final List<Metric<?>> metrics = new ArrayList<>();
+		if (!enabled) {
+			return metrics;
+		}
+		metrics.add(new Metric<>("spplogin.login.admission.allowed", allowed.sum()));
+		metrics.add(new Metric<>("spplogin.login.admission.rejected.ip", rejectedIp.sum()));
+		metrics.add(new Metric<>("spplogin.login.admission.rejected.member", rejectedMember.sum()));
+		metrics.add(new Metric<>("spplogin.login.admission.rejected.cluster-ip", rejectedClusterIp.sum()));
+		metrics.add(new Metric<>("spplogin.login.admission.rejected.cluster-member", rejectedClusterMember.sum()));
+		metrics.add(new Metric<>("spplogin.login.admission.redis-errors", redisErrors.sum()));
+		metrics.add(new Metric<>("spplogin.login.admission.ip.slots-used", ipBuckets.used()));
+		metrics.add(new Metric<>("spplogin.login.admission.ip.overflows", ipBuckets.overflows()));
+		metrics.add(new Metric<>("spplogin.login.admission.member.slots-used", memberBuckets.used()));
+		metrics.add(new Metric<>("spplogin.login.admission.member.overflows", memberBuckets.overflows()));
+		return metrics;
+	}
+}
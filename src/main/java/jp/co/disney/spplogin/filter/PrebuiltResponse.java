@@ -0,0 +1,55 @@
+package jp.co.disney.spplogin.filter;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StreamUtils;
+
+/**
+ * <pre>
+ * 起動時に読み込んだ固定のレスポンス。
+ * 過負荷時や流量制限時に返却するため、テンプレート処理やセッション生成を行わずにバイト列をそのまま書き込む。
+ * </pre>
+ */
+public class PrebuiltResponse {
+
+	private static final String CONTENT_TYPE = "text/html;charset=UTF-8";
+
+	private final int status;
+	private final String retryAfter;
+	private final byte[] body;
+
+	/**
+	 * @param status HTTPステータス
+	 * @param retryAfterSeconds Retry-Afterヘッダの秒数。0以下の場合は付与しない
+	 * @param location レスポンス本文のクラスパス上の位置
+	 */
+	public PrebuiltResponse(int status, int retryAfterSeconds, String location) {
+		this.status = status;
+		this.retryAfter = retryAfterSeconds > 0 ? String.valueOf(retryAfterSeconds) : null;
+		try (InputStream in = new ClassPathResource(location).getInputStream()) {
+			this.body = StreamUtils.copyToByteArray(in);
+		} catch (IOException e) {
+			throw new IllegalStateException("レスポンス本文を読み込めませんでした。 : " + location, e);
+		}
+	}
+
+	/**
+	 * レスポンスを書き込む。
+	 * @param response
+	 * @throws IOException
+	 */
+	public void write(HttpServletResponse response) throws IOException {
+		response.setStatus(status);
+		response.setContentType(CONTENT_TYPE);
+		response.setContentLength(body.length);
+		response.setHeader("Cache-Control", "no-store");
+		if (retryAfter != null) {
+			response.setHeader("Retry-After", retryAfter);
+		}
+		response.getOutputStream().write(body);
+	}
+}
@@ -0,0 +1,236 @@
+package jp.co.disney.spplogin.filter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jp.co.disney.spplogin.util.PriorityGate;
+import jp.co.disney.spplogin.util.PriorityGate.Priority;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * リクエストをパスとメソッドで優先度に分類し、優先度付きの同時実行数制限（PriorityGate）を行うフィルタ。
+ * 混雑時はログイン・登録（HIGH）の実行枠を確保し、静的リソース、エラーページ、
+ * 送信先アドレスのポーリング（LOW）が待機を受け持つ。
+ * 分類の規則は「メソッド パス」または「パス」のカンマ区切りで指定し、パスは前方一致で判定する。
+ * いずれにも該当しないリクエストはNORMALとする。
+ * ヘルスチェック、メトリクス取得等の除外パスは制限しない。
+ * 待機中のリクエストもTomcatのスレッドを占有するため、実行枠と待機者数上限の合計がTomcatの最大スレッド数を超える場合は警告する。
+ * 待機者数の上限超過、またはタイムアウトした場合は固定の混雑ページ（503）を返す。
+ * </pre>
+ */
+@Slf4j
+@Component
+public class PriorityGateFilter extends OncePerRequestFilter implements PublicMetrics {
+
+	private static final Priority[] PRIORITIES = Priority.values();
+
+	@Value("${spplogin.priority.enabled}")
+	private boolean enabled;
+
+	@Value("${spplogin.priority.permits}")
+	private int permits;
+
+	@Value("${spplogin.priority.reserved.high}")
+	private int reservedHigh;
+
+	@Value("${spplogin.priority.reserved.normal}")
+	private int reservedNormal;
+
+	@Value("${spplogin.priority.max-waiting.high}")
+	private int maxWaitingHigh;
+
+	@Value("${spplogin.priority.max-waiting.normal}")
+	private int maxWaitingNormal;
+
+	@Value("${spplogin.priority.max-waiting.low}")
+	private int maxWaitingLow;
+
+	@Value("${spplogin.priority.wait-timeout-millis.high}")
+	private long timeoutHigh;
+
+	@Value("${spplogin.priority.wait-timeout-millis.normal}")
+	private long timeoutNormal;
+
+	@Value("${spplogin.priority.wait-timeout-millis.low}")
+	private long timeoutLow;
+
+	@Value("${spplogin.priority.rules.high}")
+	private String highRules;
+
+	@Value("${spplogin.priority.rules.low}")
+	private String lowRules;
+
+	@Value("${spplogin.priority.retry-after-seconds}")
+	private int retryAfterSeconds;
+
+	@Value("${spplogin.priority.excludes}")
+	private String excludes;
+
+	@Value("${tomcat.executor.max-threads}")
+	private int maxThreads;
+
+	private PriorityGate gate;
+	private PrebuiltResponse busy;
+	private List<Rule> rules;
+	private String[] excludePaths;
+	private long[] timeoutNanos;
+	private final ClassStats[] stats = new ClassStats[PRIORITIES.length];
+
+	@PostConstruct
+	public void init() {
+		gate = new PriorityGate(permits, reservedHigh, reservedNormal,
+				new int[] { maxWaitingHigh, maxWaitingNormal, maxWaitingLow });
+		busy = new PrebuiltResponse(HttpStatus.SERVICE_UNAVAILABLE.value(), retryAfterSeconds, "prebuilt/busy.html");
+		rules = new ArrayList<>();
+		rules.addAll(parseRules(highRules, Priority.HIGH));
+		rules.addAll(parseRules(lowRules, Priority.LOW));
+		excludePaths = StringUtils.trimArrayElements(StringUtils.commaDelimitedListToStringArray(excludes));
+		timeoutNanos = new long[] { TimeUnit.MILLISECONDS.toNanos(timeoutHigh),
+				TimeUnit.MILLISECONDS.toNanos(timeoutNormal), TimeUnit.MILLISECONDS.toNanos(timeoutLow) };
+		for (int i = 0; i < stats.length; i++) {
+			stats[i] = new ClassStats();
+		}
+		final int threads = permits + maxWaitingHigh + maxWaitingNormal + maxWaitingLow;
+		if (enabled && threads > maxThreads) {
+			log.warn("実行枠と待機者数上限の合計がTomcatの最大スレッド数を超えています。上位の優先度が待機できない場合があります。 : {} > {}",
+					threads, maxThreads);
+		}
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) throws ServletException {
+		if (!enabled) {
+			return true;
+		}
+		final String path = request.getRequestURI().substring(request.getContextPath().length());
+		for (String exclude : excludePaths) {
+			if (!exclude.isEmpty() && path.startsWith(exclude)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		final Priority priority = classify(request);
+		final ClassStats classStats = stats[priority.ordinal()];
+		final long start = System.nanoTime();
+		final boolean acquired;
+		try {
+			acquired = gate.tryAcquire(priority, timeoutNanos[priority.ordinal()], TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServletException(e);
+		}
+		classStats.queued(System.nanoTime() - start);
+		if (!acquired) {
+			classStats.rejected.increment();
+			log.debug("実行枠を取得できなかったためリクエストを破棄しました。 : priority={} uri={}", priority,
+					request.getRequestURI());
+			busy.write(response);
+			return;
+		}
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			gate.release();
+		}
+	}
+
+	private Priority classify(HttpServletRequest request) {
+		final String path = request.getRequestURI().substring(request.getContextPath().length());
+		final String method = request.getMethod();
+		for (Rule rule : rules) {
+			if ((rule.method == null || rule.method.equals(method)) && path.startsWith(rule.pathPrefix)) {
+				return rule.priority;
+			}
+		}
+		return Priority.NORMAL;
+	}
+
+	private static List<Rule> parseRules(String spec, Priority priority) {
+		final List<Rule> parsed = new ArrayList<>();
+		for (String entry : StringUtils.commaDelimitedListToStringArray(spec)) {
+			final String[] parts = entry.trim().split("\\s+", 2);
+			if (parts[0].isEmpty()) {
+				continue;
+			}
+			parsed.add(parts.length == 2 ? new Rule(parts[0], parts[1], priority) : new Rule(null, parts[0], priority));
+		}
+		return parsed;
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		final List<Metric<?>> metrics = new ArrayList<>();
+		if (!enabled) {
+			return metrics;
+		}
+		metrics.add(new Metric<>("spplogin.priority.in-flight", gate.inFlight()));
+		for (Priority priority : PRIORITIES) {
+			final ClassStats classStats = stats[priority.ordinal()];
+			final String prefix = "spplogin.priority." + priority.name().toLowerCase() + ".";
+			metrics.add(new Metric<>(prefix + "requests", classStats.requests.sum()));
+			metrics.add(new Metric<>(prefix + "rejected", classStats.rejected.sum()));
+			metrics.add(new Metric<>(prefix + "waiting", gate.waiting(priority)));
+			metrics.add(new Metric<>(prefix + "queue-time-total-millis",
+					TimeUnit.NANOSECONDS.toMillis(classStats.queueNanos.sum())));
+			// 前回の取得以降の最大待機時間
+			metrics.add(new Metric<>(prefix + "queue-time-max-millis",
+					TimeUnit.NANOSECONDS.toMillis(classStats.maxQueueNanos.getAndSet(0))));
+		}
+		return metrics;
+	}
+
+	/** 分類の規則 */
+	private static class Rule {
+		final String method;
+		final String pathPrefix;
+		final Priority priority;
+
+		Rule(String method, String pathPrefix, Priority priority) {
+			this.method = method;
+			this.pathPrefix = pathPrefix;
+			this.priority = priority;
+		}
+	}
+
+	/** 優先度毎の集計 */
+	private static class ClassStats {
+		final LongAdder requests = new LongAdder();
+		final LongAdder rejected = new LongAdder();
+		final LongAdder queueNanos = new LongAdder();
+		final AtomicLong maxQueueNanos = new AtomicLong();
+
+		void queued(long nanos) {
+			requests.increment();
+			queueNanos.add(nanos);
+			long max;
+			while (nanos > (max = maxQueueNanos.get()) && !maxQueueNanos.compareAndSet(max, nanos)) {
+				// 最大値を更新するまで繰り返す
+			}
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package jp.co.disney.spplogin.filter;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import jp.co.disney.spplogin.timing.RequestTiming;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * ログイン／新規登録画面の処理時間の内訳（RequestTiming）を収集し、Server-Timingヘッダと1行のログに出力するフィルタ。
+ * 以下のいずれかに該当するリクエストが対象。
+ *   spplogin.server-timing.enabled=true
+ *   spplogin.server-timing.sample-rate の割合で抽出されたリクエスト
+ *   spplogin.server-timing.debug-header のヘッダに spplogin.server-timing.debug-token を指定したリクエスト
+ *
+ * セッションの保存を内訳に含めるため、SessionRepositoryFilterより先に実行する。
+ * 描画後にヘッダを設定できるよう、対象リクエストのレスポンス本文はバッファし、処理完了後に送信する。
+ * リダイレクト、エラー応答はその時点までの内訳をヘッダに設定する（以降の処理はログにのみ含まれる）。
+ * </pre>
+ */
+@Slf4j
+@Component
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+	private static final String HEADER = "Server-Timing";
+
+	@Value("${spplogin.server-timing.enabled}")
+	private boolean enabled;
+
+	@Value("${spplogin.server-timing.sample-rate}")
+	private double sampleRate;
+
+	@Value("${spplogin.server-timing.debug-header}")
+	private String debugHeader;
+
+	@Value("${spplogin.server-timing.debug-token}")
+	private String debugToken;
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) throws ServletException {
+		return !enabled && sampleRate <= 0 && !StringUtils.hasText(debugToken);
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		if (!isTarget(request)) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+
+		final RequestTiming timing = RequestTiming.start();
+		final TimingResponseWrapper wrapper = new TimingResponseWrapper(response, timing);
+		try {
+			filterChain.doFilter(request, wrapper);
+		} finally {
+			RequestTiming.end();
+			if (!response.isCommitted()) {
+				response.setHeader(HEADER, timing.toServerTiming());
+			}
+			wrapper.copyBodyToResponse();
+			log.info("server-timing method={} path={} status={} {}",
+					request.getMethod(), request.getRequestURI(), response.getStatus(), timing.toLogFields());
+		}
+	}
+
+	private boolean isTarget(HttpServletRequest request) {
+		if (enabled) {
+			return true;
+		}
+		if (StringUtils.hasText(debugToken) && debugToken.equals(request.getHeader(debugHeader))) {
+			return true;
+		}
+		return sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+	}
+
+	/**
+	 * リダイレクト、エラー応答の送信前にServer-Timingヘッダを設定する。
+	 */
+	private static class TimingResponseWrapper extends ContentCachingResponseWrapper {
+
+		private final RequestTiming timing;
+
+		TimingResponseWrapper(HttpServletResponse response, RequestTiming timing) {
+			super(response);
+			this.timing = timing;
+		}
+
+		@Override
+		public void sendRedirect(String location) throws IOException {
+			setHeader(HEADER, timing.toServerTiming());
+			super.sendRedirect(location);
+		}
+
+		@Override
+		public void sendError(int sc) throws IOException {
+			setHeader(HEADER, timing.toServerTiming());
+			super.sendError(sc);
+		}
+
+		@Override
+		public void sendError(int sc, String msg) throws IOException {
+			setHeader(HEADER, timing.toServerTiming());
+			super.sendError(sc, msg);
+		}
+	}
+}
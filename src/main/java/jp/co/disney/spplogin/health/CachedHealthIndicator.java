@@ -0,0 +1,106 @@
+package jp.co.disney.spplogin.health;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * 確認結果をキャッシュするヘルスチェック。
+ * 確認（check）はHealthCheckSchedulerがバックグラウンドで定期的に実行し、
+ * health()はキャッシュした結果に経過時間（ageMillis）と所要時間（latencyMillis）を付けて返すのみとする。
+ * 確認がタイムアウトした場合はDOWN、一定時間確認できていない場合はUNKNOWNとする。
+ * </pre>
+ */
+@Slf4j
+public abstract class CachedHealthIndicator implements HealthIndicator {
+
+	private final AtomicBoolean running = new AtomicBoolean();
+	private volatile long startedAtMillis;
+	private volatile long staleAfterMillis = Long.MAX_VALUE;
+	private volatile Result result = new Result(Health.unknown().withDetail("message", "未確認").build(), 0L,
+			System.currentTimeMillis());
+
+	/**
+	 * 確認を行う。呼び出し元はバックグラウンドのスレッドのため、時間がかかってもよい。
+	 * @param builder 確認結果。状態が未設定の場合はUPとする
+	 * @throws Exception 確認に失敗した場合（DOWNとなる）
+	 */
+	protected abstract void check(Health.Builder builder) throws Exception;
+
+	@Override
+	public Health health() {
+		final Result current = result;
+		final long age = System.currentTimeMillis() - current.checkedAtMillis;
+		final Health.Builder builder = age > staleAfterMillis
+				? Health.unknown().withDetail("message", "確認結果が古くなっています")
+				: Health.status(current.health.getStatus());
+		return builder.withDetail("ageMillis", age)
+				.withDetail("latencyMillis", current.latencyMillis)
+				.withDetail("checked", current.health.getDetails())
+				.build();
+	}
+
+	void setStaleAfterMillis(long staleAfterMillis) {
+		this.staleAfterMillis = staleAfterMillis;
+	}
+
+	/**
+	 * 確認を開始する。前回の確認が終了していない場合は開始しない。
+	 * @return 開始した場合true
+	 */
+	boolean tryStart() {
+		if (!running.compareAndSet(false, true)) {
+			return false;
+		}
+		startedAtMillis = System.currentTimeMillis();
+		return true;
+	}
+
+	/**
+	 * 確認を実行し、結果をキャッシュする。tryStartがtrueを返した後に呼び出すこと。
+	 */
+	void refresh() {
+		final long start = System.nanoTime();
+		Health health;
+		try {
+			final Health.Builder builder = new Health.Builder(Status.UP);
+			check(builder);
+			health = builder.build();
+		} catch (Exception e) {
+			log.debug("ヘルスチェックに失敗しました。 : {}", getClass().getSimpleName(), e);
+			health = Health.down(e).build();
+		}
+		result = new Result(health, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), System.currentTimeMillis());
+		running.set(false);
+	}
+
+	/**
+	 * 実行中の確認がタイムアウトしている場合はDOWNとする。確認自体は終了するまで次を開始しない。
+	 * @param timeoutMillis タイムアウト（ミリ秒）
+	 */
+	void checkTimeout(long timeoutMillis) {
+		final long now = System.currentTimeMillis();
+		if (running.get() && now - startedAtMillis > timeoutMillis) {
+			result = new Result(Health.down().withDetail("message", "確認がタイムアウトしました").build(),
+					now - startedAtMillis, now);
+		}
+	}
+
+	private static class Result {
+		final Health health;
+		final long latencyMillis;
+		final long checkedAtMillis;
+
+		Result(Health health, long latencyMillis, long checkedAtMillis) {
+			this.health = health;
+			this.latencyMillis = latencyMillis;
+			this.checkedAtMillis = checkedAtMillis;
+		}
+	}
+}
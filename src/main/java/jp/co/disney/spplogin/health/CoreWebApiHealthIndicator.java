@@ -0,0 +1,46 @@
+package jp.co.disney.spplogin.health;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * <pre>
+ * Core WebAPIのヘルスチェック。ベースURLへのHEADリクエストに応答があればUP（5xxの場合はDOWN）とする。
+ * 業務の呼び出し（RestTemplate）のコネクションプール、応答時間、エラーログに影響しないよう、
+ * タイムアウトを設定した専用のHttpClient（coreWebApiHealthHttpClient）を使用する。
+ * </pre>
+ */
+@Component("coreWebApiHealthIndicator")
+public class CoreWebApiHealthIndicator extends CachedHealthIndicator {
+
+	@Value("${spplogin.core-webapi.base-url}")
+	private String baseUrl;
+
+	@Value("${spplogin.core-webapi.port}")
+	private int port;
+
+	@Autowired
+	@Qualifier("coreWebApiHealthHttpClient")
+	private CloseableHttpClient httpClient;
+
+	@Override
+	protected void check(Health.Builder builder) throws Exception {
+		final String url = UriComponentsBuilder.fromUriString(baseUrl).port(port).path("/").toUriString();
+		try (CloseableHttpResponse response = httpClient.execute(new HttpHead(url))) {
+			final int status = response.getStatusLine().getStatusCode();
+			builder.withDetail("url", url).withDetail("status", status);
+			if (status >= 500) {
+				builder.down();
+			} else {
+				builder.up();
+			}
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package jp.co.disney.spplogin.health;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * <pre>
+ * キャッシュするヘルスチェック（CachedHealthIndicator）を定期的に実行する。
+ * 確認は専用のスレッドで行い、スケジュール実行用のスレッドは確認の終了を待たない。
+ * 各ヘルスチェックは前回の確認が終了するまで次を開始しないため、スレッド数はヘルスチェックの数を超えない。
+ * </pre>
+ */
+@Component
+public class HealthCheckScheduler {
+
+	@Value("${spplogin.health.timeout-millis}")
+	private long timeoutMillis;
+
+	@Value("${spplogin.health.stale-after-millis}")
+	private long staleAfterMillis;
+
+	@Autowired
+	private List<CachedHealthIndicator> indicators;
+
+	private ExecutorService executor;
+
+	@PostConstruct
+	public void init() {
+		executor = Executors.newCachedThreadPool(new CustomizableThreadFactory("health-check-"));
+		for (CachedHealthIndicator indicator : indicators) {
+			indicator.setStaleAfterMillis(staleAfterMillis);
+		}
+	}
+
+	@PreDestroy
+	public void destroy() {
+		executor.shutdownNow();
+	}
+
+	@Scheduled(fixedRateString = "${spplogin.health.interval-millis}")
+	public void refresh() {
+		for (CachedHealthIndicator indicator : indicators) {
+			indicator.checkTimeout(timeoutMillis);
+			if (indicator.tryStart()) {
+				executor.execute(indicator::refresh);
+			}
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package jp.co.disney.spplogin.health;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.stereotype.Component;
+
+/**
+ * <pre>
+ * SMTPサーバのヘルスチェック。接続して応答（220）を受信できればUPとする。
+ * 認証やメール送信は行わず、QUITで切断する。
+ * Spring Boot標準のメールヘルスチェック（management.health.mail）の代わりに使用する。
+ * </pre>
+ */
+@Component("mailHealthIndicator")
+public class MailHealthIndicator extends CachedHealthIndicator {
+
+	@Value("${spring.mail.host}")
+	private String host;
+
+	@Value("${spring.mail.port}")
+	private int port;
+
+	@Value("${spplogin.health.timeout-millis}")
+	private int timeoutMillis;
+
+	@Override
+	protected void check(Health.Builder builder) throws Exception {
+		try (Socket socket = new Socket()) {
+			socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+			socket.setSoTimeout(timeoutMillis);
+			final BufferedReader reader = new BufferedReader(
+					new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+			final String greeting = reader.readLine();
+			final OutputStream out = socket.getOutputStream();
+			out.write("QUIT\r\n".getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+			builder.withDetail("location", host + ":" + port);
+			if (greeting != null && greeting.startsWith("220")) {
+				builder.up();
+			} else {
+				builder.down().withDetail("greeting", String.valueOf(greeting));
+			}
+		}
+	}
+}
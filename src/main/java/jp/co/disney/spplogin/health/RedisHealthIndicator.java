@@ -0,0 +1,28 @@
+package jp.co.disney.spplogin.health;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Redisのヘルスチェック。PINGに応答があればUPとする。
+ * Spring Boot標準のRedisヘルスチェック（management.health.redis）の代わりに使用する。
+ */
+@Component("redisHealthIndicator")
+public class RedisHealthIndicator extends CachedHealthIndicator {
+
+	@Autowired
+	private RedisConnectionFactory redisConnectionFactory;
+
+	@Override
+	protected void check(Health.Builder builder) throws Exception {
+		final RedisConnection connection = redisConnectionFactory.getConnection();
+		try {
+			builder.up().withDetail("ping", connection.ping());
+		} finally {
+			connection.close();
+		}
+	}
+}
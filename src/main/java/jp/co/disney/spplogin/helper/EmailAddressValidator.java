@@ -44,6 +44,15 @@ public class EmailAddressValidator {
 	@Autowired
 	private CoreWebApiService coreWebApiService;
 	
+	/**
+	 * 許容ドメインか判定する。
+	 * @param domain ドメイン
+	 * @return 許容ドメインの場合true
+	 */
+	public static boolean isValidDomain(String domain) {
+		return validDomains.contains(domain);
+	}
+	
 	/**
 	 * <pre>
 	 * メールアドレス有効性判定。
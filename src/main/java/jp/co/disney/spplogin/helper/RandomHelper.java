@@ -1,16 +1,22 @@
 package jp.co.disney.spplogin.helper;
 
-import java.util.UUID;
-
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import jp.co.disney.spplogin.util.SecureTokens;
+
 @Component
 public class RandomHelper {
+	
+	@Value("${spplogin.token.random-id-bytes}")
+	private int randomIdBytes;
+	
 	/**
 	 * ランダムなIDを返す。
+	 * 空メールアドレスのローカル部に使用するため、区切り文字（_）を含まない16進（小文字）とする。
 	 * @return
 	 */
 	public String randomID() {
-		return UUID.randomUUID().toString().replace("-", "");
+		return SecureTokens.hex(randomIdBytes);
 	}
 }
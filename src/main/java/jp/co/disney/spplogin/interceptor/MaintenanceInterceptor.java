@@ -3,8 +3,11 @@ package jp.co.disney.spplogin.interceptor;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+import org.springframework.web.servlet.resource.ResourceHttpRequestHandler;
 
+import jp.co.disney.spplogin.maintenance.MaintenanceSwitch;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -13,16 +16,24 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class MaintenanceInterceptor extends HandlerInterceptorAdapter {
 	
+	private static final String MAINTENANCE_PATH = "/Maintenance";
+	
+	@Autowired
+	private MaintenanceSwitch maintenanceSwitch;
+	
 	@Override
 	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
 			throws Exception {
-		if (isMaintenance() &&
-				!request.getRequestURI().equals(request.getContextPath() + "/maintenance")) {
-			response.sendRedirect(request.getContextPath() + "/maintenance");
-			return false;
-		} else {
+		if (!isMaintenance() || handler instanceof ResourceHttpRequestHandler) {
+			return true;
+		}
+		final String path = request.getRequestURI().substring(request.getContextPath().length());
+		if (path.equals(MAINTENANCE_PATH) || maintenanceSwitch.isAllowed(path, request.getRemoteAddr())) {
 			return true;
 		}
+		log.debug("メンテナンス中のためリダイレクトします。 : {}", path);
+		response.sendRedirect(request.getContextPath() + MAINTENANCE_PATH);
+		return false;
 	}
 	
 	/**
@@ -30,8 +41,7 @@ public class MaintenanceInterceptor extends HandlerInterceptorAdapter {
 	 * @return
 	 */
 	private boolean isMaintenance() {
-		// TODO
-		return false;
+		return maintenanceSwitch.isActive();
 	}
 
 }
@@ -0,0 +1,36 @@
+package jp.co.disney.spplogin.interceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import jp.co.disney.spplogin.timing.RequestTiming;
+
+/**
+ * 画面描画（Thymeleaf）の処理時間をRequestTimingに「render」として記録するインターセプター。
+ * コントローラの処理完了（postHandle）から描画完了（afterCompletion）までを描画時間とする。
+ */
+public class RenderTimingInterceptor extends HandlerInterceptorAdapter {
+
+	private static final String START_ATTRIBUTE = RenderTimingInterceptor.class.getName() + ".start";
+
+	@Override
+	public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+			ModelAndView modelAndView) throws Exception {
+		if (modelAndView != null && RequestTiming.isActive()) {
+			request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+		}
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) throws Exception {
+		final Object start = request.getAttribute(START_ATTRIBUTE);
+		if (start != null) {
+			request.removeAttribute(START_ATTRIBUTE);
+			RequestTiming.record("render", System.nanoTime() - (Long) start);
+		}
+	}
+}
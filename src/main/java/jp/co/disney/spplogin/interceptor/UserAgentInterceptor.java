@@ -2,43 +2,176 @@ package jp.co.disney.spplogin.interceptor;
 
 import is.tagomor.woothee.Classifier;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+import org.springframework.web.servlet.resource.ResourceHttpRequestHandler;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 
 import lombok.extern.slf4j.Slf4j;
 
 /**
+ * <pre>
  * サービス提供対象のUserAgent判定を行うインターセプター
+ * spplogin.user-agent.check.enabled=true の場合、提供対象外の端末を対象外端末画面へリダイレクトする。
  *
+ * UserAgentの解析結果は件数上限付きのキャッシュ（Caffeine、W-TinyLFU）に保持し、同じUserAgentを再解析しない。
+ * 静的リソースへのリクエストは判定しない。
+ * </pre>
  */
 @Slf4j
-public class UserAgentInterceptor extends HandlerInterceptorAdapter {
+public class UserAgentInterceptor extends HandlerInterceptorAdapter implements PublicMetrics {
+	
+	private static final String UNSUPPORTED_PATH = "/unsupported";
+	
+	/** これより長いUserAgentはキャッシュしない */
+	private static final int MAX_CACHEABLE_LENGTH = 512;
+	
+	@Value("${spplogin.user-agent.check.enabled}")
+	private boolean checkEnabled;
+	
+	@Value("${spplogin.user-agent.cache.max-size}")
+	private long cacheMaxSize;
+	
+	private Cache<String, Classification> cache;
+	
+	private final AtomicLong parseNanos = new AtomicLong();
+	private final LongAdder parses = new LongAdder();
+	private final LongAdder unsupported = new LongAdder();
+	
+	@PostConstruct
+	public void init() {
+		cache = Caffeine.newBuilder().maximumSize(cacheMaxSize).recordStats().build();
+	}
+	
 	@Override
 	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
 			throws Exception {
+		if (!checkEnabled || handler instanceof ResourceHttpRequestHandler) {
 			return true;
+		}
+		final String userAgent = request.getHeader("User-Agent");
+		if (userAgent == null || classify(userAgent).supported) {
+			return true;
+		}
+		unsupported.increment();
+		log.debug("サービス提供対象外の端末です。 : {}", userAgent);
+		response.sendRedirect(request.getContextPath() + UNSUPPORTED_PATH);
+		return false;
 	}
 	
-	private boolean isSupportModel(String userAgent) {
-		Map<String, String> r = Classifier.parse(userAgent);
+	/**
+	 * UserAgentを判定する。
+	 * @param userAgent UserAgent
+	 * @return 判定結果
+	 */
+	Classification classify(String userAgent) {
+		if (userAgent.length() > MAX_CACHEABLE_LENGTH) {
+			return parse(userAgent);
+		}
+		return cache.get(userAgent, this::parse);
+	}
+	
+	private Classification parse(String userAgent) {
+		final long start = System.nanoTime();
+		final Classification classification = Classification.of(Classifier.parse(userAgent));
+		parseNanos.addAndGet(System.nanoTime() - start);
+		parses.increment();
+		return classification;
+	}
+	
+	@Override
+	public Collection<Metric<?>> metrics() {
+		final CacheStats stats = cache.stats();
+		final long parseCount = parses.sum();
+		final double averageParseNanos = parseCount == 0 ? 0 : (double) parseNanos.get() / parseCount;
+		return Arrays.<Metric<?>>asList(
+				new Metric<>("spplogin.useragent.cache.size", cache.estimatedSize()),
+				new Metric<>("spplogin.useragent.cache.hits", stats.hitCount()),
+				new Metric<>("spplogin.useragent.cache.misses", stats.missCount()),
+				new Metric<>("spplogin.useragent.cache.hit-rate", stats.hitRate()),
+				new Metric<>("spplogin.useragent.cache.evictions", stats.evictionCount()),
+				new Metric<>("spplogin.useragent.parse.average-micros", averageParseNanos / 1000),
+				// 解析の平均時間 × キャッシュヒット数
+				new Metric<>("spplogin.useragent.parse.saved-millis",
+						(long) (averageParseNanos * stats.hitCount() / TimeUnit.MILLISECONDS.toNanos(1))),
+				new Metric<>("spplogin.useragent.unsupported", unsupported.sum()));
+	}
+	
+	/**
+	 * UserAgentの判定結果
+	 */
+	static final class Classification {
+		final String os;
+		final String browser;
+		/** OSのメジャーバージョン。不明の場合-1 */
+		final int osMajorVersion;
+		final boolean supported;
+		
+		private Classification(String os, String browser, int osMajorVersion) {
+			this.os = os;
+			this.browser = browser;
+			this.osMajorVersion = osMajorVersion;
+			this.supported = isSupportModel(os, browser, osMajorVersion);
+		}
+		
+		static Classification of(Map<String, String> parsed) {
+			final String os = parsed.get("os");
+			return new Classification(os == null ? null : os.intern(),
+					parsed.get("name"),
+					majorVersion(parsed.get("os_version")));
+		}
+		
+		/**
+		 * <pre>
+		 * Android : 5以上かつChrome
+		 * iPhone : 7以上かつSafari
+		 * 上記以外のOS、およびバージョンが判定できない場合は対象とする。
+		 * </pre>
+		 */
+		private static boolean isSupportModel(String os, String browser, int osMajorVersion) {
+			if (os == null || osMajorVersion < 0) {
+				return true;
+			}
+			switch (os) {
+				case "Android" :
+					return osMajorVersion >= 5 && "Chrome".equals(browser);
+				case "iPhone" :
+					return osMajorVersion >= 7 && "Safari".equals(browser);
+				default :
+					return true;
+			}
+		}
 		
-		switch(r.get("os")) {
-			case "Android" :
-				if(Integer.parseInt(r.get("version").substring(0, 1)) < 5
-						|| !r.get("name").equals("Chrome")) {
-					return false;
-				}
-				break;
-			case "iPhone" :
-				if(Integer.parseInt(r.get("version").substring(0, 1)) < 7
-						|| !r.get("name").equals("Safari")) {
-					return false;
-				}
+		/**
+		 * 先頭の数字部分をメジャーバージョンとする（「10.3.1」→10）。
+		 */
+		private static int majorVersion(String version) {
+			if (version == null) {
+				return -1;
+			}
+			int major = 0;
+			int i = 0;
+			while (i < version.length() && i < 4 && Character.isDigit(version.charAt(i))) {
+				major = major * 10 + (version.charAt(i) - '0');
+				i++;
+			}
+			return i == 0 ? -1 : major;
 		}
-		return true;
 	}
 }
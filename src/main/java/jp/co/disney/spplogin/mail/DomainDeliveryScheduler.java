@@ -0,0 +1,260 @@
+package jp.co.disney.spplogin.mail;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+import org.springframework.boot.actuate.metrics.Metric;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * 宛先ドメイン毎の送信スケジューラ。
+ *
+ * ・宛先ドメイン毎にキューとトークンバケット（秒間送信数の上限）を持つ。
+ * ・送信可能なドメインをラウンドロビンで選び、1回の取り出しは単一ドメインのメールのみとする。
+ * ・送信レートはAIMDで調整する。一時エラー（SMTP 4xx）で減少させ、送信成功毎に一定量ずつ回復させる。
+ * ・ドメインは個別に管理するもの（許容ドメインおよびレート指定ドメイン）以外を「other」にまとめる。
+ * </pre>
+ */
+@Slf4j
+class DomainDeliveryScheduler {
+
+	static final String OTHER_DOMAIN = "other";
+
+	private final int capacity;
+	private final Settings settings;
+	private final Map<String, Double> initialRates;
+	private final Predicate<String> managedDomain;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition available = lock.newCondition();
+
+	private final ConcurrentMap<String, DomainQueue> domains = new ConcurrentHashMap<>();
+	/** 未送信のメールがあるドメイン（ラウンドロビン順） */
+	private final ArrayDeque<DomainQueue> ring = new ArrayDeque<>();
+	private final AtomicInteger size = new AtomicInteger();
+
+	/**
+	 * @param capacity 全ドメイン合計の上限件数
+	 * @param settings レート設定
+	 * @param initialRates ドメイン毎の初期レート（秒間送信数）
+	 * @param managedDomain 個別に管理するドメインの判定
+	 */
+	DomainDeliveryScheduler(int capacity, Settings settings, Map<String, Double> initialRates,
+			Predicate<String> managedDomain) {
+		this.capacity = capacity;
+		this.settings = settings;
+		this.initialRates = initialRates;
+		this.managedDomain = managedDomain;
+	}
+
+	/**
+	 * メールの宛先から管理上のドメインを求める。
+	 * @param entry メール
+	 * @return ドメイン
+	 */
+	String domainOf(OutboxEntry entry) {
+		final String[] to = entry.message.getTo();
+		if (to == null || to.length == 0 || to[0].lastIndexOf('@') < 0) {
+			return OTHER_DOMAIN;
+		}
+		final String domain = to[0].substring(to[0].lastIndexOf('@') + 1).toLowerCase();
+		return initialRates.containsKey(domain) || managedDomain.test(domain) ? domain : OTHER_DOMAIN;
+	}
+
+	/**
+	 * @return 上限件数に達している場合true
+	 */
+	boolean isFull() {
+		return size.get() >= capacity;
+	}
+
+	/**
+	 * メールを格納する。
+	 * @param entry メール
+	 * @return 上限に達している場合false
+	 */
+	boolean offer(OutboxEntry entry) {
+		lock.lock();
+		try {
+			if (size.get() >= capacity) {
+				return false;
+			}
+			final DomainQueue queue = domains.computeIfAbsent(domainOf(entry), this::newQueue);
+			queue.entries.add(entry);
+			queue.backlog.incrementAndGet();
+			size.incrementAndGet();
+			if (!queue.inRing) {
+				queue.inRing = true;
+				ring.addLast(queue);
+			}
+			available.signal();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 送信可能なドメインのメールを取り出す。送信可能なメールがなければ待機する。
+	 * @param max 最大件数
+	 * @param timeout 最大待機時間
+	 * @param unit 単位
+	 * @return 単一ドメインのメール。タイムアウトした場合は空
+	 * @throws InterruptedException
+	 */
+	List<OutboxEntry> take(int max, long timeout, TimeUnit unit) throws InterruptedException {
+		long remaining = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (true) {
+				long minWait = Long.MAX_VALUE;
+				for (int i = ring.size(); i > 0; i--) {
+					final DomainQueue queue = ring.pollFirst();
+					final long now = System.nanoTime();
+					final int permits = queue.acquire(Math.min(max, queue.entries.size()), now);
+					if (permits > 0) {
+						final List<OutboxEntry> batch = new ArrayList<>(permits);
+						for (int j = 0; j < permits; j++) {
+							batch.add(queue.entries.pollFirst());
+						}
+						queue.backlog.addAndGet(-permits);
+						size.addAndGet(-permits);
+						if (queue.entries.isEmpty()) {
+							queue.inRing = false;
+						} else {
+							ring.addLast(queue);
+						}
+						return batch;
+					}
+					ring.addLast(queue);
+					minWait = Math.min(minWait, queue.nanosUntilToken(now));
+				}
+				if (remaining <= 0) {
+					return Collections.emptyList();
+				}
+				final long wait = Math.min(remaining, minWait);
+				final long start = System.nanoTime();
+				available.awaitNanos(wait);
+				remaining -= System.nanoTime() - start;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 送信結果をレートに反映する。
+	 * @param domain ドメイン
+	 * @param delivered 送信できた件数
+	 * @param deferred 一時エラー（SMTP 4xx）で送信できなかった件数
+	 */
+	void onResult(String domain, int delivered, int deferred) {
+		final DomainQueue queue = domains.get(domain);
+		if (queue == null) {
+			return;
+		}
+		lock.lock();
+		try {
+			queue.sent.add(delivered);
+			queue.deferred.add(deferred);
+			if (deferred > 0) {
+				final double before = queue.rate;
+				queue.rate = Math.max(settings.minRate, queue.rate * settings.decreaseFactor);
+				queue.tokens = 0;
+				log.info("送信が延期されたため送信レートを下げます。 : domain={} rate={} -> {}", domain, before, queue.rate);
+			} else if (delivered > 0) {
+				queue.rate = Math.min(settings.maxRate, queue.rate + settings.increaseStep);
+			}
+			available.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	int size() {
+		return size.get();
+	}
+
+	void addMetrics(Collection<Metric<?>> metrics) {
+		for (DomainQueue queue : domains.values()) {
+			final String prefix = "spplogin.mail.domain." + queue.domain.replace('.', '_');
+			metrics.add(new Metric<>(prefix + ".backlog", queue.backlog.get()));
+			metrics.add(new Metric<>(prefix + ".sent", queue.sent.sum()));
+			metrics.add(new Metric<>(prefix + ".deferred", queue.deferred.sum()));
+			metrics.add(new Metric<>(prefix + ".rate", queue.rate));
+		}
+	}
+
+	private DomainQueue newQueue(String domain) {
+		final Double rate = initialRates.get(domain);
+		return new DomainQueue(domain, rate != null ? rate : settings.defaultRate, settings.burst);
+	}
+
+	/**
+	 * レート設定
+	 */
+	static class Settings {
+		/** 初期レート（秒間送信数） */
+		double defaultRate;
+		/** バケットの容量（瞬間的に送信できる件数） */
+		double burst;
+		double minRate;
+		double maxRate;
+		/** 送信成功時のレート増加量 */
+		double increaseStep;
+		/** 一時エラー時のレート減少率 */
+		double decreaseFactor;
+	}
+
+	/**
+	 * ドメイン毎のキューとトークンバケット。lockを保持して操作する（backlog等のメトリクス用項目を除く）。
+	 */
+	private static class DomainQueue {
+		final String domain;
+		final ArrayDeque<OutboxEntry> entries = new ArrayDeque<>();
+		final double burst;
+		final AtomicInteger backlog = new AtomicInteger();
+		final LongAdder sent = new LongAdder();
+		final LongAdder deferred = new LongAdder();
+		volatile double rate;
+		double tokens;
+		long refilledAt = System.nanoTime();
+		boolean inRing;
+
+		DomainQueue(String domain, double rate, double burst) {
+			this.domain = domain;
+			this.rate = rate;
+			this.burst = burst;
+			this.tokens = burst;
+		}
+
+		int acquire(int requested, long now) {
+			tokens = Math.min(burst, tokens + (now - refilledAt) * rate / TimeUnit.SECONDS.toNanos(1));
+			refilledAt = now;
+			final int permits = (int) Math.min(requested, Math.floor(tokens));
+			tokens -= permits;
+			return permits;
+		}
+
+		long nanosUntilToken(long now) {
+			if (tokens >= 1) {
+				return 0;
+			}
+			return (long) Math.ceil((1 - tokens) / rate * TimeUnit.SECONDS.toNanos(1));
+		}
+	}
+}
@@ -0,0 +1,415 @@
+package jp.co.disney.spplogin.mail;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.MailSender;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+import com.sun.mail.smtp.SMTPSenderFailedException;
+
+import jp.co.disney.spplogin.helper.EmailAddressValidator;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * メールの非同期送信キュー。
+ * 登録したメールはスプールファイルに記録した上で上限付きのキューに格納し、呼び出し元には即座に戻る。
+ * ワーカースレッドが宛先ドメイン毎の送信レートに従ってまとめて取り出し、1回のSMTP接続で複数通を送信する。
+ * 送信に失敗したメールは指数バックオフで再送し、上限回数を超えた場合は破棄する。
+ * </pre>
+ */
+@Slf4j
+@Component
+public class MailOutbox implements PublicMetrics {
+
+	/** 秒間送信数の算出間隔（ミリ秒） */
+	private static final long RATE_INTERVAL_MILLIS = 10000;
+
+	@Value("${spplogin.mail.outbox.enabled}")
+	private boolean enabled;
+
+	@Value("${spplogin.mail.outbox.capacity}")
+	private int capacity;
+
+	@Value("${spplogin.mail.outbox.worker-count}")
+	private int workerCount;
+
+	@Value("${spplogin.mail.outbox.batch-size}")
+	private int batchSize;
+
+	@Value("${spplogin.mail.outbox.max-attempts}")
+	private int maxAttempts;
+
+	@Value("${spplogin.mail.outbox.initial-backoff-millis}")
+	private long initialBackoffMillis;
+
+	@Value("${spplogin.mail.outbox.max-backoff-millis}")
+	private long maxBackoffMillis;
+
+	@Value("${spplogin.mail.outbox.domain.default-rate}")
+	private double domainDefaultRate;
+
+	@Value("${spplogin.mail.outbox.domain.burst}")
+	private double domainBurst;
+
+	@Value("${spplogin.mail.outbox.domain.min-rate}")
+	private double domainMinRate;
+
+	@Value("${spplogin.mail.outbox.domain.max-rate}")
+	private double domainMaxRate;
+
+	@Value("${spplogin.mail.outbox.domain.increase-step}")
+	private double domainIncreaseStep;
+
+	@Value("${spplogin.mail.outbox.domain.decrease-factor}")
+	private double domainDecreaseFactor;
+
+	@Value("${spplogin.mail.outbox.domain.rates}")
+	private String domainRates;
+
+	@Value("${spplogin.mail.outbox.spool.path}")
+	private String spoolPath;
+
+	@Value("${spplogin.mail.outbox.spool.fsync}")
+	private boolean spoolFsync;
+
+	@Value("${spplogin.mail.outbox.spool.compact-threshold-bytes}")
+	private long spoolCompactThresholdBytes;
+
+	@Autowired
+	private MailSender mailSender;
+
+	@Autowired
+	private TaskScheduler taskScheduler;
+
+	private DomainDeliveryScheduler scheduler;
+	private MailSpool spool;
+	private ExecutorService workers;
+	private volatile boolean running;
+
+	private final AtomicLong sequence = new AtomicLong();
+	/** 未完了（キュー内および再送待ち）のメール */
+	private final ConcurrentNavigableMap<Long, OutboxEntry> pending = new ConcurrentSkipListMap<>();
+
+	private final LongAdder sent = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder retried = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder permanentFailures = new LongAdder();
+	private volatile double sentPerSecond;
+	private long lastSent;
+	private long lastRateNanos = System.nanoTime();
+
+	@PostConstruct
+	public void start() throws IOException {
+		if (!enabled) {
+			return;
+		}
+		scheduler = new DomainDeliveryScheduler(capacity, domainSettings(), parseDomainRates(domainRates),
+				EmailAddressValidator::isValidDomain);
+		spool = new MailSpool(Paths.get(spoolPath), spoolFsync, spoolCompactThresholdBytes);
+		final List<OutboxEntry> recovered = spool.open();
+		for (OutboxEntry entry : recovered) {
+			sequence.set(Math.max(sequence.get(), entry.id));
+			pending.put(entry.id, entry);
+			requeue(entry);
+		}
+		if (!recovered.isEmpty()) {
+			log.info("未送信のメールをスプールから復元しました。 : {}件", recovered.size());
+		}
+
+		running = true;
+		workers = Executors.newFixedThreadPool(workerCount, new CustomizableThreadFactory("mail-outbox-"));
+		for (int i = 0; i < workerCount; i++) {
+			workers.execute(this::work);
+		}
+	}
+
+	/**
+	 * 未送信のメールはスプールに残し、次回起動時に送信する。
+	 */
+	@PreDestroy
+	public void stop() throws IOException, InterruptedException {
+		if (!enabled) {
+			return;
+		}
+		running = false;
+		workers.shutdown();
+		workers.awaitTermination(10, TimeUnit.SECONDS);
+		spool.close();
+	}
+
+	/**
+	 * メールを送信キューに登録する。
+	 * @param message メール
+	 * @return 登録した場合true。無効、またはキューが満杯の場合false（呼び出し元で同期送信すること）
+	 */
+	public boolean enqueue(SimpleMailMessage message) {
+		if (!enabled) {
+			return false;
+		}
+		if (scheduler.isFull()) {
+			rejected.increment();
+			return false;
+		}
+		final OutboxEntry entry = new OutboxEntry(sequence.incrementAndGet(), message, System.currentTimeMillis());
+		try {
+			spool.enqueued(entry);
+		} catch (IOException e) {
+			log.warn("メール送信スプールへの書き込みに失敗しました。", e);
+			rejected.increment();
+			return false;
+		}
+		pending.put(entry.id, entry);
+		// 再送分と競合して満杯となった場合も、スプールに記録済みのため後で格納する
+		requeue(entry);
+		return true;
+	}
+
+	/**
+	 * 複数のメールを送信キューに登録する。スプールへの記録は1回の書き込みで行う。
+	 * @param messages メール
+	 * @return 登録できなかったメール（呼び出し元で同期送信すること）
+	 */
+	public List<SimpleMailMessage> enqueueAll(List<SimpleMailMessage> messages) {
+		if (!enabled) {
+			return messages;
+		}
+		final int accepted = Math.max(0, Math.min(messages.size(), capacity - scheduler.size()));
+		final List<OutboxEntry> entries = new ArrayList<>(accepted);
+		final long now = System.currentTimeMillis();
+		for (SimpleMailMessage message : messages.subList(0, accepted)) {
+			entries.add(new OutboxEntry(sequence.incrementAndGet(), message, now));
+		}
+		try {
+			spool.enqueued(entries);
+		} catch (IOException e) {
+			log.warn("メール送信スプールへの書き込みに失敗しました。", e);
+			rejected.add(messages.size());
+			return messages;
+		}
+		for (OutboxEntry entry : entries) {
+			pending.put(entry.id, entry);
+			requeue(entry);
+		}
+		rejected.add(messages.size() - accepted);
+		return messages.subList(accepted, messages.size());
+	}
+
+	private void work() {
+		final List<OutboxEntry> batch = new ArrayList<>(batchSize);
+		while (running) {
+			try {
+				batch.addAll(scheduler.take(batchSize, 1, TimeUnit.SECONDS));
+				if (!batch.isEmpty()) {
+					deliver(batch);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (RuntimeException e) {
+				log.error("メール送信処理で予期しないエラーが発生しました。", e);
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * 単一ドメイン宛のメールをまとめて送信する（JavaMailSenderImplは1回の呼び出しで1つのSMTP接続を使用する）。
+	 * SMTP 5xxは再送せずに破棄し、4xxは宛先ドメインの送信レートを下げた上で再送する。
+	 */
+	private void deliver(List<OutboxEntry> batch) {
+		final SimpleMailMessage[] messages = new SimpleMailMessage[batch.size()];
+		for (int i = 0; i < messages.length; i++) {
+			messages[i] = batch.get(i).message;
+		}
+
+		final Map<Object, Exception> failures = new IdentityHashMap<>();
+		try {
+			mailSender.send(messages);
+		} catch (MailSendException e) {
+			failures.putAll(e.getFailedMessages());
+			if (failures.isEmpty()) {
+				for (SimpleMailMessage message : messages) {
+					failures.put(message, e);
+				}
+			}
+		} catch (MailException e) {
+			// 接続・認証エラー等はバッチ全体が失敗
+			for (SimpleMailMessage message : messages) {
+				failures.put(message, e);
+			}
+		}
+		batches.increment();
+
+		int delivered = 0;
+		int deferred = 0;
+		for (OutboxEntry entry : batch) {
+			final Exception cause = failures.get(entry.message);
+			if (cause == null) {
+				delivered++;
+				sent.increment();
+				complete(entry);
+				continue;
+			}
+			final int code = smtpReturnCode(cause);
+			if (code >= 500) {
+				log.error("メール送信が拒否されたため破棄します。 : to={} code={}", entry.message.getTo(), code, cause);
+				permanentFailures.increment();
+				failed.increment();
+				complete(entry);
+				continue;
+			}
+			if (code >= 400) {
+				deferred++;
+			}
+			retry(entry, cause);
+		}
+		scheduler.onResult(scheduler.domainOf(batch.get(0)), delivered, deferred);
+	}
+
+	/**
+	 * 例外からSMTPの応答コードを取得する。
+	 * @return 応答コード。SMTPの応答によるものでない場合-1
+	 */
+	static int smtpReturnCode(Throwable e) {
+		Throwable t = e;
+		for (int depth = 0; t != null && depth < 10; depth++) {
+			if (t instanceof SMTPSendFailedException) {
+				return ((SMTPSendFailedException) t).getReturnCode();
+			}
+			if (t instanceof SMTPAddressFailedException) {
+				return ((SMTPAddressFailedException) t).getReturnCode();
+			}
+			if (t instanceof SMTPSenderFailedException) {
+				return ((SMTPSenderFailedException) t).getReturnCode();
+			}
+			t = t.getCause();
+		}
+		return -1;
+	}
+
+	private DomainDeliveryScheduler.Settings domainSettings() {
+		final DomainDeliveryScheduler.Settings settings = new DomainDeliveryScheduler.Settings();
+		settings.defaultRate = domainDefaultRate;
+		settings.burst = domainBurst;
+		settings.minRate = domainMinRate;
+		settings.maxRate = domainMaxRate;
+		settings.increaseStep = domainIncreaseStep;
+		settings.decreaseFactor = domainDecreaseFactor;
+		return settings;
+	}
+
+	/**
+	 * 「ドメイン:秒間送信数」のカンマ区切りを解析する。
+	 */
+	private static Map<String, Double> parseDomainRates(String spec) {
+		final Map<String, Double> rates = new HashMap<>();
+		for (String entry : StringUtils.commaDelimitedListToStringArray(spec)) {
+			final String[] domainAndRate = entry.trim().split(":", 2);
+			if (domainAndRate.length == 2) {
+				rates.put(domainAndRate[0].trim().toLowerCase(), Double.valueOf(domainAndRate[1].trim()));
+			}
+		}
+		return rates;
+	}
+
+	private void retry(OutboxEntry entry, Exception cause) {
+		entry.attempts++;
+		if (entry.attempts >= maxAttempts) {
+			log.error("メール送信の再試行回数が上限に達したため破棄します。 : to={} attempts={}",
+					entry.message.getTo(), entry.attempts, cause);
+			failed.increment();
+			complete(entry);
+			return;
+		}
+		final long backoff = Math.min(initialBackoffMillis << Math.min(entry.attempts - 1, 30), maxBackoffMillis);
+		log.warn("メール送信に失敗しました。{}ms後に再送します。 : to={} attempts={} cause={}",
+				backoff, entry.message.getTo(), entry.attempts, cause == null ? null : cause.getMessage());
+		retried.increment();
+		taskScheduler.schedule(() -> requeue(entry), new Date(System.currentTimeMillis() + backoff));
+	}
+
+	private void requeue(OutboxEntry entry) {
+		if (!scheduler.offer(entry)) {
+			taskScheduler.schedule(() -> requeue(entry), new Date(System.currentTimeMillis() + initialBackoffMillis));
+		}
+	}
+
+	private void complete(OutboxEntry entry) {
+		pending.remove(entry.id);
+		try {
+			spool.done(entry.id);
+		} catch (IOException e) {
+			// 再起動時に再送される
+			log.warn("メール送信スプールへの書き込みに失敗しました。", e);
+		}
+	}
+
+	/**
+	 * 秒間送信数を更新する。
+	 */
+	@Scheduled(fixedRate = RATE_INTERVAL_MILLIS)
+	public void updateRate() {
+		final long now = System.nanoTime();
+		final long current = sent.sum();
+		final double seconds = (double) (now - lastRateNanos) / TimeUnit.SECONDS.toNanos(1);
+		sentPerSecond = seconds > 0 ? (current - lastSent) / seconds : 0;
+		lastSent = current;
+		lastRateNanos = now;
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		final Map.Entry<Long, OutboxEntry> oldest = pending.firstEntry();
+		final List<Metric<?>> metrics = new ArrayList<>();
+		metrics.add(new Metric<>("spplogin.mail.outbox.depth", pending.size()));
+		metrics.add(new Metric<>("spplogin.mail.outbox.oldest-age-millis",
+				oldest == null ? 0 : System.currentTimeMillis() - oldest.getValue().enqueuedAt));
+		metrics.add(new Metric<>("spplogin.mail.outbox.sent", sent.sum()));
+		metrics.add(new Metric<>("spplogin.mail.outbox.sent-per-second", sentPerSecond));
+		metrics.add(new Metric<>("spplogin.mail.outbox.failed", failed.sum()));
+		metrics.add(new Metric<>("spplogin.mail.outbox.retried", retried.sum()));
+		metrics.add(new Metric<>("spplogin.mail.outbox.rejected", rejected.sum()));
+		metrics.add(new Metric<>("spplogin.mail.outbox.batches", batches.sum()));
+		metrics.add(new Metric<>("spplogin.mail.outbox.permanent-failures", permanentFailures.sum()));
+		if (scheduler != null) {
+			scheduler.addMetrics(metrics);
+		}
+		return metrics;
+	}
+}
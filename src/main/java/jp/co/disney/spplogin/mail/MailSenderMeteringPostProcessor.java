@@ -0,0 +1,40 @@
+package jp.co.disney.spplogin.mail;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.mail.MailSender;
+
+import jp.co.disney.spplogin.metrics.LatencyHistograms;
+
+/**
+ * <pre>
+ * MailSender（Spring Boot標準のBean : mailSender）を応答時間計測用にラップする。
+ * LatencyHistogramsは全てのBeanPostProcessorが適用されるよう、ラップ時に遅延取得する。
+ * </pre>
+ */
+public class MailSenderMeteringPostProcessor implements BeanPostProcessor, BeanFactoryAware {
+
+	private static final String TARGET_BEAN_NAME = "mailSender";
+
+	private BeanFactory beanFactory;
+
+	@Override
+	public void setBeanFactory(BeanFactory beanFactory) {
+		this.beanFactory = beanFactory;
+	}
+
+	@Override
+	public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+		return bean;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+		if (TARGET_BEAN_NAME.equals(beanName) && bean instanceof MailSender) {
+			return MeteredMailSender.wrap((MailSender) bean, beanFactory.getBean(LatencyHistograms.class));
+		}
+		return bean;
+	}
+}
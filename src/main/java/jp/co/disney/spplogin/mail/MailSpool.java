@@ -0,0 +1,264 @@
+package jp.co.disney.spplogin.mail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.mail.SimpleMailMessage;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * 送信待ちメールの追記型スプールファイル。プロセス停止時に未送信のメールを失わないために使用する。
+ *
+ * 1行1レコードで、登録時に「E 連番 JSON」、送信完了（または破棄）時に「D 連番」を追記する。
+ * 起動時に全レコードを読み込み、完了していないメールのみを残してファイルを書き直す。
+ * 稼働中も未完了のメールのレコードを保持しておき、ファイルが一定サイズ（かつ未完了分の2倍）を超えた時点で
+ * 未完了分のみを書き直す（再送待ちのメールが残り続けても、ファイルが際限なく大きくならないようにするため）。
+ *
+ * 送信後「D」の追記前にプロセスが停止した場合は再起動後に再送されるため、配送保証はat-least-onceとなる。
+ * fsync=false の場合、書き込みはOSのバッファまでとなる（プロセス障害には耐えるが、OS障害には耐えない）。
+ *
+ * ファイルへの書き込みはリクエストスレッドからも行われるため、排他にはsynchronizedではなくReentrantLockを使用する
+ * （仮想スレッドで実行した場合に、I/O待ちの間キャリアスレッドを占有しないようにするため）。
+ * レコードの組み立て（JSON変換）はロックの外で行う。
+ * </pre>
+ */
+@Slf4j
+class MailSpool {
+
+	private static final TypeReference<Map<String, Object>> RECORD_TYPE = new TypeReference<Map<String, Object>>() {};
+
+	private final Path path;
+	private final boolean fsync;
+	private final long compactThresholdBytes;
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private FileChannel channel;
+	/** 未完了のメールの登録レコード（連番順） */
+	private final Map<Long, String> live = new LinkedHashMap<>();
+	/** 未完了のメールの登録レコードの合計バイト数 */
+	private long liveBytes;
+
+	MailSpool(Path path, boolean fsync, long compactThresholdBytes) {
+		this.path = path;
+		this.fsync = fsync;
+		this.compactThresholdBytes = compactThresholdBytes;
+	}
+
+	/**
+	 * スプールファイルから未完了のメールを復元し、未完了分のみを残して追記可能な状態で開く。
+	 * @return 未完了のメール（連番順）
+	 * @throws IOException
+	 */
+	List<OutboxEntry> open() throws IOException {
+		lock.lock();
+		try {
+			return recover();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private List<OutboxEntry> recover() throws IOException {
+		if (path.getParent() != null) {
+			Files.createDirectories(path.getParent());
+		}
+		final Map<Long, OutboxEntry> pending = new LinkedHashMap<>();
+		if (Files.exists(path)) {
+			try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					readRecord(line, pending);
+				}
+			}
+		}
+
+		for (OutboxEntry entry : pending.values()) {
+			addLive(entry.id, enqueuedRecord(entry));
+		}
+		rewrite();
+		return new ArrayList<>(pending.values());
+	}
+
+	/**
+	 * 未完了のメールのレコードのみで一時ファイルを作成し、スプールファイルと置き換えて追記可能な状態で開き直す。
+	 * 置き換えはアトミックに行うため、途中で停止しても元のファイルか新しいファイルのどちらかが残る。
+	 */
+	private void rewrite() throws IOException {
+		final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (String record : live.values()) {
+				write(out, record);
+			}
+			out.force(true);
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		// 置き換えに失敗した場合は元のファイルへの追記を続ける
+		if (channel != null) {
+			channel.close();
+		}
+		channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * メールの登録を記録する。
+	 * @param entry 送信待ちメール
+	 * @throws IOException
+	 */
+	void enqueued(OutboxEntry entry) throws IOException {
+		final String record = enqueuedRecord(entry);
+		lock.lock();
+		try {
+			append(record);
+			addLive(entry.id, record);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 複数メールの登録を1回の書き込みで記録する。
+	 * @param entries 送信待ちメール
+	 * @throws IOException
+	 */
+	void enqueued(List<OutboxEntry> entries) throws IOException {
+		final List<String> records = new ArrayList<>(entries.size());
+		final StringBuilder joined = new StringBuilder(entries.size() * 512);
+		for (OutboxEntry entry : entries) {
+			final String record = enqueuedRecord(entry);
+			records.add(record);
+			joined.append(record);
+		}
+		lock.lock();
+		try {
+			append(joined.toString());
+			for (int i = 0; i < entries.size(); i++) {
+				addLive(entries.get(i).id, records.get(i));
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * メールの送信完了（または破棄）を記録する。
+	 * @param id 連番
+	 * @throws IOException
+	 */
+	void done(long id) throws IOException {
+		lock.lock();
+		try {
+			append("D " + id + "\n");
+			final String record = live.remove(id);
+			if (record != null) {
+				liveBytes -= byteLength(record);
+			}
+			final long size = channel.size();
+			if (size > compactThresholdBytes && size > liveBytes * 2) {
+				rewrite();
+				log.debug("メール送信スプールを圧縮しました。 : {} {}bytes -> {}bytes（{}件）", path, size, liveBytes,
+						live.size());
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	void close() throws IOException {
+		lock.lock();
+		try {
+			if (channel != null) {
+				channel.close();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void append(String record) throws IOException {
+		write(channel, record);
+		if (fsync) {
+			channel.force(false);
+		}
+	}
+
+	private void addLive(long id, String record) {
+		live.put(id, record);
+		liveBytes += byteLength(record);
+	}
+
+	private static int byteLength(String record) {
+		return record.getBytes(StandardCharsets.UTF_8).length;
+	}
+
+	/**
+	 * @return スプールファイルのサイズ
+	 */
+	long size() throws IOException {
+		lock.lock();
+		try {
+			return channel.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private static void write(FileChannel out, String record) throws IOException {
+		final ByteBuffer buf = ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+		while (buf.hasRemaining()) {
+			out.write(buf);
+		}
+	}
+
+	private String enqueuedRecord(OutboxEntry entry) throws IOException {
+		final Map<String, Object> record = new HashMap<>();
+		record.put("at", entry.enqueuedAt);
+		record.put("to", entry.message.getTo());
+		record.put("from", entry.message.getFrom());
+		record.put("subject", entry.message.getSubject());
+		record.put("text", entry.message.getText());
+		return "E " + entry.id + " " + mapper.writeValueAsString(record) + "\n";
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readRecord(String line, Map<Long, OutboxEntry> pending) {
+		try {
+			final String[] parts = line.split(" ", 3);
+			final long id = Long.parseLong(parts[1]);
+			if ("D".equals(parts[0])) {
+				pending.remove(id);
+				return;
+			}
+			final Map<String, Object> record = mapper.readValue(parts[2], RECORD_TYPE);
+			final SimpleMailMessage message = new SimpleMailMessage();
+			message.setTo(((List<String>) record.get("to")).toArray(new String[0]));
+			message.setFrom((String) record.get("from"));
+			message.setSubject((String) record.get("subject"));
+			message.setText((String) record.get("text"));
+			pending.put(id, new OutboxEntry(id, message, ((Number) record.get("at")).longValue()));
+		} catch (RuntimeException | IOException e) {
+			// 書き込み途中で停止した最終行など
+			log.warn("メール送信スプールの読み込めないレコードを読み飛ばします。 : {}", line, e);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package jp.co.disney.spplogin.mail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <pre>
+ * 解析済みのメールテンプレート。
+ * テンプレートは固定文字列と差し込み項目の並びとして保持し、描画時には差し込み項目の値のみを参照する。
+ *
+ * 差し込み項目はVelocityの参照記法のうち以下のみ対応する。
+ *   $name, ${name} : 値がnullの場合は記述をそのまま出力
+ *   $!name, $!{name} : 値がnullの場合は空文字を出力
+ * 名前は英字で始まり、英数字・「_」・「-」からなる。それ以外の「$」は文字として扱う。
+ * </pre>
+ */
+public class MailTemplate {
+
+	private final String name;
+	/** 固定文字列（char[]）と差し込み項目（Reference）の並び */
+	private final Object[] segments;
+	/** 固定文字列の合計長 */
+	private final int literalLength;
+
+	private MailTemplate(String name, Object[] segments, int literalLength) {
+		this.name = name;
+		this.segments = segments;
+		this.literalLength = literalLength;
+	}
+
+	/**
+	 * テンプレートを解析する。
+	 * @param name テンプレート名
+	 * @param source テンプレート本文
+	 * @return 解析済みテンプレート
+	 */
+	public static MailTemplate compile(String name, String source) {
+		final List<Object> segments = new ArrayList<>();
+		final StringBuilder literal = new StringBuilder();
+		int literalLength = 0;
+		int i = 0;
+		while (i < source.length()) {
+			final char c = source.charAt(i);
+			final int end = c == '$' ? parseReference(source, i, segments, literal) : -1;
+			if (end < 0) {
+				literal.append(c);
+				i++;
+				continue;
+			}
+			i = end;
+		}
+		if (literal.length() > 0) {
+			segments.add(literal.toString().toCharArray());
+		}
+		for (Object segment : segments) {
+			if (segment instanceof char[]) {
+				literalLength += ((char[]) segment).length;
+			}
+		}
+		return new MailTemplate(name, segments.toArray(), literalLength);
+	}
+
+	/**
+	 * 「$」から始まる参照を解析し、直前の固定文字列とともに追加する。
+	 * @return 参照の直後の位置。参照でない場合-1
+	 */
+	private static int parseReference(String source, int start, List<Object> segments, StringBuilder literal) {
+		int i = start + 1;
+		final boolean quiet = i < source.length() && source.charAt(i) == '!';
+		if (quiet) {
+			i++;
+		}
+		final boolean braced = i < source.length() && source.charAt(i) == '{';
+		if (braced) {
+			i++;
+		}
+		final int nameStart = i;
+		if (i >= source.length() || !isIdentifierStart(source.charAt(i))) {
+			return -1;
+		}
+		while (i < source.length() && isIdentifierPart(source.charAt(i))) {
+			i++;
+		}
+		final String refName = source.substring(nameStart, i);
+		if (braced) {
+			if (i >= source.length() || source.charAt(i) != '}') {
+				return -1;
+			}
+			i++;
+		}
+		if (literal.length() > 0) {
+			segments.add(literal.toString().toCharArray());
+			literal.setLength(0);
+		}
+		segments.add(new Reference(refName, quiet, source.substring(start, i)));
+		return i;
+	}
+
+	private static boolean isIdentifierStart(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean isIdentifierPart(char c) {
+		return isIdentifierStart(c) || (c >= '0' && c <= '9') || c == '_' || c == '-';
+	}
+
+	/**
+	 * テンプレートを描画する。
+	 * @param model 差し込み項目の値
+	 * @param out 出力先
+	 */
+	public void render(Map<String, ?> model, StringBuilder out) {
+		out.ensureCapacity(out.length() + literalLength + 64);
+		for (Object segment : segments) {
+			if (segment instanceof char[]) {
+				out.append((char[]) segment);
+				continue;
+			}
+			final Reference reference = (Reference) segment;
+			final Object value = model.get(reference.name);
+			if (value != null) {
+				out.append(value);
+			} else if (!reference.quiet) {
+				out.append(reference.source);
+			}
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	private static class Reference {
+		final String name;
+		final boolean quiet;
+		/** 値がない場合に出力する記述 */
+		final String source;
+
+		Reference(String name, boolean quiet, String source) {
+			this.name = name;
+			this.quiet = quiet;
+			this.source = source;
+		}
+	}
+}
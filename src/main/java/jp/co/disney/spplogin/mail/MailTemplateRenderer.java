@@ -0,0 +1,72 @@
+package jp.co.disney.spplogin.mail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * メールテンプレートの描画。
+ * 起動時にクラスパス上のmail/*.vmを全て解析しておき、描画時はスレッド毎に再利用するバッファに出力する。
+ * テンプレート名はクラスパスからの相対パス（例: mail/member-register.vm）。
+ * </pre>
+ */
+@Slf4j
+@Component
+public class MailTemplateRenderer {
+
+	private static final String TEMPLATE_LOCATION = "classpath*:mail/*.vm";
+	private static final String TEMPLATE_DIR = "mail/";
+
+	/** 再利用するバッファの上限サイズ。これを超えた場合は破棄する */
+	private static final int MAX_BUFFER_CAPACITY = 16 * 1024;
+
+	private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(1024));
+
+	private Map<String, MailTemplate> templates = new HashMap<>();
+
+	@PostConstruct
+	public void load() throws IOException {
+		final Map<String, MailTemplate> loaded = new HashMap<>();
+		for (Resource resource : new PathMatchingResourcePatternResolver().getResources(TEMPLATE_LOCATION)) {
+			final String name = TEMPLATE_DIR + resource.getFilename();
+			try (InputStream in = resource.getInputStream()) {
+				loaded.put(name, MailTemplate.compile(name, StreamUtils.copyToString(in, StandardCharsets.UTF_8)));
+			}
+			log.debug("メールテンプレートを読み込みました。 : {}", name);
+		}
+		templates = loaded;
+	}
+
+	/**
+	 * テンプレートを描画する。
+	 * @param templateName テンプレート名
+	 * @param model 差し込み項目の値
+	 * @return 描画結果
+	 */
+	public String render(String templateName, Map<String, ?> model) {
+		final MailTemplate template = templates.get(templateName);
+		if (template == null) {
+			throw new IllegalArgumentException("メールテンプレートが存在しません。 : " + templateName);
+		}
+		StringBuilder buffer = BUFFER.get();
+		if (buffer.capacity() > MAX_BUFFER_CAPACITY) {
+			buffer = new StringBuilder(1024);
+			BUFFER.set(buffer);
+		}
+		buffer.setLength(0);
+		template.render(model, buffer);
+		return buffer.toString();
+	}
+}
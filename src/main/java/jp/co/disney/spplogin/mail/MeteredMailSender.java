@@ -0,0 +1,69 @@
+package jp.co.disney.spplogin.mail;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.MailSender;
+import org.springframework.util.ClassUtils;
+
+import jp.co.disney.spplogin.metrics.LatencyHistograms;
+
+/**
+ * <pre>
+ * MailSender（Spring Boot標準のJavaMailSenderImpl）をラップし、send()の応答時間をLatencyHistogramsに記録する。
+ * 実装クラスに依存しないよう、実装している全インターフェースの動的プロキシとして実装する。
+ * 呼び出し先は「smtp」、操作は「send」、結果は success / partial（一部の宛先のみ失敗）/ error。
+ * </pre>
+ */
+public final class MeteredMailSender {
+
+	private MeteredMailSender() {}
+
+	/**
+	 * MailSenderをラップする。
+	 * @param mailSender ラップするMailSender
+	 * @param latencyHistograms 記録先
+	 * @return ラップしたMailSender
+	 */
+	public static MailSender wrap(MailSender mailSender, LatencyHistograms latencyHistograms) {
+		return (MailSender) Proxy.newProxyInstance(
+				MeteredMailSender.class.getClassLoader(),
+				ClassUtils.getAllInterfaces(mailSender),
+				(proxy, method, args) -> {
+					if (!"send".equals(method.getName())) {
+						return invoke(mailSender, method, args);
+					}
+					final long start = System.nanoTime();
+					String outcome = "error";
+					try {
+						final Object result = invoke(mailSender, method, args);
+						outcome = "success";
+						return result;
+					} catch (MailSendException e) {
+						if (!e.getFailedMessages().isEmpty() && e.getFailedMessages().size() < messageCount(args)) {
+							outcome = "partial";
+						}
+						throw e;
+					} finally {
+						latencyHistograms.record("smtp", "send", outcome, System.nanoTime() - start);
+					}
+				});
+	}
+
+	private static int messageCount(Object[] args) {
+		if (args != null && args.length == 1 && args[0] instanceof Object[]) {
+			return ((Object[]) args[0]).length;
+		}
+		return 1;
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getTargetException();
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package jp.co.disney.spplogin.mail;
+
+import org.springframework.mail.SimpleMailMessage;
+
+/**
+ * 送信待ちメール
+ */
+class OutboxEntry {
+
+	/** スプール内で一意な連番 */
+	final long id;
+	final SimpleMailMessage message;
+	/** 登録日時（エポックミリ秒） */
+	final long enqueuedAt;
+	/** 送信試行回数 */
+	int attempts;
+
+	OutboxEntry(long id, SimpleMailMessage message, long enqueuedAt) {
+		this.id = id;
+		this.message = message;
+		this.enqueuedAt = enqueuedAt;
+	}
+}
@@ -0,0 +1,183 @@
+package jp.co.disney.spplogin.maintenance;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * メンテナンスモードの切り替え。
+ * 状態はメモリ上のフラグで保持し、リクエスト毎の判定ではI/Oを行わない。
+ *
+ * spplogin.maintenance.source により状態の取得元を切り替える。
+ *   redis : キー（値が「on」でメンテナンス中）。変更時はチャネルに「on」/「off」を発行すると全ノードへ即時に反映される。
+ *           取りこぼしに備え、一定間隔でキーを読み直す。
+ *           例) SET spplogin:maintenance on → PUBLISH spplogin:maintenance on
+ *   file  : ファイルが存在する間メンテナンス中。ディレクトリを監視し、一定間隔でも存在を確認する。
+ *   none  : 常にメンテナンス中でない。
+ * </pre>
+ */
+@Slf4j
+@Component
+public class MaintenanceSwitch implements MessageListener, PublicMetrics {
+
+	private static final String ON = "on";
+
+	@Value("${spplogin.maintenance.source}")
+	private String source;
+
+	@Value("${spplogin.maintenance.redis.key}")
+	private String redisKey;
+
+	@Value("${spplogin.maintenance.file}")
+	private String file;
+
+	@Value("${spplogin.maintenance.allow.paths}")
+	private String allowPaths;
+
+	@Value("${spplogin.maintenance.allow.ips}")
+	private String allowIps;
+
+	@Autowired
+	private StringRedisTemplate stringRedisTemplate;
+
+	private volatile boolean active;
+
+	private Set<String> allowedPaths = Collections.emptySet();
+	private Set<String> allowedIps = Collections.emptySet();
+	private WatchService watchService;
+
+	@PostConstruct
+	public void init() throws IOException {
+		allowedPaths = toSet(allowPaths);
+		allowedIps = toSet(allowIps);
+		if ("file".equals(source)) {
+			watch(Paths.get(file).toAbsolutePath());
+		}
+		reconcile();
+	}
+
+	@PreDestroy
+	public void destroy() throws IOException {
+		if (watchService != null) {
+			watchService.close();
+		}
+	}
+
+	/**
+	 * @return メンテナンス中の場合true
+	 */
+	public boolean isActive() {
+		return active;
+	}
+
+	/**
+	 * メンテナンス中もアクセスを許可するか判定する。
+	 * @param path コンテキストパスを除いたリクエストパス
+	 * @param remoteAddr クライアントのIPアドレス
+	 * @return 許可する場合true
+	 */
+	public boolean isAllowed(String path, String remoteAddr) {
+		if (allowedIps.contains(remoteAddr)) {
+			return true;
+		}
+		for (String allowed : allowedPaths) {
+			if (path.startsWith(allowed)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void onMessage(Message message, byte[] pattern) {
+		update(ON.equalsIgnoreCase(new String(message.getBody(), StandardCharsets.UTF_8).trim()), "pub/sub");
+	}
+
+	/**
+	 * 取得元の状態を読み直す。
+	 */
+	@Scheduled(fixedDelayString = "${spplogin.maintenance.reconcile-interval-millis}")
+	public void reconcile() {
+		try {
+			if ("redis".equals(source)) {
+				update(ON.equalsIgnoreCase(stringRedisTemplate.opsForValue().get(redisKey)), "reconcile");
+			} else if ("file".equals(source)) {
+				update(Files.exists(Paths.get(file)), "reconcile");
+			}
+		} catch (RuntimeException e) {
+			// 取得できない場合は現在の状態を維持する
+			log.warn("メンテナンス状態の取得に失敗しました。", e);
+		}
+	}
+
+	private void update(boolean next, String trigger) {
+		if (active != next) {
+			active = next;
+			log.warn("メンテナンスモードを{}にしました。 : source={} trigger={}", next ? "開始" : "終了", source, trigger);
+		}
+	}
+
+	private void watch(Path path) throws IOException {
+		final Path dir = path.getParent();
+		Files.createDirectories(dir);
+		watchService = dir.getFileSystem().newWatchService();
+		dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+		final Thread watcher = new Thread(() -> {
+			try {
+				while (true) {
+					final WatchKey key = watchService.take();
+					if (key.pollEvents().stream().anyMatch(event -> path.getFileName().equals(event.context()))) {
+						update(Files.exists(path), "watch");
+					}
+					key.reset();
+				}
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				log.debug("メンテナンスファイルの監視を終了します。");
+			}
+		}, "maintenance-watcher");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	private static Set<String> toSet(String commaDelimited) {
+		final Set<String> set = new LinkedHashSet<>();
+		for (String value : StringUtils.commaDelimitedListToStringArray(commaDelimited)) {
+			if (StringUtils.hasText(value)) {
+				set.add(value.trim());
+			}
+		}
+		return Collections.unmodifiableSet(set);
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		return Collections.<Metric<?>>singletonList(new Metric<>("spplogin.maintenance.active", active ? 1 : 0));
+	}
+}
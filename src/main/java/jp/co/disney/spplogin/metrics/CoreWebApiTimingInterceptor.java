@@ -0,0 +1,144 @@
+package jp.co.disney.spplogin.metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import jp.co.disney.spplogin.timing.RequestTiming;
+
+/**
+ * <pre>
+ * Core WebAPIの応答時間をLatencyHistogramsに記録する。
+ * 操作はリクエストのパスからAPIID（COR-901等）を判定し、該当しない場合は「other」とする。
+ * 応答本文の読み込みまでを含めるため、RestTemplateがレスポンスを閉じた時点で記録する。
+ * 結果は success（2xx/3xx）、client-error（4xx）、server-error（5xx）、io-error（通信エラー）。
+ * リクエストの処理時間の内訳（RequestTiming）にもAPIID毎に記録する。
+ * </pre>
+ */
+public class CoreWebApiTimingInterceptor implements ClientHttpRequestInterceptor {
+
+	static final String DEPENDENCY = "core";
+	static final String OTHER = "other";
+
+	private final LatencyHistograms latencyHistograms;
+	private final Map<String, String> apiIds;
+
+	/**
+	 * @param latencyHistograms 記録先
+	 * @param apiIds パスとAPIIDの対応
+	 */
+	public CoreWebApiTimingInterceptor(LatencyHistograms latencyHistograms, Map<String, String> apiIds) {
+		this.latencyHistograms = latencyHistograms;
+		this.apiIds = new LinkedHashMap<>(apiIds);
+	}
+
+	@Override
+	public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+			throws IOException {
+		final String apiId = apiId(request.getURI().getPath());
+		final long start = System.nanoTime();
+		final ClientHttpResponse response;
+		try {
+			response = execution.execute(request, body);
+		} catch (IOException | RuntimeException e) {
+			record(apiId, "io-error", System.nanoTime() - start);
+			throw e;
+		}
+		return new TimedResponse(response, apiId, start);
+	}
+
+	private void record(String apiId, String outcome, long nanos) {
+		latencyHistograms.record(DEPENDENCY, apiId, outcome, nanos);
+		RequestTiming.record(apiId, nanos);
+	}
+
+	String apiId(String path) {
+		if (path != null) {
+			for (Map.Entry<String, String> api : apiIds.entrySet()) {
+				if (path.endsWith(api.getKey())) {
+					return api.getValue();
+				}
+			}
+		}
+		return OTHER;
+	}
+
+	private static String outcome(int status) {
+		if (status >= 500) {
+			return "server-error";
+		}
+		if (status >= 400) {
+			return "client-error";
+		}
+		return "success";
+	}
+
+	/**
+	 * 閉じた時点で応答時間を記録するレスポンス
+	 */
+	private class TimedResponse implements ClientHttpResponse {
+		private final ClientHttpResponse delegate;
+		private final String apiId;
+		private final long start;
+		private boolean recorded;
+
+		TimedResponse(ClientHttpResponse delegate, String apiId, long start) {
+			this.delegate = delegate;
+			this.apiId = apiId;
+			this.start = start;
+		}
+
+		@Override
+		public HttpStatus getStatusCode() throws IOException {
+			return delegate.getStatusCode();
+		}
+
+		@Override
+		public int getRawStatusCode() throws IOException {
+			return delegate.getRawStatusCode();
+		}
+
+		@Override
+		public String getStatusText() throws IOException {
+			return delegate.getStatusText();
+		}
+
+		@Override
+		public HttpHeaders getHeaders() {
+			return delegate.getHeaders();
+		}
+
+		@Override
+		public InputStream getBody() throws IOException {
+			return delegate.getBody();
+		}
+
+		@Override
+		public void close() {
+			if (recorded) {
+				delegate.close();
+				return;
+			}
+			recorded = true;
+			String outcome;
+			try {
+				outcome = outcome(delegate.getRawStatusCode());
+			} catch (IOException e) {
+				outcome = "io-error";
+			}
+			try {
+				delegate.close();
+			} finally {
+				record(apiId, outcome, System.nanoTime() - start);
+			}
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package jp.co.disney.spplogin.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * <pre>
+ * 外部呼び出し（Core WebAPI、Redis、SMTP）の応答時間の分布を集計する。
+ * 呼び出し先、操作（APIID、コマンド）、結果の組み合わせ毎にHdrHistogramのRecorderへ記録する。
+ * Recorderの記録はロックを取らないため、リクエストスレッドへの影響は小さい。
+ * 記録先は呼び出し先、操作、結果の順に入れ子のマップで引き、記録毎に文字列を組み立てない。
+ * 組み合わせが固定の呼び出し元は、timer()で取得した記録先を保持して直接記録する。
+ *
+ * パーセンタイル（p50/p90/p99/p999）と最大値は直近の集計間隔の値、件数と合計は起動時からの累計。
+ * メトリクスとして spplogin.latency.[呼び出し先].[操作].[結果].* を公開する（値はミリ秒）。
+ * Prometheus形式では/prometheusで公開する（PrometheusEndpoint）。
+ * </pre>
+ */
+@Component
+public class LatencyHistograms implements PublicMetrics {
+
+	/** 記録できる最大値（ナノ秒）。超える値は最大値として記録する。 */
+	static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+	/** 公開するパーセンタイル */
+	static final double[] PERCENTILES = { 50.0, 90.0, 99.0, 99.9 };
+
+	/** パーセンタイルのメトリクス名 */
+	static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p999" };
+
+	@Value("${spplogin.latency.significant-digits}")
+	private int significantDigits;
+
+	/** 呼び出し先 → 操作 → 結果 毎の記録先 */
+	private final ConcurrentMap<String, ConcurrentMap<String, ConcurrentMap<String, Timer>>> timers =
+			new ConcurrentHashMap<>();
+
+	/** 全ての記録先（集計、公開用） */
+	private final Queue<Timer> allTimers = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * 応答時間を記録する。
+	 * @param dependency 呼び出し先
+	 * @param operation 操作
+	 * @param outcome 結果
+	 * @param nanos 応答時間（ナノ秒）
+	 */
+	public void record(String dependency, String operation, String outcome, long nanos) {
+		timer(dependency, operation, outcome).record(nanos);
+	}
+
+	/**
+	 * 記録先を取得する。存在しない場合は作成する。
+	 * @param dependency 呼び出し先
+	 * @param operation 操作
+	 * @param outcome 結果
+	 * @return 記録先
+	 */
+	public Timer timer(String dependency, String operation, String outcome) {
+		final ConcurrentMap<String, Timer> outcomes = child(child(timers, dependency), operation);
+		Timer timer = outcomes.get(outcome);
+		if (timer == null) {
+			final Timer created = new Timer(dependency, operation, outcome, significantDigits);
+			timer = outcomes.putIfAbsent(outcome, created);
+			if (timer == null) {
+				allTimers.add(created);
+				timer = created;
+			}
+		}
+		return timer;
+	}
+
+	private static <V> ConcurrentMap<String, V> child(ConcurrentMap<String, ConcurrentMap<String, V>> parent,
+			String key) {
+		ConcurrentMap<String, V> child = parent.get(key);
+		if (child == null) {
+			parent.putIfAbsent(key, new ConcurrentHashMap<>());
+			child = parent.get(key);
+		}
+		return child;
+	}
+
+	/**
+	 * 集計間隔を切り替え、直近の集計間隔の分布を更新する。
+	 */
+	@Scheduled(fixedRateString = "${spplogin.latency.interval-millis}")
+	public void rotate() {
+		for (Timer timer : allTimers) {
+			timer.rotate();
+		}
+	}
+
+	/**
+	 * @return 記録済みの全ての組み合わせ
+	 */
+	public Collection<Timer> timers() {
+		return allTimers;
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		final List<Metric<?>> metrics = new ArrayList<>();
+		for (Timer timer : allTimers) {
+			final String prefix = "spplogin.latency." + timer.dependency + "." + timer.operation + "." + timer.outcome;
+			final Histogram interval = timer.interval;
+			metrics.add(new Metric<>(prefix + ".count", timer.count.sum()));
+			for (int i = 0; i < PERCENTILES.length; i++) {
+				metrics.add(new Metric<>(prefix + "." + PERCENTILE_NAMES[i],
+						toMillis(interval.getValueAtPercentile(PERCENTILES[i]))));
+			}
+			metrics.add(new Metric<>(prefix + ".max", toMillis(interval.getMaxValue())));
+		}
+		return metrics;
+	}
+
+	private static double toMillis(long nanos) {
+		return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * 呼び出し先、操作、結果の組み合わせ毎の記録先
+	 */
+	public static class Timer {
+		final String dependency;
+		final String operation;
+		final String outcome;
+		final Recorder recorder;
+		final LongAdder count = new LongAdder();
+		final LongAdder sumNanos = new LongAdder();
+		/** 直近の集計間隔の分布。rotate()で差し替え、差し替え後は変更しない。 */
+		volatile Histogram interval;
+
+		Timer(String dependency, String operation, String outcome, int significantDigits) {
+			this.dependency = dependency;
+			this.operation = operation;
+			this.outcome = outcome;
+			this.recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, significantDigits);
+			this.interval = new Histogram(HIGHEST_TRACKABLE_NANOS, significantDigits);
+		}
+
+		/**
+		 * 応答時間を記録する。
+		 * @param nanos 応答時間（ナノ秒）
+		 */
+		public void record(long nanos) {
+			recorder.recordValue(Math.min(Math.max(nanos, 0), HIGHEST_TRACKABLE_NANOS));
+			count.increment();
+			sumNanos.add(nanos);
+		}
+
+		synchronized void rotate() {
+			interval = recorder.getIntervalHistogram();
+		}
+
+		public String getDependency() {
+			return dependency;
+		}
+
+		public String getOperation() {
+			return operation;
+		}
+
+		public String getOutcome() {
+			return outcome;
+		}
+
+		/**
+		 * @return 起動時からの記録件数
+		 */
+		public long getCount() {
+			return count.sum();
+		}
+
+		/**
+		 * @return 起動時からの応答時間の合計（ナノ秒）
+		 */
+		public long getSumNanos() {
+			return sumNanos.sum();
+		}
+
+		/**
+		 * @return 直近の集計間隔の分布
+		 */
+		public Histogram getInterval() {
+			return interval;
+		}
+	}
+}
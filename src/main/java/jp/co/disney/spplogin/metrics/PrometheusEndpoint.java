@@ -0,0 +1,66 @@
+package jp.co.disney.spplogin.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+
+/**
+ * <pre>
+ * 外部呼び出しの応答時間（LatencyHistograms）をPrometheusのテキスト形式で返すエンドポイント（/prometheus）。
+ * summary型として、直近の集計間隔のパーセンタイルと起動時からの件数・合計を出力する（単位は秒）。
+ * </pre>
+ */
+public class PrometheusEndpoint extends AbstractEndpoint<String> {
+
+	private static final String NAME = "spplogin_dependency_latency_seconds";
+	private static final String MAX_NAME = "spplogin_dependency_latency_max_seconds";
+	private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	/** LatencyHistograms.PERCENTILESに対応するquantileラベル */
+	private static final String[] QUANTILES = { "0.5", "0.9", "0.99", "0.999" };
+
+	private final LatencyHistograms latencyHistograms;
+
+	public PrometheusEndpoint(LatencyHistograms latencyHistograms) {
+		super("prometheus");
+		this.latencyHistograms = latencyHistograms;
+	}
+
+	@Override
+	public String invoke() {
+		final StringBuilder summary = new StringBuilder(4096);
+		final StringBuilder max = new StringBuilder(1024);
+		summary.append("# HELP ").append(NAME).append(" Outbound call latency.\n");
+		summary.append("# TYPE ").append(NAME).append(" summary\n");
+		max.append("# HELP ").append(MAX_NAME).append(" Maximum outbound call latency in the last interval.\n");
+		max.append("# TYPE ").append(MAX_NAME).append(" gauge\n");
+
+		for (LatencyHistograms.Timer timer : latencyHistograms.timers()) {
+			final String labels = "dependency=\"" + escape(timer.getDependency())
+					+ "\",operation=\"" + escape(timer.getOperation())
+					+ "\",outcome=\"" + escape(timer.getOutcome()) + "\"";
+			final Histogram interval = timer.getInterval();
+			for (int i = 0; i < QUANTILES.length; i++) {
+				summary.append(NAME).append('{').append(labels)
+						.append(",quantile=\"").append(QUANTILES[i]).append("\"} ")
+						.append(toSeconds(interval.getValueAtPercentile(LatencyHistograms.PERCENTILES[i]))).append('\n');
+			}
+			summary.append(NAME).append("_sum{").append(labels).append("} ")
+					.append(toSeconds(timer.getSumNanos())).append('\n');
+			summary.append(NAME).append("_count{").append(labels).append("} ")
+					.append(timer.getCount()).append('\n');
+			max.append(MAX_NAME).append('{').append(labels).append("} ")
+					.append(toSeconds(interval.getMaxValue())).append('\n');
+		}
+		return summary.append(max).toString();
+	}
+
+	private static double toSeconds(long nanos) {
+		return nanos / NANOS_PER_SECOND;
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
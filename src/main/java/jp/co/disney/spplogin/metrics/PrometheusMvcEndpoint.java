@@ -0,0 +1,33 @@
+package jp.co.disney.spplogin.metrics;
+
+import org.springframework.boot.actuate.endpoint.mvc.EndpointMvcAdapter;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * PrometheusEndpointの結果をPrometheusのテキスト形式（text/plain; version=0.0.4）で返す。
+ */
+public class PrometheusMvcEndpoint extends EndpointMvcAdapter {
+
+	private static final MediaType TEXT_FORMAT = MediaType.parseMediaType("text/plain; version=0.0.4; charset=utf-8");
+
+	private final PrometheusEndpoint delegate;
+
+	public PrometheusMvcEndpoint(PrometheusEndpoint delegate) {
+		super(delegate);
+		this.delegate = delegate;
+	}
+
+	@Override
+	@RequestMapping(method = RequestMethod.GET)
+	@ResponseBody
+	public Object invoke() {
+		if (!delegate.isEnabled()) {
+			return getDisabledResponse();
+		}
+		return ResponseEntity.ok().contentType(TEXT_FORMAT).body(delegate.invoke());
+	}
+}
@@ -0,0 +1,70 @@
+package jp.co.disney.spplogin.pool;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import jp.co.disney.spplogin.metrics.LatencyHistograms;
+
+/**
+ * <pre>
+ * コネクションの取得待ち時間をLatencyHistogramsに記録するコネクションプール。
+ * 呼び出し先は「pool-wait」、操作はプール名、結果は acquired / timeout / error として記録する。
+ * </pre>
+ */
+public class MeteredPoolingHttpClientConnectionManager extends PoolingHttpClientConnectionManager {
+
+	private final String name;
+	private final LatencyHistograms latencyHistograms;
+
+	/**
+	 * @param name プール名
+	 * @param latencyHistograms 記録先
+	 */
+	public MeteredPoolingHttpClientConnectionManager(String name, LatencyHistograms latencyHistograms) {
+		this.name = name;
+		this.latencyHistograms = latencyHistograms;
+	}
+
+	/**
+	 * @return プール名
+	 */
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+		final ConnectionRequest request = super.requestConnection(route, state);
+		return new ConnectionRequest() {
+
+			@Override
+			public HttpClientConnection get(long timeout, TimeUnit tunit)
+					throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+				final long start = System.nanoTime();
+				String outcome = "error";
+				try {
+					final HttpClientConnection connection = request.get(timeout, tunit);
+					outcome = "acquired";
+					return connection;
+				} catch (ConnectionPoolTimeoutException e) {
+					outcome = "timeout";
+					throw e;
+				} finally {
+					latencyHistograms.record(PoolSaturationMetrics.WAIT_DEPENDENCY, name, outcome,
+							System.nanoTime() - start);
+				}
+			}
+
+			@Override
+			public boolean cancel() {
+				return request.cancel();
+			}
+		};
+	}
+}
@@ -0,0 +1,213 @@
+package jp.co.disney.spplogin.pool;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.http.pool.PoolStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jp.co.disney.spplogin.metrics.LatencyHistograms;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * コネクションプール、スレッドプールの使用状況。
+ *   core-http       : Core WebAPI呼び出し用のHttpClientコネクションプール
+ *   redis-[ノード名] : Jedisのコネクションプール（commons-pool2がJMXに登録するMBeanから取得。Lettuce使用時はなし）
+ *   tomcat-[プール名] : Tomcatの共有スレッドプール（未使用時はコネクタ毎のスレッドプール）
+ *
+ * プール毎に spplogin.pool.[プール名].* として以下を公開する（取得できない項目は公開しない）。
+ *   leased      : 使用中の数
+ *   available   : 空いている数
+ *   pending     : 取得待ちの数
+ *   max         : 最大数
+ *   utilization : 使用率（%）
+ *   wait-mean-millis / wait-max-millis : 取得待ち時間（Redisのみ）
+ * core-http、tomcat-*の取得待ち時間は spplogin.latency.pool-wait.[プール名].* として公開する（LatencyHistograms）。
+ * また、一定間隔で全プールの使用状況を1行のログに出力する。取得待ちがある場合はWARNとする。
+ * </pre>
+ */
+@Slf4j
+@Component
+public class PoolSaturationMetrics implements PublicMetrics {
+
+	/** 取得待ち時間を記録する際の呼び出し先 */
+	public static final String WAIT_DEPENDENCY = "pool-wait";
+
+	private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Value("${spplogin.pool.summary.enabled}")
+	private boolean summaryEnabled;
+
+	@Autowired
+	private MeteredPoolingHttpClientConnectionManager coreWebApiConnectionManager;
+
+	@Autowired
+	private LatencyHistograms latencyHistograms;
+
+	private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+	private List<PoolSnapshot> snapshots() {
+		final List<PoolSnapshot> snapshots = new ArrayList<>();
+		final PoolStats http = coreWebApiConnectionManager.getTotalStats();
+		snapshots.add(new PoolSnapshot(coreWebApiConnectionManager.getName(),
+				http.getLeased(), http.getAvailable(), http.getPending(), http.getMax()));
+		try {
+			addRedisPools(snapshots);
+			addTomcatPools(snapshots);
+		} catch (JMException e) {
+			log.debug("プールの状態を取得できませんでした。", e);
+		}
+		return snapshots;
+	}
+
+	private void addRedisPools(List<PoolSnapshot> snapshots) throws JMException {
+		for (ObjectName name : server.queryNames(
+				new ObjectName("org.apache.commons.pool2:type=GenericObjectPool,*"), null)) {
+			final PoolSnapshot snapshot = new PoolSnapshot(name.getKeyProperty("name"),
+					attribute(name, "NumActive"), attribute(name, "NumIdle"),
+					attribute(name, "NumWaiters"), attribute(name, "MaxTotal"));
+			snapshot.waitMeanMillis = attribute(name, "MeanBorrowWaitTimeMillis");
+			snapshot.waitMaxMillis = attribute(name, "MaxBorrowWaitTimeMillis");
+			snapshots.add(snapshot);
+		}
+	}
+
+	private void addTomcatPools(List<PoolSnapshot> snapshots) throws JMException {
+		final int before = snapshots.size();
+		for (ObjectName name : server.queryNames(new ObjectName("Tomcat:type=Executor,*"), null)) {
+			final long active = attribute(name, "activeCount");
+			snapshots.add(new PoolSnapshot("tomcat-" + name.getKeyProperty("name"),
+					active, difference(attribute(name, "poolSize"), active),
+					attribute(name, "queueSize"), attribute(name, "maxThreads")));
+		}
+		if (snapshots.size() > before) {
+			return;
+		}
+		// 共有スレッドプール未使用時はコネクタ毎のスレッドプール（処理待ちの数は取得できない）
+		for (ObjectName name : server.queryNames(new ObjectName("Tomcat:type=ThreadPool,*"), null)) {
+			final long busy = attribute(name, "currentThreadsBusy");
+			snapshots.add(new PoolSnapshot("tomcat-" + ObjectName.unquote(name.getKeyProperty("name")),
+					busy, difference(attribute(name, "currentThreadCount"), busy), -1, attribute(name, "maxThreads")));
+		}
+	}
+
+	private static long difference(long total, long used) {
+		return total >= 0 && used >= 0 ? Math.max(total - used, 0) : -1;
+	}
+
+	private long attribute(ObjectName name, String attribute) {
+		try {
+			final Object value = server.getAttribute(name, attribute);
+			if (value instanceof Number) {
+				return ((Number) value).longValue();
+			}
+		} catch (JMException e) {
+			log.debug("プールの状態を取得できませんでした。 : {} {}", name, attribute);
+		}
+		return -1;
+	}
+
+	/**
+	 * 全プールの使用状況をログに出力する。
+	 */
+	@Scheduled(fixedRateString = "${spplogin.pool.summary.interval-millis}",
+			initialDelayString = "${spplogin.pool.summary.interval-millis}")
+	public void logSummary() {
+		if (!summaryEnabled) {
+			return;
+		}
+		final StringBuilder summary = new StringBuilder(256);
+		boolean saturated = false;
+		for (PoolSnapshot snapshot : snapshots()) {
+			if (summary.length() > 0) {
+				summary.append(", ");
+			}
+			summary.append(snapshot.name)
+					.append(" leased=").append(snapshot.leased).append('/').append(snapshot.max)
+					.append(" pending=").append(snapshot.pending);
+			final double waitP99 = waitP99Millis(snapshot.name);
+			if (waitP99 >= 0) {
+				summary.append(String.format(" wait-p99=%.1fms", waitP99));
+			} else if (snapshot.waitMaxMillis >= 0) {
+				summary.append(" wait-max=").append(snapshot.waitMaxMillis).append("ms");
+			}
+			saturated |= snapshot.pending > 0;
+		}
+		if (saturated) {
+			log.warn("プール使用状況（取得待ちあり） : {}", summary);
+		} else {
+			log.info("プール使用状況 : {}", summary);
+		}
+	}
+
+	/**
+	 * @return 直近の集計間隔の取得待ち時間のp99（ミリ秒）。記録がない場合-1
+	 */
+	private double waitP99Millis(String pool) {
+		for (LatencyHistograms.Timer timer : latencyHistograms.timers()) {
+			if (WAIT_DEPENDENCY.equals(timer.getDependency()) && pool.equals(timer.getOperation())
+					&& "acquired".equals(timer.getOutcome())) {
+				return timer.getInterval().getValueAtPercentile(99.0) / NANOS_PER_MILLI;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		final List<Metric<?>> metrics = new ArrayList<>();
+		for (PoolSnapshot snapshot : snapshots()) {
+			final String prefix = "spplogin.pool." + snapshot.name;
+			add(metrics, prefix + ".leased", snapshot.leased);
+			add(metrics, prefix + ".available", snapshot.available);
+			add(metrics, prefix + ".pending", snapshot.pending);
+			add(metrics, prefix + ".max", snapshot.max);
+			if (snapshot.leased >= 0 && snapshot.max > 0) {
+				metrics.add(new Metric<>(prefix + ".utilization", 100.0 * snapshot.leased / snapshot.max));
+			}
+			add(metrics, prefix + ".wait-mean-millis", snapshot.waitMeanMillis);
+			add(metrics, prefix + ".wait-max-millis", snapshot.waitMaxMillis);
+		}
+		return metrics;
+	}
+
+	private static void add(List<Metric<?>> metrics, String name, long value) {
+		if (value >= 0) {
+			metrics.add(new Metric<>(name, value));
+		}
+	}
+
+	/**
+	 * プールの使用状況。取得できない項目は-1
+	 */
+	private static class PoolSnapshot {
+		final String name;
+		final long leased;
+		final long available;
+		final long pending;
+		final long max;
+		long waitMeanMillis = -1;
+		long waitMaxMillis = -1;
+
+		PoolSnapshot(String name, long leased, long available, long pending, long max) {
+			this.name = name;
+			this.leased = leased;
+			this.available = available;
+			this.pending = pending;
+			this.max = max;
+		}
+	}
+}
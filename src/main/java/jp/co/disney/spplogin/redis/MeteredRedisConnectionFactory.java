@@ -0,0 +1,91 @@
+package jp.co.disney.spplogin.redis;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import jp.co.disney.spplogin.metrics.LatencyHistograms;
+
+/**
+ * <pre>
+ * RedisConnectionFactoryをラップし、取得したコネクションで実行されたコマンドの件数と応答時間を記録する。
+ * Redisクライアント（Jedis / Lettuce）に依存しないよう、プロキシとして実装する。
+ * コネクションファクトリは具象クラスとして注入されている箇所があり（LettuceConnectionFactory）、
+ * DisposableBean等のライフサイクルも維持する必要があるため、クラスのプロキシとする。
+ * コネクションはインターフェース（RedisConnection）の動的プロキシとする。
+ * 応答時間は呼び出し先「redis-[ノード名]」、操作はコマンド（メソッド名）、結果は success / error として記録する。
+ * パイプライン、トランザクション中のコマンドはキューへの追加時間となる。
+ * </pre>
+ */
+public final class MeteredRedisConnectionFactory {
+
+	/** コマンドとして記録しないメソッド */
+	private static final Set<String> NON_COMMANDS = new HashSet<>(Arrays.asList(
+			"close", "isClosed", "getNativeConnection", "isQueueing", "isPipelined", "openPipeline",
+			"closePipeline", "isSubscribed", "getSubscription", "getSentinelConnection",
+			"toString", "hashCode", "equals"));
+
+	private MeteredRedisConnectionFactory() {}
+
+	/**
+	 * コネクションファクトリをラップする。
+	 * @param factory ラップするコネクションファクトリ
+	 * @param node ノード名
+	 * @param metrics コマンド数の記録先
+	 * @param latencyHistograms 応答時間の記録先
+	 * @return ラップしたコネクションファクトリ（factoryの具象クラスのサブクラス）
+	 */
+	public static RedisConnectionFactory wrap(RedisConnectionFactory factory, String node, RedisCommandMetrics metrics,
+			LatencyHistograms latencyHistograms) {
+		final ProxyFactory proxyFactory = new ProxyFactory(factory);
+		proxyFactory.setProxyTargetClass(true);
+		proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+			final Object result = invocation.proceed();
+			if ("getConnection".equals(invocation.getMethod().getName()) && result instanceof RedisConnection) {
+				return connection((RedisConnection) result, node, metrics, latencyHistograms);
+			}
+			return result;
+		});
+		return (RedisConnectionFactory) proxyFactory.getProxy();
+	}
+
+	private static RedisConnection connection(RedisConnection connection, String node, RedisCommandMetrics metrics,
+			LatencyHistograms latencyHistograms) {
+		final String dependency = "redis-" + node;
+		final InvocationHandler handler = (proxy, method, args) -> {
+			if (NON_COMMANDS.contains(method.getName())) {
+				return invoke(connection, method, args);
+			}
+			metrics.record(node, method.getName());
+			final long start = System.nanoTime();
+			String outcome = "error";
+			try {
+				final Object result = invoke(connection, method, args);
+				outcome = "success";
+				return result;
+			} finally {
+				latencyHistograms.record(dependency, method.getName(), outcome, System.nanoTime() - start);
+			}
+		};
+		return (RedisConnection) Proxy.newProxyInstance(
+				MeteredRedisConnectionFactory.class.getClassLoader(),
+				new Class<?>[] { RedisConnection.class }, handler);
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getTargetException();
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package jp.co.disney.spplogin.redis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * <pre>
+ * Redisノード（primary / replica）毎のコマンド実行数を集計する。
+ * 総数、コマンド別の件数、直近の秒間コマンド数をメトリクスとして公開する。
+ * </pre>
+ */
+public class RedisCommandMetrics implements PublicMetrics {
+
+	/** 秒間コマンド数の算出間隔（ミリ秒） */
+	private static final long RATE_INTERVAL_MILLIS = 10000;
+
+	private final ConcurrentMap<String, NodeCounter> nodes = new ConcurrentHashMap<>();
+
+	/**
+	 * コマンド実行を記録する。
+	 * @param node ノード名
+	 * @param command コマンド（RedisConnectionのメソッド名）
+	 */
+	public void record(String node, String command) {
+		counter(node).record(command);
+	}
+
+	private NodeCounter counter(String node) {
+		NodeCounter counter = nodes.get(node);
+		if (counter == null) {
+			nodes.putIfAbsent(node, new NodeCounter());
+			counter = nodes.get(node);
+		}
+		return counter;
+	}
+
+	/**
+	 * 秒間コマンド数を更新する。
+	 */
+	@Scheduled(fixedRate = RATE_INTERVAL_MILLIS)
+	public void updateRates() {
+		for (NodeCounter counter : nodes.values()) {
+			counter.updateRate();
+		}
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		final List<Metric<?>> metrics = new ArrayList<>();
+		for (Map.Entry<String, NodeCounter> node : nodes.entrySet()) {
+			final String prefix = "spplogin.redis." + node.getKey();
+			final NodeCounter counter = node.getValue();
+			metrics.add(new Metric<>(prefix + ".commands", counter.total.sum()));
+			metrics.add(new Metric<>(prefix + ".commands-per-second", counter.rate));
+			for (Map.Entry<String, LongAdder> command : counter.commands.entrySet()) {
+				metrics.add(new Metric<>(prefix + ".command." + command.getKey(), command.getValue().sum()));
+			}
+		}
+		return metrics;
+	}
+
+	private static class NodeCounter {
+		final LongAdder total = new LongAdder();
+		final ConcurrentMap<String, LongAdder> commands = new ConcurrentHashMap<>();
+		volatile double rate;
+		long lastTotal;
+		long lastNanos = System.nanoTime();
+
+		void record(String command) {
+			total.increment();
+			LongAdder adder = commands.get(command);
+			if (adder == null) {
+				commands.putIfAbsent(command, new LongAdder());
+				adder = commands.get(command);
+			}
+			adder.increment();
+		}
+
+		synchronized void updateRate() {
+			final long now = System.nanoTime();
+			final long current = total.sum();
+			final double seconds = (double) (now - lastNanos) / TimeUnit.SECONDS.toNanos(1);
+			rate = seconds > 0 ? (current - lastTotal) / seconds : 0;
+			lastTotal = current;
+			lastNanos = now;
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package jp.co.disney.spplogin.redis;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+
+import jp.co.disney.spplogin.metrics.LatencyHistograms;
+
+/**
+ * <pre>
+ * RedisConnectionFactory（Spring Boot標準のJedis、またはLettuce）をコマンド数、応答時間計測用にラップする。
+ * 計測対象はプライマリ用のBean（redisConnectionFactory）のみ。
+ * ラップ後も元の具象クラス（JedisConnectionFactory / LettuceConnectionFactory）として注入、破棄できる。
+ * Jedisの場合、コネクションプールをJMX上で識別できるよう「redis-primary」の名前で登録する（PoolSaturationMetrics）。
+ * RedisCommandMetrics、LatencyHistogramsは全てのBeanPostProcessorが適用されるよう、ラップ時に遅延取得する。
+ * </pre>
+ */
+public class RedisConnectionFactoryMeteringPostProcessor implements BeanPostProcessor, BeanFactoryAware {
+
+	private static final String TARGET_BEAN_NAME = "redisConnectionFactory";
+
+	private BeanFactory beanFactory;
+
+	@Override
+	public void setBeanFactory(BeanFactory beanFactory) {
+		this.beanFactory = beanFactory;
+	}
+
+	@Override
+	public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+		if (TARGET_BEAN_NAME.equals(beanName) && bean instanceof JedisConnectionFactory
+				&& ((JedisConnectionFactory) bean).getPoolConfig() != null) {
+			((JedisConnectionFactory) bean).getPoolConfig().setJmxNamePrefix("redis-primary");
+		}
+		return bean;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+		if (TARGET_BEAN_NAME.equals(beanName) && bean instanceof RedisConnectionFactory) {
+			return MeteredRedisConnectionFactory.wrap((RedisConnectionFactory) bean, "primary",
+					beanFactory.getBean(RedisCommandMetrics.class), beanFactory.getBean(LatencyHistograms.class));
+		}
+		return bean;
+	}
+}
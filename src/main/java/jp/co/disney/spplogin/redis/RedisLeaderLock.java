@@ -0,0 +1,121 @@
+package jp.co.disney.spplogin.redis;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * Redis上のリーダーロック。
+ * 全ノードのうち1ノードのみで実行する定期処理（期限切れセッション掃除、連携キー棚卸し）は、
+ * 実行前にこのロックを取得し、取得できたノードのみが処理を行う。
+ * ロックは有効期限付きで、保持しているノードが取得を繰り返すことで延長される。
+ * 定期処理の間隔（最長で棚卸しの5分）に依存せず、全ノードが短い間隔（renew-interval-millis）で取得を試みる。
+ * 保持しているノードが停止した場合は有効期限（renew-interval-millisの2倍程度とする）切れ後に他のノードが取得する。
+ * </pre>
+ */
+@Slf4j
+@Component
+public class RedisLeaderLock {
+
+	/** ロック未取得なら取得、自ノードが保持していれば延長する。 */
+	private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+			"if redis.call('SET', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then return 1 end "
+			+ "if redis.call('GET', KEYS[1]) == ARGV[1] then "
+			+ "  redis.call('PEXPIRE', KEYS[1], ARGV[2]) "
+			+ "  return 1 "
+			+ "end "
+			+ "return 0",
+			Long.class);
+
+	@Value("${spplogin.leader.key}")
+	private String key;
+
+	@Value("${spplogin.leader.ttl-seconds}")
+	private int ttlSeconds;
+
+	@Value("${spplogin.leader.renew-interval-millis}")
+	private long renewIntervalMillis;
+
+	@Autowired
+	private StringRedisTemplate stringRedisTemplate;
+
+	private final String nodeId = nodeId();
+
+	private volatile boolean leader;
+
+	@PostConstruct
+	public void init() {
+		if (TimeUnit.SECONDS.toMillis(ttlSeconds) < renewIntervalMillis * 2) {
+			log.warn("リーダーロックの有効期限が延長間隔の2倍未満です。延長が遅れた場合にリーダーが交代します。 : {}s / {}ms",
+					ttlSeconds, renewIntervalMillis);
+		}
+	}
+
+	/**
+	 * リーダーロックを定期的に取得（保持している場合は延長）する。
+	 */
+	@Scheduled(fixedDelayString = "${spplogin.leader.renew-interval-millis}")
+	public void renew() {
+		try {
+			acquire();
+		} catch (RuntimeException e) {
+			leader = false;
+			log.warn("リーダーロックの取得に失敗しました。 : {}", nodeId, e);
+		}
+	}
+
+	/**
+	 * リーダーロックを取得（保持している場合は延長）する。
+	 * @return 自ノードがリーダーの場合true
+	 */
+	public boolean acquire() {
+		final Long acquired = stringRedisTemplate.execute(ACQUIRE_SCRIPT,
+				Collections.singletonList(key), nodeId,
+				String.valueOf(TimeUnit.SECONDS.toMillis(ttlSeconds)));
+		final boolean acquiredNow = acquired != null && acquired == 1L;
+		if (acquiredNow != leader) {
+			log.info(acquiredNow ? "リーダーになりました。 : {}" : "リーダーではなくなりました。 : {}", nodeId);
+		}
+		leader = acquiredNow;
+		return acquiredNow;
+	}
+
+	/**
+	 * @return 直近の取得で自ノードがリーダーだった場合true（Redisには問い合わせない）
+	 */
+	public boolean isLeader() {
+		return leader;
+	}
+
+	/**
+	 * @return 自ノードの識別子（ホスト名:UUID）
+	 */
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	private static String nodeId() {
+		String host;
+		try {
+			host = InetAddress.getLocalHost().getHostName();
+		} catch (UnknownHostException e) {
+			host = "unknown";
+		}
+		return host + ":" + UUID.randomUUID().toString();
+	}
+}
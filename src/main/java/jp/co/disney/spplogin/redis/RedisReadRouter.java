@@ -0,0 +1,83 @@
+package jp.co.disney.spplogin.redis;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import jp.co.disney.spplogin.metrics.LatencyHistograms;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * 読み取り先のRedisノードを振り分ける。
+ * レプリカが設定されている場合、複製遅延を許容できる読み取り（存在確認等）はレプリカで実行する。
+ * レプリカ未設定時は全てプライマリで実行する。
+ *
+ * レプリカ用のコネクションファクトリはBeanとして公開しない。
+ * RedisConnectionFactoryが複数Beanとなり、Spring Bootの自動設定が注入先を決定できなくなるため。
+ * </pre>
+ */
+@Slf4j
+public class RedisReadRouter implements DisposableBean {
+
+	private final StringRedisTemplate primary;
+	private final StringRedisTemplate replica;
+	private final JedisConnectionFactory replicaConnectionFactory;
+
+	/**
+	 * レプリカを使用しない。
+	 * @param primary プライマリ
+	 */
+	public RedisReadRouter(StringRedisTemplate primary) {
+		this.primary = primary;
+		this.replica = primary;
+		this.replicaConnectionFactory = null;
+	}
+
+	/**
+	 * @param primary プライマリ
+	 * @param replicaConnectionFactory 初期化済みのレプリカ用コネクションファクトリ
+	 * @param metrics コマンド数の記録先
+	 * @param latencyHistograms 応答時間の記録先
+	 */
+	public RedisReadRouter(StringRedisTemplate primary, JedisConnectionFactory replicaConnectionFactory,
+			RedisCommandMetrics metrics, LatencyHistograms latencyHistograms) {
+		this.primary = primary;
+		this.replicaConnectionFactory = replicaConnectionFactory;
+		this.replica = new StringRedisTemplate(
+				MeteredRedisConnectionFactory.wrap(replicaConnectionFactory, "replica", metrics, latencyHistograms));
+		log.info("Redisレプリカを読み取りに使用します。 : {}:{}",
+				replicaConnectionFactory.getHostName(), replicaConnectionFactory.getPort());
+	}
+
+	/**
+	 * @return レプリカを使用する場合true
+	 */
+	public boolean hasReplica() {
+		return replicaConnectionFactory != null;
+	}
+
+	/**
+	 * 書き込み、および最新の値が必要な読み取り用
+	 * @return プライマリ
+	 */
+	public StringRedisTemplate primary() {
+		return primary;
+	}
+
+	/**
+	 * 複製遅延を許容できる読み取り用
+	 * @return レプリカ。未設定の場合プライマリ
+	 */
+	public StringRedisTemplate lagTolerant() {
+		return replica;
+	}
+
+	@Override
+	public void destroy() {
+		if (replicaConnectionFactory != null) {
+			replicaConnectionFactory.destroy();
+		}
+	}
+}
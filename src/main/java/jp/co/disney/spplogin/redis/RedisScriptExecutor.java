@@ -0,0 +1,130 @@
+package jp.co.disney.spplogin.redis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConverters;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import com.lambdaworks.redis.RedisAsyncConnection;
+import com.lambdaworks.redis.RedisFuture;
+
+import jp.co.disney.spplogin.metrics.LatencyHistograms;
+
+/**
+ * <pre>
+ * Luaスクリプトを非同期に実行する。
+ *
+ * Lettuce（spplogin.redis.client=lettuce）の場合、共有コネクションの非同期コマンド（EVAL）で実行し、
+ * 呼び出し元スレッドは応答を待たない。
+ * 応答を受けたLettuceのI/Oスレッドで後続処理を実行すると、後続処理でのRedisへの同期呼び出しが
+ * 同じI/Oスレッドで受信する応答を待って停止するため、完了の通知はForkJoinPool.commonPool()で行う。
+ * Jedisには非同期APIがないため、呼び出し元スレッドで同期実行し、完了済みのFutureを返す
+ * （スレッドプールで実行しても、プールのスレッド数で同時実行数が制限されるだけで待ち時間は減らない）。
+ *
+ * 結果の型は整数（Long）、および整数のリスト（List）のみ対応する。
+ * 非同期コマンドはコネクションのプロキシを経由しないため、コマンド数、応答時間はここで記録する。
+ * </pre>
+ */
+public class RedisScriptExecutor {
+
+	private static final String NODE = "primary";
+	private static final String DEPENDENCY = "redis-" + NODE;
+
+	private final StringRedisTemplate template;
+	private final RedisConnectionFactory connectionFactory;
+	private final boolean lettuce;
+	private final RedisCommandMetrics metrics;
+	private final LatencyHistograms latencyHistograms;
+	private final Executor completionExecutor = ForkJoinPool.commonPool();
+
+	/**
+	 * @param template プライマリ
+	 * @param connectionFactory プライマリのコネクションファクトリ
+	 * @param metrics コマンド数の記録先
+	 * @param latencyHistograms 応答時間の記録先
+	 */
+	public RedisScriptExecutor(StringRedisTemplate template, RedisConnectionFactory connectionFactory,
+			RedisCommandMetrics metrics, LatencyHistograms latencyHistograms) {
+		this.template = template;
+		this.connectionFactory = connectionFactory;
+		this.lettuce = connectionFactory instanceof LettuceConnectionFactory;
+		this.metrics = metrics;
+		this.latencyHistograms = latencyHistograms;
+	}
+
+	/**
+	 * スクリプトを非同期に実行する。
+	 * @param script スクリプト
+	 * @param keys キー
+	 * @param args 引数
+	 * @return 実行結果を返すFuture。Redisのエラーは例外として完了する
+	 */
+	public <T> CompletableFuture<T> executeAsync(RedisScript<T> script, List<String> keys, String... args) {
+		if (!lettuce) {
+			final CompletableFuture<T> result = new CompletableFuture<>();
+			try {
+				result.complete(template.execute(script, keys, (Object[]) args));
+			} catch (RuntimeException e) {
+				result.completeExceptionally(e);
+			}
+			return result;
+		}
+		return evalAsync(script, keys, args);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> CompletableFuture<T> evalAsync(RedisScript<T> script, List<String> keys, String... args) {
+		final CompletableFuture<T> result = new CompletableFuture<>();
+		final long start = System.nanoTime();
+		metrics.record(NODE, "eval");
+		final RedisFuture<T> future;
+		final RedisConnection connection = connectionFactory.getConnection();
+		try {
+			// 共有コネクション（setShareNativeConnection(true)）のため、closeしても非同期コマンドは継続する
+			final RedisAsyncConnection<byte[], byte[]> nativeConnection =
+					(RedisAsyncConnection<byte[], byte[]>) connection.getNativeConnection();
+			future = nativeConnection.eval(script.getScriptAsString(),
+					LettuceConverters.toScriptOutputType(ReturnType.fromJavaType(script.getResultType())),
+					toBytes(keys.toArray(new String[keys.size()])), toBytes(args));
+		} catch (RuntimeException e) {
+			latencyHistograms.record(DEPENDENCY, "eval", "error", System.nanoTime() - start);
+			result.completeExceptionally(e);
+			return result;
+		} finally {
+			connection.close();
+		}
+
+		future.addListener(() -> {
+			try {
+				final T value = future.get();
+				latencyHistograms.record(DEPENDENCY, "eval", "success", System.nanoTime() - start);
+				result.complete(value);
+			} catch (ExecutionException e) {
+				latencyHistograms.record(DEPENDENCY, "eval", "error", System.nanoTime() - start);
+				result.completeExceptionally(e.getCause());
+			} catch (InterruptedException | RuntimeException e) {
+				latencyHistograms.record(DEPENDENCY, "eval", "error", System.nanoTime() - start);
+				result.completeExceptionally(e);
+			}
+		}, completionExecutor);
+		return result;
+	}
+
+	private static byte[][] toBytes(String[] values) {
+		final byte[][] bytes = new byte[values.length][];
+		for (int i = 0; i < values.length; i++) {
+			bytes[i] = values[i].getBytes(StandardCharsets.UTF_8);
+		}
+		return bytes;
+	}
+}
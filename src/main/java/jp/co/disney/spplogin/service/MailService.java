@@ -1,16 +1,17 @@
 package jp.co.disney.spplogin.service;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
-import org.apache.velocity.app.VelocityEngine;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.mail.MailSender;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.stereotype.Service;
-import org.springframework.ui.velocity.VelocityEngineUtils;
 
+import jp.co.disney.spplogin.mail.MailOutbox;
+import jp.co.disney.spplogin.mail.MailTemplateRenderer;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -21,7 +22,10 @@ public class MailService {
 	private MailSender mailSender;
 	
 	@Autowired
-	private VelocityEngine velocityEngine;
+	private MailTemplateRenderer mailTemplateRenderer;
+	
+	@Autowired
+	private MailOutbox mailOutbox;
 	
 	@Value("${spplogin.base-url}")
 	private String baseUrl;
@@ -32,6 +36,7 @@ public class MailService {
 	
 	/**
 	 * SPPメンバ―登録用URLを記載したメールを送信する。
+	 * 送信キューが有効な場合はキューに登録して即座に戻る。キューが満杯の場合は同期で送信する。
 	 * @param toAddress 宛先アドレス
 	 * @param sessionCoopId セッション復元用ID
 	 */
@@ -39,9 +44,34 @@ public class MailService {
 		log.debug("SPPメンバー登録メール宛先アドレス : {}", toAddress);
 		log.debug("セッション復元用ID : {}", sessionCoopId);
 		
-		final Map<String, Object> model = new HashMap<>();
-		model.put("memberRegisterUrl", baseUrl + "Regist?form=" + sessionCoopId);
-		final String body = VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, "mail/member-register.vm", "UTF-8", model);
+		final SimpleMailMessage message = memberRegisterMessage(toAddress, sessionCoopId);
+		
+		if (!mailOutbox.enqueue(message)) {
+			mailSender.send(message);
+		}
+	}
+	
+	/**
+	 * SPPメンバ―登録用URLを記載したメールをまとめて送信する。
+	 * 送信キューに登録できなかったメールは1回のSMTP接続でまとめて同期送信する。
+	 * @param toAddresses 宛先アドレス
+	 * @param sessionCoopIds セッション復元用ID（宛先アドレスと同順）
+	 */
+	public void sendMemberRegisterMails(List<String> toAddresses, List<String> sessionCoopIds) {
+		final List<SimpleMailMessage> messages = new ArrayList<>(toAddresses.size());
+		for (int i = 0; i < toAddresses.size(); i++) {
+			messages.add(memberRegisterMessage(toAddresses.get(i), sessionCoopIds.get(i)));
+		}
+		
+		final List<SimpleMailMessage> rejected = mailOutbox.enqueueAll(messages);
+		if (!rejected.isEmpty()) {
+			mailSender.send(rejected.toArray(new SimpleMailMessage[rejected.size()]));
+		}
+	}
+	
+	private SimpleMailMessage memberRegisterMessage(String toAddress, String sessionCoopId) {
+		final String body = mailTemplateRenderer.render("mail/member-register.vm",
+				Collections.singletonMap("memberRegisterUrl", baseUrl + "Regist?form=" + sessionCoopId));
 		
 		log.debug("SPPメンバー登録メールBody : {}", body);
 		
@@ -50,7 +80,6 @@ public class MailService {
 		message.setFrom(autoReplyFromAddress);
 		message.setSubject(autoReplySubject);
 		message.setText(body);
-		
-		mailSender.send(message);
+		return message;
 	}
 }
@@ -0,0 +1,238 @@
+package jp.co.disney.spplogin.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jp.co.disney.spplogin.redis.RedisLeaderLock;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * 連携キーの棚卸しを行う。
+ * SCANで連携キーを一定件数ずつ走査し（KEYSは使用しない）、
+ * 有効期限が未設定のキーには作成日時を基準に有効期限を設定する。
+ * 走査結果（件数、推定メモリ使用量、経過時間の分布）をメトリクスとして公開する。
+ * 全ノードで重複して走査しないよう、リーダーロック（RedisLeaderLock）を取得したノードのみが実行する。
+ * メトリクスは走査を実行したリーダーのみが公開する（他のノードが0件として公開すると集計を誤るため）。
+ * </pre>
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "spplogin.emptymail.session-coop-key.audit", name = "enabled", havingValue = "true")
+public class SessionCoopKeyAuditor implements PublicMetrics {
+
+	/** 経過時間分布の区切り（分） */
+	private static final long[] AGE_BUCKET_MINUTES = { 5, 30, 60, 360, 1440 };
+
+	/** 1キーあたりのRedis内部管理領域の概算（バイト） */
+	private static final long KEY_OVERHEAD_BYTES = 96;
+
+	/**
+	 * <pre>
+	 * 複数キーの状態を1往復で取得し、有効期限未設定のキーに有効期限を設定するスクリプト。
+	 * ARGV[1]:有効期限(ミリ秒) ARGV[2]:現在日時(エポックミリ秒)
+	 * 戻り値はキー毎に{有効期限残(ミリ秒), 経過時間(ミリ秒、不明時-1), 期限設定有無(1/0), 推定サイズ(バイト)}
+	 * SCANの後に期限切れ、削除されたキー（PTTLが-2）は戻り値に含めない。
+	 * </pre>
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static final RedisScript<List<Object>> AUDIT_SCRIPT = new DefaultRedisScript(
+			"local expire = tonumber(ARGV[1]) "
+			+ "local now = tonumber(ARGV[2]) "
+			+ "local result = {} "
+			+ "for i, key in ipairs(KEYS) do "
+			+ "  local ttl = redis.call('PTTL', key) "
+			+ "  if ttl ~= -2 then "
+			+ "    local age = -1 "
+			+ "    local size = string.len(key) "
+			+ "    local fixed = 0 "
+			+ "    local t = redis.call('TYPE', key)['ok'] "
+			+ "    if t == 'hash' then "
+			+ "      local fields = redis.call('HGETALL', key) "
+			+ "      for j = 1, #fields, 2 do "
+			+ "        size = size + string.len(fields[j]) + string.len(fields[j + 1]) "
+			+ "        if fields[j] == '" + SessionCoopService.FIELD_CREATED_AT + "' then age = now - tonumber(fields[j + 1]) end "
+			+ "      end "
+			+ "    elseif t == 'string' then "
+			+ "      size = size + redis.call('STRLEN', key) "
+			+ "    end "
+			+ "    if ttl == -1 then "
+			+ "      ttl = expire "
+			+ "      if age >= 0 then ttl = math.max(expire - age, 1000) end "
+			+ "      redis.call('PEXPIRE', key, ttl) "
+			+ "      fixed = 1 "
+			+ "    end "
+			+ "    table.insert(result, ttl) "
+			+ "    table.insert(result, age) "
+			+ "    table.insert(result, fixed) "
+			+ "    table.insert(result, size) "
+			+ "  end "
+			+ "end "
+			+ "return result",
+			List.class);
+
+	@Value("${spplogin.emptymail.session-coop-key.prefix}")
+	private String coopKeyPrefix;
+
+	@Value("${spplogin.emptymail.session-coop-key.audit.batch-size}")
+	private int batchSize;
+
+	@Value("${spplogin.emptymail.session-coop-key.audit.pause-millis}")
+	private long pauseMillis;
+
+	@Autowired
+	private StringRedisTemplate stringRedisTemplate;
+
+	@Autowired
+	private SessionCoopService sessionCoopService;
+
+	@Autowired
+	private RedisLeaderLock leaderLock;
+
+	private final AtomicLong fixedTotal = new AtomicLong();
+	private final AtomicLong runs = new AtomicLong();
+
+	/** 直近の走査結果。未実行の場合null */
+	private volatile AuditResult lastResult;
+
+	/**
+	 * 連携キーの棚卸し
+	 */
+	@Scheduled(fixedDelayString = "${spplogin.emptymail.session-coop-key.audit.interval-millis}",
+			initialDelayString = "${spplogin.emptymail.session-coop-key.audit.interval-millis}")
+	public void audit() {
+		if (!leaderLock.acquire()) {
+			log.trace("リーダーではないため連携キー棚卸しをスキップします。 : {}", leaderLock.getNodeId());
+			return;
+		}
+		final long start = System.nanoTime();
+		final AuditResult result = new AuditResult();
+		final ScanOptions options = ScanOptions.scanOptions().match(coopKeyPrefix + "*").count(batchSize).build();
+
+		stringRedisTemplate.execute((RedisCallback<Void>) (RedisConnection connection) -> {
+			final List<String> batch = new ArrayList<>(batchSize);
+			try (Cursor<byte[]> cursor = connection.scan(options)) {
+				while (cursor.hasNext()) {
+					batch.add(new String(cursor.next(), StandardCharsets.UTF_8));
+					if (batch.size() >= batchSize) {
+						inspect(batch, result);
+						batch.clear();
+						pause();
+					}
+				}
+			} catch (Exception e) {
+				log.warn("連携キーの走査中にエラーが発生しました。", e);
+			}
+			inspect(batch, result);
+			return null;
+		});
+
+		result.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		lastResult = result;
+		runs.incrementAndGet();
+		fixedTotal.addAndGet(result.fixed);
+		log.info("連携キー棚卸し完了 : count={} fixed={} memory={}bytes elapsed={}ms",
+				result.count, result.fixed, result.memoryBytes, result.elapsedMillis);
+	}
+
+	/**
+	 * 走査したキーの状態を取得し集計する。走査用とは別のコネクションで実行する。
+	 */
+	private void inspect(List<String> keys, AuditResult result) {
+		if (keys.isEmpty()) {
+			return;
+		}
+		final List<Object> values = stringRedisTemplate.execute(AUDIT_SCRIPT, keys,
+				String.valueOf(sessionCoopService.expireMillis()), String.valueOf(System.currentTimeMillis()));
+		if (values == null) {
+			return;
+		}
+		for (int i = 0; i + 3 < values.size(); i += 4) {
+			final long age = ((Number) values.get(i + 1)).longValue();
+			final long fixed = ((Number) values.get(i + 2)).longValue();
+			final long size = ((Number) values.get(i + 3)).longValue();
+			result.count++;
+			result.fixed += fixed;
+			result.memoryBytes += size + KEY_OVERHEAD_BYTES;
+			result.addAge(age);
+		}
+	}
+
+	private void pause() {
+		if (pauseMillis <= 0) {
+			return;
+		}
+		try {
+			TimeUnit.MILLISECONDS.sleep(pauseMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		final AuditResult result = lastResult;
+		final List<Metric<?>> metrics = new ArrayList<>();
+		// 走査していない、またはリーダーではなくなったノードの結果は公開しない
+		if (result == null || !leaderLock.isLeader()) {
+			return metrics;
+		}
+		metrics.add(new Metric<>("spplogin.coopkey.count", result.count));
+		metrics.add(new Metric<>("spplogin.coopkey.memory-estimate-bytes", result.memoryBytes));
+		metrics.add(new Metric<>("spplogin.coopkey.audit.fixed", result.fixed));
+		metrics.add(new Metric<>("spplogin.coopkey.audit.fixed.total", fixedTotal.get()));
+		metrics.add(new Metric<>("spplogin.coopkey.audit.runs", runs.get()));
+		metrics.add(new Metric<>("spplogin.coopkey.audit.duration-millis", result.elapsedMillis));
+		for (int i = 0; i < AGE_BUCKET_MINUTES.length; i++) {
+			metrics.add(new Metric<>("spplogin.coopkey.age.le-" + AGE_BUCKET_MINUTES[i] + "m", result.ageBuckets[i]));
+		}
+		metrics.add(new Metric<>("spplogin.coopkey.age.gt-" + AGE_BUCKET_MINUTES[AGE_BUCKET_MINUTES.length - 1] + "m",
+				result.ageBuckets[AGE_BUCKET_MINUTES.length]));
+		metrics.add(new Metric<>("spplogin.coopkey.age.unknown", result.ageUnknown));
+		return metrics;
+	}
+
+	/**
+	 * 1回の走査結果
+	 */
+	private static class AuditResult {
+		long count;
+		long fixed;
+		long memoryBytes;
+		long elapsedMillis;
+		long ageUnknown;
+		final long[] ageBuckets = new long[AGE_BUCKET_MINUTES.length + 1];
+
+		void addAge(long ageMillis) {
+			if (ageMillis < 0) {
+				ageUnknown++;
+				return;
+			}
+			final long minutes = TimeUnit.MILLISECONDS.toMinutes(ageMillis);
+			int i = 0;
+			while (i < AGE_BUCKET_MINUTES.length && minutes > AGE_BUCKET_MINUTES[i]) {
+				i++;
+			}
+			ageBuckets[i]++;
+		}
+	}
+}
@@ -0,0 +1,376 @@
+package jp.co.disney.spplogin.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jp.co.disney.spplogin.redis.RedisReadRouter;
+import jp.co.disney.spplogin.util.BloomFilter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * 存在する連携キーのノードローカルなBloomフィルタ。
+ * クライアントが指定した連携キーのうち、確実に存在しないものをRedisへ問い合わせずに判定する。
+ *
+ * ・一定間隔でSCANにより全連携キーからフィルタを再構築し、有効期限切れのキーを除去する。
+ * ・作成したキーは自ノードのフィルタに追加するとともにRedisのPub/Subで他ノードに通知する。
+ * ・再構築中および直近に作成されたキーは新しいフィルタにも追加し、レプリカの複製遅延による取りこぼしを防ぐ。
+ * ・初回の再構築が完了するまで、またはPub/Subのハートビートが途絶えている間は全て存在する可能性ありと判定する。
+ * ・Pub/Subは取りこぼしがあり得るため、通知には送信ノード毎の連番を付与する（「ノードID 連番 キー」）。
+ *   連番の欠落、受信の途絶、自ノードからの通知失敗を検知した場合は、それ以降に開始した再構築が完了するまで
+ *   全て存在する可能性ありと判定する（Redisに問い合わせる）。
+ * </pre>
+ */
+@Slf4j
+@Component
+public class SessionCoopKeyFilter implements MessageListener, PublicMetrics {
+
+	/** ハートビートとして送信するメッセージ（連携キーとして生成されない値） */
+	private static final String HEARTBEAT = "#heartbeat";
+
+	/** 通知の送信元として自ノードを識別する値 */
+	private final String nodeId = UUID.randomUUID().toString();
+
+	/** 自ノードが送信した通知の連番 */
+	private final AtomicLong sequence = new AtomicLong();
+
+	/** 送信ノード毎の最後に受信した連番 */
+	private final ConcurrentMap<String, Sender> senders = new ConcurrentHashMap<>();
+
+	@Value("${spplogin.emptymail.session-coop-key.prefix}")
+	private String coopKeyPrefix;
+
+	@Value("${spplogin.emptymail.session-coop-key.filter.enabled}")
+	private boolean enabled;
+
+	@Value("${spplogin.emptymail.session-coop-key.filter.channel}")
+	private String channel;
+
+	@Value("${spplogin.emptymail.session-coop-key.filter.expected-insertions}")
+	private long expectedInsertions;
+
+	@Value("${spplogin.emptymail.session-coop-key.filter.fpp}")
+	private double fpp;
+
+	@Value("${spplogin.emptymail.session-coop-key.filter.batch-size}")
+	private int batchSize;
+
+	@Value("${spplogin.emptymail.session-coop-key.filter.heartbeat-interval-millis}")
+	private long heartbeatIntervalMillis;
+
+	@Value("${spplogin.emptymail.session-coop-key.filter.recent-window-seconds}")
+	private long recentWindowSeconds;
+
+	@Autowired
+	private StringRedisTemplate stringRedisTemplate;
+
+	@Autowired
+	private RedisReadRouter redisReadRouter;
+
+	private volatile BloomFilter current;
+	private volatile BloomFilter building;
+	private volatile long lastMessageMillis;
+	private volatile long firstMessageMillis;
+
+	/** 検知した通知の欠落の件数 */
+	private final AtomicLong gaps = new AtomicLong();
+	/** currentの再構築開始時点の欠落の件数。gapsと一致しない場合は欠落後の再構築が完了していない */
+	private volatile long gapsAtBuild = -1;
+
+	/** 直近に作成されたキー（再構築時に新しいフィルタへ引き継ぐ） */
+	private final ConcurrentLinkedQueue<RecentKey> recentKeys = new ConcurrentLinkedQueue<>();
+
+	private final AtomicLong checks = new AtomicLong();
+	private final AtomicLong rejects = new AtomicLong();
+	private final AtomicLong rebuilds = new AtomicLong();
+	private volatile long lastRebuildKeys;
+	private volatile long lastRebuildMillis;
+
+	/**
+	 * 連携キーが存在する可能性があるかを判定する。
+	 * @param coopKey 連携キー
+	 * @return 確実に存在しない場合false
+	 */
+	public boolean mightExist(String coopKey) {
+		final BloomFilter filter = current;
+		if (!enabled || filter == null || !synchronizing() || !complete()) {
+			return true;
+		}
+		checks.incrementAndGet();
+		if (filter.mightContain(coopKey)) {
+			return true;
+		}
+		rejects.incrementAndGet();
+		log.debug("存在しない連携キーです。 : {}", coopKey);
+		return false;
+	}
+
+	/**
+	 * 作成した連携キーを追加し、他ノードに通知する。
+	 * @param coopKey 連携キー
+	 */
+	public void onCreated(String coopKey) {
+		if (!enabled) {
+			return;
+		}
+		add(coopKey);
+		publish(coopKey);
+	}
+
+	/**
+	 * 連番を付与して通知する。
+	 * 送信に失敗した場合、他ノードは次の通知で連番の欠落を検知する。自ノードも次回の再構築まではフィルタを使用しない。
+	 * 連番の順に送信するため、送信は排他的に行う（並行して送信すると順序が入れ替わり欠落と判定される）。
+	 */
+	private synchronized void publish(String body) {
+		final long seq = sequence.incrementAndGet();
+		try {
+			stringRedisTemplate.convertAndSend(channel, nodeId + " " + seq + " " + body);
+		} catch (RuntimeException e) {
+			gap("通知の送信失敗");
+			log.warn("連携キーフィルタの通知に失敗しました。 : {}", body, e);
+		}
+	}
+
+	@Override
+	public void onMessage(Message message, byte[] pattern) {
+		final long now = System.currentTimeMillis();
+		if (lastMessageMillis > 0 && now - lastMessageMillis > heartbeatIntervalMillis * 3) {
+			gap("受信の途絶");
+		}
+		lastMessageMillis = now;
+		if (firstMessageMillis == 0) {
+			firstMessageMillis = now;
+		}
+
+		final String body = new String(message.getBody(), StandardCharsets.UTF_8);
+		final String[] parts = body.split(" ", 3);
+		final long seq = parts.length == 3 ? parseSequence(parts[1]) : -1;
+		if (seq < 0) {
+			// 連番のない通知（更新前のノード）はキーのみ追加する
+			if (!HEARTBEAT.equals(body)) {
+				add(body);
+			}
+			return;
+		}
+		checkSequence(parts[0], seq, now);
+		if (!HEARTBEAT.equals(parts[2])) {
+			add(parts[2]);
+		}
+	}
+
+	private static long parseSequence(String value) {
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * 送信ノード毎の連番が連続しているか確認する。
+	 * 全ノードがハートビートを送信するため、受信開始からハートビート間隔の2倍を過ぎて初めて受信したノードは
+	 * 新たに起動したノードであり、連番は1から始まる。
+	 */
+	private void checkSequence(String sender, long seq, long now) {
+		final Sender last = senders.get(sender);
+		if (last == null) {
+			if (seq != 1 && now - firstMessageMillis > heartbeatIntervalMillis * 2) {
+				gap("連番の欠落");
+			}
+			senders.put(sender, new Sender(seq, now));
+			return;
+		}
+		if (seq != last.seq + 1) {
+			gap("連番の欠落");
+		}
+		last.seq = seq;
+		last.seenAt = now;
+	}
+
+	private void gap(String reason) {
+		gaps.incrementAndGet();
+		log.warn("連携キーフィルタの同期が途切れたため、次回の再構築まで使用しません。 : {}", reason);
+	}
+
+	/**
+	 * Pub/Subの疎通確認。自ノードを含む全ノードが受信する。
+	 */
+	@Scheduled(fixedRateString = "${spplogin.emptymail.session-coop-key.filter.heartbeat-interval-millis}")
+	public void heartbeat() {
+		if (!enabled) {
+			return;
+		}
+		publish(HEARTBEAT);
+	}
+
+	/**
+	 * 全連携キーからフィルタを再構築する。走査は複製遅延を許容するためレプリカで行う。
+	 */
+	@Scheduled(fixedDelayString = "${spplogin.emptymail.session-coop-key.filter.rebuild-interval-millis}")
+	public void rebuild() {
+		if (!enabled) {
+			return;
+		}
+		final long start = System.nanoTime();
+		// 走査開始より前の欠落は、走査結果に含まれる
+		final long gapsAtStart = gaps.get();
+		final BloomFilter next = new BloomFilter(expectedInsertions, fpp);
+		building = next;
+		final ScanOptions options = ScanOptions.scanOptions().match(coopKeyPrefix + "*").count(batchSize).build();
+		try {
+			final long keys = redisReadRouter.lagTolerant().execute((RedisCallback<Long>) (RedisConnection connection) -> {
+				long count = 0;
+				try (Cursor<byte[]> cursor = connection.scan(options)) {
+					while (cursor.hasNext()) {
+						next.put(new String(cursor.next(), StandardCharsets.UTF_8));
+						count++;
+					}
+				} catch (Exception e) {
+					throw new IllegalStateException("連携キーの走査に失敗しました。", e);
+				}
+				return count;
+			});
+
+			// 走査で取りこぼした（複製遅延）キーを切り替え前に追加する
+			replayRecentKeys(next);
+			current = next;
+			gapsAtBuild = gapsAtStart;
+			// 切り替えと並行して古いフィルタのみに追加されたキーを追加する
+			replayRecentKeys(next);
+			pruneSenders();
+			rebuilds.incrementAndGet();
+			lastRebuildKeys = keys;
+			lastRebuildMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			log.info("連携キーフィルタ再構築完了 : keys={} elapsed={}ms", keys, lastRebuildMillis);
+		} catch (RuntimeException e) {
+			// 現在のフィルタを使い続ける
+			log.warn("連携キーフィルタの再構築に失敗しました。", e);
+		} finally {
+			building = null;
+		}
+	}
+
+	private void replayRecentKeys(BloomFilter filter) {
+		final long threshold = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(recentWindowSeconds);
+		for (RecentKey recent : recentKeys) {
+			if (recent.createdAt >= threshold) {
+				filter.put(recent.coopKey);
+			}
+		}
+	}
+
+	/**
+	 * <pre>
+	 * キーをフィルタに追加する。
+	 * 再構築と並行しても取りこぼさないよう、rebuild()と逆の順序で参照する。
+	 *   rebuild() : building設定 → 走査 → current切り替え → recentKeysの再追加
+	 *   add()     : recentKeysへ追加 → building → current
+	 * recentKeysへの追加が切り替え後の再追加に間に合わない場合、currentは切り替え後のフィルタとなる。
+	 * </pre>
+	 */
+	private void add(String coopKey) {
+		final long now = System.currentTimeMillis();
+		recentKeys.add(new RecentKey(coopKey, now));
+
+		final BloomFilter next = building;
+		if (next != null) {
+			next.put(coopKey);
+		}
+		final BloomFilter filter = current;
+		if (filter != null) {
+			filter.put(coopKey);
+		}
+
+		final long threshold = now - TimeUnit.SECONDS.toMillis(recentWindowSeconds);
+		final Iterator<RecentKey> it = recentKeys.iterator();
+		while (it.hasNext() && it.next().createdAt < threshold) {
+			it.remove();
+		}
+	}
+
+	/**
+	 * 停止したノードの連番を破棄する
+	 */
+	private void pruneSenders() {
+		final long threshold = System.currentTimeMillis() - heartbeatIntervalMillis * 3;
+		senders.values().removeIf(sender -> sender.seenAt < threshold);
+	}
+
+	/**
+	 * 通知の欠落を検知した後に開始した再構築が完了しているか
+	 */
+	private boolean complete() {
+		return gapsAtBuild == gaps.get();
+	}
+
+	/**
+	 * Pub/Subによる他ノードとの同期が機能しているか
+	 */
+	private boolean synchronizing() {
+		return System.currentTimeMillis() - lastMessageMillis <= heartbeatIntervalMillis * 3;
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		final BloomFilter filter = current;
+		final List<Metric<?>> metrics = new ArrayList<>();
+		metrics.add(new Metric<>("spplogin.coopkey.filter.active",
+				enabled && filter != null && synchronizing() && complete() ? 1 : 0));
+		metrics.add(new Metric<>("spplogin.coopkey.filter.gaps", gaps.get()));
+		metrics.add(new Metric<>("spplogin.coopkey.filter.checks", checks.get()));
+		metrics.add(new Metric<>("spplogin.coopkey.filter.rejects", rejects.get()));
+		metrics.add(new Metric<>("spplogin.coopkey.filter.rebuild.runs", rebuilds.get()));
+		metrics.add(new Metric<>("spplogin.coopkey.filter.rebuild.keys", lastRebuildKeys));
+		metrics.add(new Metric<>("spplogin.coopkey.filter.rebuild.duration-millis", lastRebuildMillis));
+		if (filter != null) {
+			metrics.add(new Metric<>("spplogin.coopkey.filter.fpp-estimate", filter.expectedFpp()));
+			metrics.add(new Metric<>("spplogin.coopkey.filter.bits", filter.bitSize()));
+		}
+		return metrics;
+	}
+
+	/** 送信ノード毎の受信状況。同一ノードからの通知は順に処理される（SyncTaskExecutor） */
+	private static class Sender {
+		volatile long seq;
+		volatile long seenAt;
+
+		Sender(long seq, long seenAt) {
+			this.seq = seq;
+			this.seenAt = seenAt;
+		}
+	}
+
+	private static class RecentKey {
+		final String coopKey;
+		final long createdAt;
+
+		RecentKey(String coopKey, long createdAt) {
+			this.coopKey = coopKey;
+			this.createdAt = createdAt;
+		}
+	}
+}
@@ -0,0 +1,384 @@
+package jp.co.disney.spplogin.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import jp.co.disney.spplogin.redis.RedisReadRouter;
+import jp.co.disney.spplogin.redis.RedisScriptExecutor;
+import jp.co.disney.spplogin.web.model.Guest;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * 空メール登録時のセッション復元用レコード（連携キー）をRedisに保持するサービス。
+ * レコードはRedisのハッシュとして保持し、フィールド単位で読み書きする。
+ * クライアントから指定された連携キーは、SessionCoopKeyFilterで確実に存在しないと判定できればRedisに問い合わせない。
+ * 非同期APIはRedisScriptExecutorで実行する（Lettuceの場合は非同期コマンド、Jedisの場合は呼び出し元スレッドで同期実行）。
+ * </pre>
+ */
+@Slf4j
+@Service
+public class SessionCoopService {
+
+	/** 誕生日（年） */
+	static final String FIELD_BIRTHDAY_YEAR = "birthDayYear";
+	/** 誕生日（月） */
+	static final String FIELD_BIRTHDAY_MONTH = "birthDayMonth";
+	/** 誕生日（日） */
+	static final String FIELD_BIRTHDAY_DAY = "birthDayDay";
+	/** メールアドレス */
+	static final String FIELD_MAIL_ADDRESS = "mailAddress";
+	/** 作成日時（エポックミリ秒） */
+	static final String FIELD_CREATED_AT = "createdAt";
+
+	/** 登録画面で復元するフィールド */
+	private static final List<Object> ENTRY_FIELDS = Arrays.asList(
+			FIELD_BIRTHDAY_YEAR, FIELD_BIRTHDAY_MONTH, FIELD_BIRTHDAY_DAY, FIELD_MAIL_ADDRESS);
+
+	/**
+	 * レコードを保存し、有効期限を設定するスクリプト。
+	 * ARGV[1]:有効期限(ミリ秒) ARGV[2..]:フィールド名と値の組
+	 */
+	private static final RedisScript<Long> SAVE_SCRIPT = new DefaultRedisScript<>(
+			"redis.call('HMSET', KEYS[1], unpack(ARGV, 2)) "
+			+ "redis.call('PEXPIRE', KEYS[1], ARGV[1]) "
+			+ "return 1",
+			Long.class);
+
+	/**
+	 * メールアドレスのみを更新し、有効期限を設定するスクリプト。
+	 * 戻り値 1:更新 0:レコードなし -1:旧形式(JSON)のレコード
+	 */
+	private static final RedisScript<Long> UPDATE_MAIL_ADDRESS_SCRIPT = new DefaultRedisScript<>(
+			"local t = redis.call('TYPE', KEYS[1])['ok'] "
+			+ "if t == 'hash' then "
+			+ "  redis.call('HSET', KEYS[1], '" + FIELD_MAIL_ADDRESS + "', ARGV[1]) "
+			+ "  redis.call('PEXPIRE', KEYS[1], ARGV[2]) "
+			+ "  return 1 "
+			+ "elseif t == 'none' then "
+			+ "  return 0 "
+			+ "end "
+			+ "return -1",
+			Long.class);
+
+	/**
+	 * <pre>
+	 * 複数レコードのメールアドレスを更新し、有効期限を設定するスクリプト。
+	 * ARGV[1]:有効期限(ミリ秒) ARGV[2..]:メールアドレス（KEYSと同順）
+	 * 戻り値 キー毎に 1:更新 0:レコードなし -1:旧形式(JSON)のレコード
+	 * </pre>
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static final RedisScript<List<Object>> UPDATE_MAIL_ADDRESSES_SCRIPT = new DefaultRedisScript(
+			"local result = {} "
+			+ "for i, key in ipairs(KEYS) do "
+			+ "  local t = redis.call('TYPE', key)['ok'] "
+			+ "  if t == 'hash' then "
+			+ "    redis.call('HSET', key, '" + FIELD_MAIL_ADDRESS + "', ARGV[i + 1]) "
+			+ "    redis.call('PEXPIRE', key, ARGV[1]) "
+			+ "    result[i] = 1 "
+			+ "  elseif t == 'none' then "
+			+ "    result[i] = 0 "
+			+ "  else "
+			+ "    result[i] = -1 "
+			+ "  end "
+			+ "end "
+			+ "return result",
+			List.class);
+
+	/**
+	 * <pre>
+	 * 登録画面で復元するフィールドを取得するスクリプト。旧形式(JSON)のレコードはTYPEで判定する
+	 * （WRONGTYPEエラーの例外変換はRedisクライアント毎に異なるため、エラーに依存しない）。
+	 * ARGV:取得するフィールド名
+	 * 戻り値 ハッシュ:フィールドの値（ARGVと同順） レコードなし:空 旧形式:TYPEの結果のみ
+	 * </pre>
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static final RedisScript<List<Object>> FIND_FOR_ENTRY_SCRIPT = new DefaultRedisScript(
+			"local t = redis.call('TYPE', KEYS[1])['ok'] "
+			+ "if t == 'hash' then "
+			+ "  return redis.call('HMGET', KEYS[1], unpack(ARGV)) "
+			+ "elseif t == 'none' then "
+			+ "  return {} "
+			+ "end "
+			+ "return {t}",
+			List.class);
+
+	@Value("${spplogin.emptymail.session-coop-key.expire}")
+	private int coopKeyExpire;
+
+	@Value("${spplogin.emptymail.session-coop-key.expire-timeunit}")
+	private String coopKeyExpireTimeUnit;
+
+	@Autowired
+	private StringRedisTemplate stringRedisTemplate;
+
+	/** 旧形式(Guest全体のJSON)で保存されたレコードの読み書き用 */
+	@Autowired
+	private RedisTemplate<String, Guest> redisTemplate;
+
+	@Autowired
+	private RedisReadRouter redisReadRouter;
+
+	@Autowired
+	private SessionCoopKeyFilter sessionCoopKeyFilter;
+
+	@Autowired
+	private RedisScriptExecutor redisScriptExecutor;
+
+	/**
+	 * 連携レコードを保存し、有効期限を設定する。
+	 * @param coopKey 連携キー
+	 * @param guest 保存するゲスト情報
+	 */
+	public void save(String coopKey, Guest guest) {
+		stringRedisTemplate.execute(SAVE_SCRIPT, Collections.singletonList(coopKey), saveArgs(guest));
+		sessionCoopKeyFilter.onCreated(coopKey);
+	}
+
+	/**
+	 * 連携レコードを非同期で保存する。
+	 * ゲスト情報は呼び出し元スレッドで読み取るため、リクエストスコープのBeanを渡すこともできる。
+	 * @param coopKey 連携キー
+	 * @param guest 保存するゲスト情報
+	 * @return 保存完了を通知するFuture
+	 */
+	public CompletableFuture<Void> saveAsync(String coopKey, Guest guest) {
+		return redisScriptExecutor.executeAsync(SAVE_SCRIPT, Collections.singletonList(coopKey), saveArgs(guest))
+				.thenRun(() -> sessionCoopKeyFilter.onCreated(coopKey));
+	}
+
+	/**
+	 * @return 保存スクリプトの引数（有効期限、フィールド名と値の組）
+	 */
+	private String[] saveArgs(Guest guest) {
+		final List<String> args = new ArrayList<>();
+		args.add(String.valueOf(expireMillis()));
+		addIfNotNull(args, FIELD_BIRTHDAY_YEAR, guest.getBirthDayYear());
+		addIfNotNull(args, FIELD_BIRTHDAY_MONTH, guest.getBirthDayMonth());
+		addIfNotNull(args, FIELD_BIRTHDAY_DAY, guest.getBirthDayDay());
+		addIfNotNull(args, FIELD_MAIL_ADDRESS, guest.getMailAddress());
+		// 作成日時は常に設定されるため、空のハッシュとなることはない
+		args.add(FIELD_CREATED_AT);
+		args.add(String.valueOf(System.currentTimeMillis()));
+		return args.toArray(new String[args.size()]);
+	}
+
+	/**
+	 * 連携レコードのメールアドレスを更新し、有効期限を設定する。
+	 * @param coopKey 連携キー
+	 * @param mailAddress メールアドレス
+	 * @return レコードが存在し更新した場合true
+	 */
+	public boolean updateMailAddress(String coopKey, String mailAddress) {
+		if (!sessionCoopKeyFilter.mightExist(coopKey)) {
+			return false;
+		}
+		final long expireMillis = expireMillis();
+		final Long result = stringRedisTemplate.execute(UPDATE_MAIL_ADDRESS_SCRIPT,
+				Collections.singletonList(coopKey), mailAddress, String.valueOf(expireMillis));
+		return updated(coopKey, mailAddress, expireMillis, result);
+	}
+
+	/**
+	 * メールアドレス更新スクリプトの結果を判定し、旧形式のレコードの場合は個別に更新する。
+	 * @return レコードが存在し更新した場合true
+	 */
+	private boolean updated(String coopKey, String mailAddress, long expireMillis, Long result) {
+		if (result != null && result < 0) {
+			log.debug("旧形式の連携レコードを更新します。 : {}", coopKey);
+			final Guest guest = redisTemplate.opsForValue().get(coopKey);
+			if (guest == null) {
+				return false;
+			}
+			guest.setMailAddress(mailAddress);
+			redisTemplate.opsForValue().set(coopKey, guest, expireMillis, TimeUnit.MILLISECONDS);
+			return true;
+		}
+
+		return result != null && result > 0;
+	}
+
+	/**
+	 * 連携レコードのメールアドレスを非同期で更新し、有効期限を設定する。
+	 * @param coopKey 連携キー
+	 * @param mailAddress メールアドレス
+	 * @return レコードが存在し更新した場合trueを返すFuture
+	 */
+	public CompletableFuture<Boolean> updateMailAddressAsync(String coopKey, String mailAddress) {
+		if (!sessionCoopKeyFilter.mightExist(coopKey)) {
+			return CompletableFuture.completedFuture(false);
+		}
+		final long expireMillis = expireMillis();
+		return redisScriptExecutor.executeAsync(UPDATE_MAIL_ADDRESS_SCRIPT, Collections.singletonList(coopKey),
+				mailAddress, String.valueOf(expireMillis))
+				.thenApply(result -> updated(coopKey, mailAddress, expireMillis, result));
+	}
+
+	/**
+	 * <pre>
+	 * 複数の連携レコードのメールアドレスを更新し、有効期限を設定する。
+	 * 全件の更新を1回のスクリプト実行（1往復）で行う。旧形式のレコードのみ個別に更新する。
+	 * </pre>
+	 * @param coopKeys 連携キー
+	 * @param mailAddresses メールアドレス（連携キーと同順）
+	 * @return 連携キー毎の更新結果（レコードが存在し更新した場合true）
+	 */
+	public List<Boolean> updateMailAddresses(List<String> coopKeys, List<String> mailAddresses) {
+		final BatchUpdate batch = new BatchUpdate(coopKeys, mailAddresses);
+		if (batch.targets.isEmpty()) {
+			return batch.results;
+		}
+		return batch.apply(stringRedisTemplate.execute(UPDATE_MAIL_ADDRESSES_SCRIPT, batch.keys, batch.args()));
+	}
+
+	/**
+	 * 複数の連携レコードのメールアドレスを非同期で更新し、有効期限を設定する。
+	 * @param coopKeys 連携キー
+	 * @param mailAddresses メールアドレス（連携キーと同順）
+	 * @return 連携キー毎の更新結果を返すFuture
+	 */
+	public CompletableFuture<List<Boolean>> updateMailAddressesAsync(List<String> coopKeys, List<String> mailAddresses) {
+		final BatchUpdate batch = new BatchUpdate(coopKeys, mailAddresses);
+		if (batch.targets.isEmpty()) {
+			return CompletableFuture.completedFuture(batch.results);
+		}
+		return redisScriptExecutor.executeAsync(UPDATE_MAIL_ADDRESSES_SCRIPT, batch.keys, batch.args())
+				.thenApply(batch::apply);
+	}
+
+	/**
+	 * 複数の連携レコードのメールアドレス更新の対象と結果
+	 */
+	private class BatchUpdate {
+
+		final List<String> coopKeys;
+		final List<String> mailAddresses;
+		final long expireMillis = expireMillis();
+		final List<Boolean> results;
+		/** 連携キーフィルタで存在しないと判定できなかったインデックス */
+		final List<Integer> targets;
+		final List<String> keys;
+
+		BatchUpdate(List<String> coopKeys, List<String> mailAddresses) {
+			this.coopKeys = coopKeys;
+			this.mailAddresses = mailAddresses;
+			this.results = new ArrayList<>(Collections.nCopies(coopKeys.size(), Boolean.FALSE));
+			this.targets = new ArrayList<>(coopKeys.size());
+			this.keys = new ArrayList<>(coopKeys.size());
+			for (int i = 0; i < coopKeys.size(); i++) {
+				if (sessionCoopKeyFilter.mightExist(coopKeys.get(i))) {
+					targets.add(i);
+					keys.add(coopKeys.get(i));
+				}
+			}
+		}
+
+		/**
+		 * @return スクリプトの引数（有効期限、対象のメールアドレス）
+		 */
+		String[] args() {
+			final String[] args = new String[targets.size() + 1];
+			args[0] = String.valueOf(expireMillis);
+			for (int j = 0; j < targets.size(); j++) {
+				args[j + 1] = mailAddresses.get(targets.get(j));
+			}
+			return args;
+		}
+
+		/**
+		 * スクリプトの結果を反映する。旧形式のレコードのみ個別に更新する。
+		 */
+		List<Boolean> apply(List<Object> replies) {
+			if (replies == null) {
+				return results;
+			}
+			for (int j = 0; j < targets.size() && j < replies.size(); j++) {
+				final int i = targets.get(j);
+				results.set(i, updated(coopKeys.get(i), mailAddresses.get(i), expireMillis, (Long) replies.get(j)));
+			}
+			return results;
+		}
+	}
+
+	/**
+	 * 登録画面の復元に必要なフィールド（誕生日、メールアドレス）のみを取得する。
+	 * @param coopKey 連携キー
+	 * @return ゲスト情報。レコードが存在しない場合null
+	 */
+	public Guest findForEntry(String coopKey) {
+		if (!sessionCoopKeyFilter.mightExist(coopKey)) {
+			return null;
+		}
+		final List<Object> values = stringRedisTemplate.execute(FIND_FOR_ENTRY_SCRIPT,
+				Collections.singletonList(coopKey), ENTRY_FIELDS.toArray());
+
+		if (values != null && values.size() == 1) {
+			// ハッシュ形式導入前に保存された旧形式(JSON)のレコード
+			log.debug("旧形式の連携レコードを取得します。 : {}", coopKey);
+			return redisTemplate.opsForValue().get(coopKey);
+		}
+		if (values == null || values.stream().allMatch(v -> v == null)) {
+			return null;
+		}
+
+		final Guest guest = new Guest();
+		guest.setBirthDayYear((String) values.get(0));
+		guest.setBirthDayMonth((String) values.get(1));
+		guest.setBirthDayDay((String) values.get(2));
+		guest.setMailAddress((String) values.get(3));
+		return guest;
+	}
+
+	/**
+	 * <pre>
+	 * 連携レコードの存在を確認する。
+	 * 複製遅延を許容するため、レプリカが設定されている場合はレプリカで確認する。
+	 * 作成直後のレコードは存在しないと判定されることがあるため、存在しない場合の処理は再作成等の冪等なものに限ること。
+	 * </pre>
+	 * @param coopKey 連携キー
+	 * @return 存在する場合true
+	 */
+	public boolean exists(String coopKey) {
+		if (!sessionCoopKeyFilter.mightExist(coopKey)) {
+			return false;
+		}
+		return Boolean.TRUE.equals(redisReadRouter.lagTolerant().hasKey(coopKey));
+	}
+
+	/**
+	 * 連携レコードを削除する。
+	 * @param coopKey 連携キー
+	 */
+	public void delete(String coopKey) {
+		stringRedisTemplate.delete(coopKey);
+	}
+
+	/**
+	 * 連携キーの有効期限（ミリ秒）
+	 * @return
+	 */
+	public long expireMillis() {
+		return TimeUnit.valueOf(coopKeyExpireTimeUnit).toMillis(coopKeyExpire);
+	}
+
+	private static void addIfNotNull(List<String> args, String field, String value) {
+		if (value != null) {
+			args.add(field);
+			args.add(value);
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package jp.co.disney.spplogin.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.session.MapSession;
+import org.springframework.util.StringUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * セッションの内容を暗号化してCookie値に変換する。
+ *
+ * 形式 : base64url( バージョン(1) | 鍵ID(1) | IV(12) | AES-GCMによる暗号文 )
+ * 暗号文は作成日時、最終アクセス日時、最大非アクティブ秒数、属性をシリアライズ・圧縮したもの。
+ *
+ * 鍵は「鍵ID:base64エンコードされたAES鍵」をカンマ区切りで指定する。
+ * 先頭の鍵で暗号化し、復号は全ての鍵で受け付けるため、先頭に新しい鍵を追加することで鍵を切り替えられる。
+ * </pre>
+ */
+@Slf4j
+public class CookieSessionCodec {
+
+	private static final byte VERSION = 1;
+	private static final int IV_LENGTH = 12;
+	private static final int TAG_BITS = 128;
+	private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	private final Map<Byte, SecretKey> keys = new LinkedHashMap<>();
+	private final byte activeKeyId;
+	private final int maxLength;
+
+	/**
+	 * @param keySpec 「鍵ID:base64エンコードされたAES鍵」のカンマ区切り。先頭が暗号化に使用する鍵
+	 * @param maxLength Cookie値の最大長
+	 */
+	public CookieSessionCodec(String keySpec, int maxLength) {
+		if (!StringUtils.hasText(keySpec)) {
+			throw new IllegalArgumentException("セッションCookieの暗号鍵が設定されていません。");
+		}
+		for (String entry : StringUtils.commaDelimitedListToStringArray(keySpec)) {
+			final String[] idAndKey = entry.trim().split(":", 2);
+			if (idAndKey.length != 2) {
+				throw new IllegalArgumentException("セッションCookieの暗号鍵の形式が正しくありません。");
+			}
+			final byte id = Byte.parseByte(idAndKey[0]);
+			final byte[] key = Base64.getDecoder().decode(idAndKey[1]);
+			keys.put(id, new SecretKeySpec(key, "AES"));
+		}
+		this.activeKeyId = keys.keySet().iterator().next();
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * セッションをCookie値に変換する。
+	 * @param session セッション
+	 * @return Cookie値
+	 * @throws IllegalStateException Cookie値が最大長を超える場合
+	 */
+	public String encode(MapSession session) {
+		try {
+			final byte[] plain = serialize(session);
+			final byte[] iv = new byte[IV_LENGTH];
+			RANDOM.nextBytes(iv);
+
+			final Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+			cipher.init(Cipher.ENCRYPT_MODE, keys.get(activeKeyId), new GCMParameterSpec(TAG_BITS, iv));
+			cipher.updateAAD(new byte[] { VERSION, activeKeyId });
+			final byte[] encrypted = cipher.doFinal(plain);
+
+			final ByteBuffer buf = ByteBuffer.allocate(2 + IV_LENGTH + encrypted.length);
+			buf.put(VERSION).put(activeKeyId).put(iv).put(encrypted);
+			final String value = Base64.getUrlEncoder().withoutPadding().encodeToString(buf.array());
+
+			if (value.length() > maxLength) {
+				throw new IllegalStateException("セッションCookieのサイズが上限を超えています。 : " + value.length());
+			}
+			return value;
+		} catch (IOException | GeneralSecurityException e) {
+			throw new IllegalStateException("セッションCookieの生成に失敗しました。", e);
+		}
+	}
+
+	/**
+	 * Cookie値からセッションを復元する。
+	 * @param value Cookie値
+	 * @return セッション。改ざんされている、または復号できない場合null
+	 */
+	public MapSession decode(String value) {
+		if (!StringUtils.hasText(value) || value.length() > maxLength) {
+			return null;
+		}
+		try {
+			final ByteBuffer buf = ByteBuffer.wrap(Base64.getUrlDecoder().decode(value));
+			final byte version = buf.get();
+			final byte keyId = buf.get();
+			final SecretKey key = keys.get(keyId);
+			if (version != VERSION || key == null) {
+				return null;
+			}
+			final byte[] iv = new byte[IV_LENGTH];
+			buf.get(iv);
+			final byte[] encrypted = new byte[buf.remaining()];
+			buf.get(encrypted);
+
+			final Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+			cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+			cipher.updateAAD(new byte[] { version, keyId });
+			return deserialize(cipher.doFinal(encrypted));
+		} catch (IllegalArgumentException | java.nio.BufferUnderflowException | IOException
+				| ClassNotFoundException | GeneralSecurityException e) {
+			log.debug("セッションCookieを復元できませんでした。", e);
+			return null;
+		}
+	}
+
+	private static byte[] serialize(MapSession session) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+		try (ObjectOutputStream out = new ObjectOutputStream(new DeflaterOutputStream(bytes))) {
+			out.writeLong(session.getCreationTime());
+			out.writeLong(session.getLastAccessedTime());
+			out.writeInt(session.getMaxInactiveIntervalInSeconds());
+			out.writeInt(session.getAttributeNames().size());
+			for (String name : session.getAttributeNames()) {
+				out.writeUTF(name);
+				out.writeObject(session.getAttribute(name));
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private static MapSession deserialize(byte[] plain) throws IOException, ClassNotFoundException {
+		try (ObjectInputStream in = new ObjectInputStream(new InflaterInputStream(new ByteArrayInputStream(plain)))) {
+			final MapSession session = new MapSession();
+			session.setCreationTime(in.readLong());
+			session.setLastAccessedTime(in.readLong());
+			session.setMaxInactiveIntervalInSeconds(in.readInt());
+			final int size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				final String name = in.readUTF();
+				session.setAttribute(name, in.readObject());
+			}
+			return session;
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package jp.co.disney.spplogin.session;
+
+import org.springframework.session.MapSession;
+import org.springframework.session.SessionRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * セッションの内容を暗号化してCookieに保持するセッションリポジトリ。
+ * サーバ側にセッションストアを持たないため、リクエスト毎のRedisアクセスが不要となる。
+ *
+ * セッションIDとして暗号化したセッション内容そのものを使用する。
+ * 保存時にIDを再生成するため、SessionRepositoryFilterが毎レスポンスでCookieを更新する。
+ * サーバ側で無効化できないため、有効期限は復元時に最終アクセス日時から判定する。
+ * </pre>
+ */
+@Slf4j
+public class CookieSessionRepository implements SessionRepository<MapSession> {
+
+	private final CookieSessionCodec codec;
+	private final int maxInactiveIntervalInSeconds;
+
+	public CookieSessionRepository(CookieSessionCodec codec, int maxInactiveIntervalInSeconds) {
+		this.codec = codec;
+		this.maxInactiveIntervalInSeconds = maxInactiveIntervalInSeconds;
+	}
+
+	@Override
+	public MapSession createSession() {
+		final MapSession session = new MapSession();
+		session.setMaxInactiveIntervalInSeconds(maxInactiveIntervalInSeconds);
+		return session;
+	}
+
+	@Override
+	public void save(MapSession session) {
+		session.setId(codec.encode(session));
+	}
+
+	@Override
+	public MapSession getSession(String id) {
+		final MapSession session = codec.decode(id);
+		if (session == null) {
+			return null;
+		}
+		if (session.isExpired()) {
+			log.debug("セッションCookieの有効期限が切れています。");
+			return null;
+		}
+		session.setId(id);
+		session.setLastAccessedTime(System.currentTimeMillis());
+		return session;
+	}
+
+	@Override
+	public void delete(String id) {
+		// サーバ側に保持しているデータはないため何もしない
+	}
+}
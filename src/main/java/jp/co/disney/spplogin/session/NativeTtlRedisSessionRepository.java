@@ -0,0 +1,27 @@
+package jp.co.disney.spplogin.session;
+
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.session.data.redis.RedisOperationsSessionRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * セッションの有効期限切れをRedisのTTLに任せるセッションリポジトリ。
+ * Spring Session標準では全ノードが毎分、期限切れ管理用のセットを走査するが、
+ * 本リポジトリでは何もしない。期限切れ管理用セットの掃除は{@link SessionExpirationSweeper}が
+ * リーダーノードでのみ実行する。
+ * </pre>
+ */
+@Slf4j
+public class NativeTtlRedisSessionRepository extends RedisOperationsSessionRepository {
+
+	public NativeTtlRedisSessionRepository(RedisOperations<Object, Object> sessionRedisOperations) {
+		super(sessionRedisOperations);
+	}
+
+	@Override
+	public void cleanupExpiredSessions() {
+		log.trace("ノード毎の期限切れセッション掃除はスキップします。");
+	}
+}
@@ -0,0 +1,250 @@
+package jp.co.disney.spplogin.session;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import jp.co.disney.spplogin.redis.RedisLeaderLock;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * セッション有効期限切れ管理用セット（spring:session:expirations:&lt;分&gt;）の掃除を行う。
+ * spplogin.session.expiry.mode=native の場合のみ有効。
+ *
+ * ・Redis上のリーダーロック（RedisLeaderLock）を取得したノードのみが実行する。
+ * ・期限切れセッションのキーはSSCANで一定件数ずつ取得し、パイプラインでアクセスして
+ *   Redisに期限切れ処理（削除とキースペース通知）を行わせる。
+ * ・1秒あたりの処理件数および1回あたりの処理件数には上限を設ける。
+ * ・上限を守るための待機で共有のスケジューラ（taskScheduler）のスレッドを占有しないよう、
+ *   掃除は専用のスレッドで実行する。前回の掃除が終わっていない場合は開始しない。
+ * </pre>
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "spplogin.session.expiry", name = "mode", havingValue = "native")
+public class SessionExpirationSweeper implements PublicMetrics {
+
+	private static final String EXPIRATIONS_PREFIX = "spring:session:expirations:";
+	/** 期限切れ管理用セットの要素は "expires:&lt;セッションID&gt;" のため、付与するのはこの部分のみ */
+	private static final String SESSION_KEY_PREFIX = "spring:session:sessions:";
+
+	@Value("${spplogin.session.expiry.cleanup.lookback-minutes}")
+	private int lookbackMinutes;
+
+	@Value("${spplogin.session.expiry.cleanup.batch-size}")
+	private int batchSize;
+
+	@Value("${spplogin.session.expiry.cleanup.max-keys-per-second}")
+	private int maxKeysPerSecond;
+
+	@Value("${spplogin.session.expiry.cleanup.max-keys-per-run}")
+	private int maxKeysPerRun;
+
+	@Autowired
+	@Qualifier("sessionRedisTemplate")
+	private RedisOperations<Object, Object> sessionRedisTemplate;
+
+	@Autowired
+	private RedisLeaderLock leaderLock;
+
+	private ExecutorService executor;
+	private final AtomicBoolean running = new AtomicBoolean();
+
+	private volatile boolean leader;
+	private final AtomicLong runs = new AtomicLong();
+	private final AtomicLong totalKeys = new AtomicLong();
+	private volatile long lastDurationMillis;
+	private volatile long lastKeys;
+	private volatile long lastSets;
+
+	@PostConstruct
+	public void start() {
+		executor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("session-sweeper-"));
+	}
+
+	@PreDestroy
+	public void stop() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * 期限切れセッションの掃除を専用のスレッドで開始する。
+	 */
+	@Scheduled(cron = "${spplogin.session.expiry.cleanup.cron}")
+	public void sweep() {
+		if (!running.compareAndSet(false, true)) {
+			log.info("前回の期限切れセッション掃除が終了していないためスキップします。");
+			return;
+		}
+		executor.execute(() -> {
+			try {
+				sweepNow();
+			} catch (RuntimeException e) {
+				if (Thread.currentThread().isInterrupted()) {
+					log.info("停止のため期限切れセッション掃除を中断しました。");
+				} else {
+					log.error("期限切れセッション掃除に失敗しました。", e);
+				}
+			} finally {
+				running.set(false);
+			}
+		});
+	}
+
+	/**
+	 * 期限切れセッションの掃除。リーダーの場合のみ実行する。
+	 */
+	void sweepNow() {
+		final String nodeId = leaderLock.getNodeId();
+		leader = leaderLock.acquire();
+		if (!leader) {
+			log.trace("リーダーではないため期限切れセッション掃除をスキップします。 : {}", nodeId);
+			return;
+		}
+
+		final long start = System.nanoTime();
+		// キーの分は期限の切り上げのため、現在の分までのセットは全て期限切れ
+		final long latestMinute = roundDownMinute(System.currentTimeMillis());
+		long keys = 0;
+		long sets = 0;
+
+		for (int i = lookbackMinutes; i >= 0 && keys < maxKeysPerRun; i--) {
+			final String expirationKey = EXPIRATIONS_PREFIX + (latestMinute - TimeUnit.MINUTES.toMillis(i));
+			final long swept = sweepExpirationSet(expirationKey, maxKeysPerRun - keys);
+			if (swept >= 0) {
+				keys += swept;
+				sets++;
+			}
+		}
+
+		lastDurationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		lastKeys = keys;
+		lastSets = sets;
+		runs.incrementAndGet();
+		totalKeys.addAndGet(keys);
+		log.info("期限切れセッション掃除完了 : node={} sets={} keys={} elapsed={}ms", nodeId, sets, keys, lastDurationMillis);
+	}
+
+	/**
+	 * 1分ぶんの期限切れ管理用セットを処理する。
+	 * @param expirationKey 期限切れ管理用セットのキー
+	 * @param limit 処理件数の上限
+	 * @return 処理したセッション数。セットが存在しない場合-1
+	 */
+	private long sweepExpirationSet(String expirationKey, long limit) {
+		if (!sessionRedisTemplate.hasKey(expirationKey)) {
+			return -1;
+		}
+
+		long count = 0;
+		boolean completed = true;
+		final List<byte[]> batch = new ArrayList<>(batchSize);
+		final Cursor<Object> cursor = sessionRedisTemplate.opsForSet().scan(expirationKey,
+				ScanOptions.scanOptions().count(batchSize).build());
+		try {
+			while (cursor.hasNext()) {
+				if (count + batch.size() >= limit) {
+					completed = false;
+					break;
+				}
+				batch.add(expiresKey(cursor.next()).getBytes(StandardCharsets.UTF_8));
+				if (batch.size() >= batchSize) {
+					count += touch(batch);
+					batch.clear();
+				}
+			}
+		} finally {
+			try {
+				cursor.close();
+			} catch (Exception e) {
+				log.warn("SSCANカーソルのクローズに失敗しました。 : {}", expirationKey, e);
+			}
+		}
+		count += touch(batch);
+
+		// 上限に達した場合は次回実行時に続きを処理する
+		if (completed) {
+			sessionRedisTemplate.delete(expirationKey);
+		}
+		return count;
+	}
+
+	/**
+	 * 期限切れセッションのキーにパイプラインでアクセスし、Redisに期限切れ処理を行わせる。
+	 * 秒間処理件数の上限を超えないよう待機する。
+	 */
+	private int touch(List<byte[]> keys) {
+		if (keys.isEmpty()) {
+			return 0;
+		}
+		final long start = System.nanoTime();
+		sessionRedisTemplate.executePipelined((RedisCallback<Object>) (RedisConnection connection) -> {
+			for (byte[] key : keys) {
+				connection.exists(key);
+			}
+			return null;
+		});
+
+		final long minNanos = TimeUnit.SECONDS.toNanos(keys.size()) / maxKeysPerSecond;
+		final long waitNanos = minNanos - (System.nanoTime() - start);
+		if (waitNanos > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(waitNanos);
+			} catch (InterruptedException e) {
+				// 停止時は中断する
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("期限切れセッション掃除を中断しました。", e);
+			}
+		}
+		return keys.size();
+	}
+
+	/**
+	 * @param member 期限切れ管理用セットの要素（expires:&lt;セッションID&gt;）
+	 * @return 期限切れ処理を行わせるキー（spring:session:sessions:expires:&lt;セッションID&gt;）
+	 */
+	static String expiresKey(Object member) {
+		return SESSION_KEY_PREFIX + member;
+	}
+
+	private static long roundDownMinute(long timeInMs) {
+		return timeInMs - (timeInMs % TimeUnit.MINUTES.toMillis(1));
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		return Arrays.<Metric<?>>asList(
+				new Metric<>("spplogin.session.cleanup.leader", leader ? 1 : 0),
+				new Metric<>("spplogin.session.cleanup.runs", runs.get()),
+				new Metric<>("spplogin.session.cleanup.keys.total", totalKeys.get()),
+				new Metric<>("spplogin.session.cleanup.last.keys", lastKeys),
+				new Metric<>("spplogin.session.cleanup.last.sets", lastSets),
+				new Metric<>("spplogin.session.cleanup.last.duration-millis", lastDurationMillis));
+	}
+}
@@ -0,0 +1,23 @@
+package jp.co.disney.spplogin.startup;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * 起動完了後にアプリケーションを終了する。
+ * CDSアーカイブ作成時の学習実行（-XX:ArchiveClassesAtExit）で、起動時に読み込まれるクラスを記録するために使用する。
+ * </pre>
+ */
+@Slf4j
+public class ExitOnReadyListener implements ApplicationListener<ApplicationReadyEvent> {
+
+	@Override
+	public void onApplicationEvent(ApplicationReadyEvent event) {
+		log.info("起動が完了したため終了します（spplogin.startup.exit-on-ready=true）。");
+		System.exit(SpringApplication.exit(event.getApplicationContext()));
+	}
+}
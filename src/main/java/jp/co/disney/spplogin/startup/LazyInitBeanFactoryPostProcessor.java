@@ -0,0 +1,97 @@
+package jp.co.disney.spplogin.startup;
+
+import java.util.Set;
+
+import javax.servlet.Filter;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.context.Lifecycle;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * コンポーネントスキャンで登録したBeanを遅延初期化に変更する。
+ * コントローラとその依存先（Core WebAPI呼び出し等）は最初に使用された時点で生成されるため、起動時間が短縮される。
+ *
+ * 以下のBeanは起動時に動作する必要があるため対象外とする。
+ *   ・@Scheduledメソッドを持つ（遅延初期化すると生成されるまでスケジュール実行されない）
+ *   ・Lifecycle、ApplicationListener、MessageListener、Filter、PublicMetrics、HealthIndicatorの実装
+ *   ・spplogin.startup.lazy-init.excludes に指定したBean名
+ * 設定クラス、@Beanで定義したBean、Spring Bootの自動設定によるBeanは対象外とする。
+ * </pre>
+ */
+@Slf4j
+public class LazyInitBeanFactoryPostProcessor implements BeanFactoryPostProcessor, EnvironmentAware {
+
+	private static final Class<?>[] EAGER_TYPES = { Lifecycle.class, ApplicationListener.class,
+			MessageListener.class, Filter.class, PublicMetrics.class, HealthIndicator.class };
+
+	private static final String BASE_PACKAGE = "jp.co.disney.spplogin.";
+
+	private Set<String> excludes;
+
+	@Override
+	public void setEnvironment(Environment environment) {
+		excludes = StringUtils.commaDelimitedListToSet(
+				StringUtils.trimAllWhitespace(environment.getProperty("spplogin.startup.lazy-init.excludes", "")));
+	}
+
+	@Override
+	public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+		int lazy = 0;
+		for (String name : beanFactory.getBeanDefinitionNames()) {
+			final BeanDefinition definition = beanFactory.getBeanDefinition(name);
+			if (isCandidate(name, definition, beanFactory.getBeanClassLoader())) {
+				definition.setLazyInit(true);
+				lazy++;
+				log.debug("遅延初期化に設定しました。 : {}", name);
+			}
+		}
+		log.info("{}件のBeanを遅延初期化に設定しました。", lazy);
+	}
+
+	private boolean isCandidate(String name, BeanDefinition definition, ClassLoader classLoader) {
+		if (excludes.contains(name) || !definition.isSingleton() || definition.isLazyInit()
+				|| definition.getRole() != BeanDefinition.ROLE_APPLICATION
+				|| definition.getFactoryMethodName() != null
+				|| !(definition instanceof AnnotatedBeanDefinition)) {
+			return false;
+		}
+		final String className = definition.getBeanClassName();
+		if (className == null || !className.startsWith(BASE_PACKAGE)) {
+			return false;
+		}
+		final AnnotationMetadata metadata = ((AnnotatedBeanDefinition) definition).getMetadata();
+		if (metadata.isAnnotated(Configuration.class.getName())
+				|| metadata.hasAnnotatedMethods(Scheduled.class.getName())) {
+			return false;
+		}
+		try {
+			final Class<?> type = ClassUtils.forName(className, classLoader);
+			for (Class<?> eager : EAGER_TYPES) {
+				if (eager.isAssignableFrom(type)) {
+					return false;
+				}
+			}
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+		return true;
+	}
+}
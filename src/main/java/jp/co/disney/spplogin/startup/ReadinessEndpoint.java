@@ -0,0 +1,37 @@
+package jp.co.disney.spplogin.startup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+
+/**
+ * <pre>
+ * 準備完了（ウォームアップ完了）状態を返すエンドポイント（/readiness）。
+ * HTTPステータスはReadinessMvcEndpointで設定する（準備完了前は503）。
+ * </pre>
+ */
+public class ReadinessEndpoint extends AbstractEndpoint<Map<String, Object>> {
+
+	private final WarmUp warmUp;
+
+	public ReadinessEndpoint(WarmUp warmUp) {
+		super("readiness", false);
+		this.warmUp = warmUp;
+	}
+
+	/**
+	 * @return 準備完了の場合true
+	 */
+	public boolean isReady() {
+		return warmUp.isReady();
+	}
+
+	@Override
+	public Map<String, Object> invoke() {
+		final Map<String, Object> result = new LinkedHashMap<>();
+		result.put("status", warmUp.isReady() ? "READY" : "WARMING_UP");
+		result.put("steps", warmUp.steps());
+		return result;
+	}
+}
@@ -0,0 +1,32 @@
+package jp.co.disney.spplogin.startup;
+
+import org.springframework.boot.actuate.endpoint.mvc.EndpointMvcAdapter;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * 準備完了前は503、準備完了後は200を返す。バランサのヘルスチェックに使用する。
+ */
+public class ReadinessMvcEndpoint extends EndpointMvcAdapter {
+
+	private final ReadinessEndpoint delegate;
+
+	public ReadinessMvcEndpoint(ReadinessEndpoint delegate) {
+		super(delegate);
+		this.delegate = delegate;
+	}
+
+	@Override
+	@RequestMapping(method = RequestMethod.GET)
+	@ResponseBody
+	public Object invoke() {
+		if (!delegate.isEnabled()) {
+			return getDisabledResponse();
+		}
+		return new ResponseEntity<>(delegate.invoke(),
+				delegate.isReady() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE);
+	}
+}
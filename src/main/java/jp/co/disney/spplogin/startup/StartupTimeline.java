@@ -0,0 +1,160 @@
+package jp.co.disney.spplogin.startup;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessorAdapter;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.PriorityOrdered;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * 起動時のBean生成時間を計測し、起動完了（ApplicationReadyEvent）時に一覧をログに出力する。
+ *   ・JVM起動から起動完了までの時間
+ *   ・Bean毎の生成時間（依存するBeanの生成時間を除いた時間）の上位
+ *   ・自動設定クラス毎の生成時間（その自動設定が定義したBeanの合計）の上位
+ * 計測はこのBeanPostProcessorが登録された後に生成されたBeanが対象で、他のBeanPostProcessor等は含まない。
+ * 型判定のための生成や生成失敗等、生成開始のみで完了が通知されないものは、外側のBeanの完了時に破棄する。
+ * </pre>
+ */
+@Slf4j
+public class StartupTimeline extends InstantiationAwareBeanPostProcessorAdapter
+		implements PriorityOrdered, BeanFactoryAware, ApplicationListener<ApplicationReadyEvent> {
+
+	private static final String APPLICATION_GROUP = "(application)";
+
+	private final int top;
+	private final ThreadLocal<Deque<Frame>> stack = ThreadLocal.withInitial(ArrayDeque::new);
+	private final Queue<Frame> records = new ConcurrentLinkedQueue<>();
+	private ConfigurableListableBeanFactory beanFactory;
+
+	/**
+	 * @param top 出力する件数
+	 */
+	public StartupTimeline(int top) {
+		this.top = top;
+	}
+
+	@Override
+	public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+		this.beanFactory = (ConfigurableListableBeanFactory) beanFactory;
+	}
+
+	@Override
+	public int getOrder() {
+		return Ordered.HIGHEST_PRECEDENCE;
+	}
+
+	@Override
+	public Object postProcessBeforeInstantiation(Class<?> beanClass, String beanName) throws BeansException {
+		stack.get().push(new Frame(beanName, System.nanoTime()));
+		return null;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+		final Deque<Frame> frames = stack.get();
+		if (frames.stream().noneMatch(frame -> frame.beanName.equals(beanName))) {
+			// FactoryBeanが生成したオブジェクト等、生成開始を計測していないもの
+			return bean;
+		}
+		// 完了が通知されなかった生成開始（型判定のための生成等）を破棄する。その時間は外側のBeanに含める
+		Frame frame = frames.pop();
+		while (!frame.beanName.equals(beanName)) {
+			frame = frames.pop();
+		}
+		final long total = System.nanoTime() - frame.startNanos;
+		frame.selfNanos = total - frame.childNanos;
+		final Frame parent = frames.peek();
+		if (parent != null) {
+			parent.childNanos += total;
+		}
+		records.add(frame);
+		return bean;
+	}
+
+	@Override
+	public void onApplicationEvent(ApplicationReadyEvent event) {
+		final List<Frame> beans = new ArrayList<>(records);
+		beans.sort(Comparator.comparingLong((Frame frame) -> frame.selfNanos).reversed());
+
+		final Map<String, Long> groups = new HashMap<>();
+		long totalNanos = 0;
+		for (Frame frame : beans) {
+			groups.merge(group(frame.beanName), frame.selfNanos, Long::sum);
+			totalNanos += frame.selfNanos;
+		}
+		final List<Map.Entry<String, Long>> sortedGroups = new ArrayList<>(groups.entrySet());
+		sortedGroups.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+
+		final StringBuilder report = new StringBuilder(4096);
+		report.append("起動時間 : JVM起動から起動完了まで ")
+				.append(ManagementFactory.getRuntimeMXBean().getUptime()).append("ms, Bean生成 ")
+				.append(beans.size()).append("件 ").append(millis(totalNanos)).append("ms\n");
+		report.append("  Bean毎の生成時間（上位").append(top).append("件）\n");
+		for (Frame frame : beans.subList(0, Math.min(top, beans.size()))) {
+			report.append(String.format("    %8.1fms  %s%n", millis(frame.selfNanos), frame.beanName));
+		}
+		report.append("  自動設定毎の生成時間（上位").append(top).append("件）\n");
+		for (Map.Entry<String, Long> group : sortedGroups.subList(0, Math.min(top, sortedGroups.size()))) {
+			report.append(String.format("    %8.1fms  %s%n", millis(group.getValue()), group.getKey()));
+		}
+		log.info(report.toString());
+		records.clear();
+		stack.remove();
+	}
+
+	/**
+	 * Beanを定義した自動設定クラス。自動設定以外で定義されたBeanはアプリケーションとしてまとめる。
+	 */
+	private String group(String beanName) {
+		try {
+			final BeanDefinition definition = beanFactory.getMergedBeanDefinition(beanName);
+			final String factoryBeanName = definition.getFactoryBeanName();
+			final String className = factoryBeanName != null && beanFactory.containsBeanDefinition(factoryBeanName)
+					? beanFactory.getBeanDefinition(factoryBeanName).getBeanClassName()
+					: definition.getBeanClassName();
+			if (className != null && className.contains(".autoconfigure.")) {
+				return className.substring(className.lastIndexOf('.') + 1);
+			}
+		} catch (NoSuchBeanDefinitionException e) {
+			// 内部Bean等
+		}
+		return APPLICATION_GROUP;
+	}
+
+	private static double millis(long nanos) {
+		return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	private static class Frame {
+		final String beanName;
+		final long startNanos;
+		long childNanos;
+		long selfNanos;
+
+		Frame(String beanName, long startNanos) {
+			this.beanName = beanName;
+			this.startNanos = startNanos;
+		}
+	}
+}
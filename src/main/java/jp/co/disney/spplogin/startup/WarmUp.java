@@ -0,0 +1,311 @@
+package jp.co.disney.spplogin.startup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jp.co.disney.spp.v3.core.common.util.JwtSign;
+import jp.co.disney.spplogin.vo.DidMemberDetails;
+import jp.co.disney.spplogin.vo.SppMemberDetails;
+import jp.co.disney.spplogin.web.model.Guest;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * 起動完了後、リクエストを受け付ける前の準備処理（ウォームアップ）。
+ *   ・Core WebAPI、Redisへのコネクションを事前に確立し、プールに保持する
+ *   ・全てのテンプレートを1度処理し、解析結果をキャッシュする
+ *   ・JSON変換、JWT署名を繰り返し実行し、クラスの読み込みとJITコンパイルを済ませる
+ *   ・遅延初期化したコントローラを生成する
+ * 各処理の失敗は記録のみ行い、全処理の終了後に準備完了とする。
+ * 準備完了まではreadinessエンドポイントが503を返すため、Apacheのバランサは準備完了したノードにのみ振り分ける。
+ * Core WebAPIの呼び出しにはタイムアウトがないため、接続の確立はspplogin.warmup.core.timeout-millisまでで打ち切る。
+ * また処理が終わらない場合も、開始からspplogin.warmup.timeout-millisを過ぎた時点で準備完了とする。
+ * </pre>
+ */
+@Slf4j
+@Component
+public class WarmUp implements ApplicationListener<ApplicationReadyEvent> {
+
+	private static final String TEMPLATE_PREFIX = "templates/";
+	private static final String TEMPLATE_SUFFIX = ".html";
+
+	@Value("${spplogin.warmup.enabled}")
+	private boolean enabled;
+
+	@Value("${spplogin.warmup.timeout-millis}")
+	private long timeoutMillis;
+
+	@Value("${spplogin.warmup.core.connections}")
+	private int coreConnections;
+
+	@Value("${spplogin.warmup.core.timeout-millis}")
+	private long coreTimeoutMillis;
+
+	@Value("${spplogin.core-webapi.pool.max-per-route}")
+	private int corePoolMaxPerRoute;
+
+	@Value("${spplogin.warmup.redis.connections}")
+	private int redisConnections;
+
+	@Value("${spplogin.warmup.iterations}")
+	private int iterations;
+
+	@Value("${spplogin.core-webapi.base-url}")
+	private String coreBaseUrl;
+
+	@Value("${spplogin.core-webapi.port}")
+	private int corePort;
+
+	@Autowired
+	private RestTemplate restTemplate;
+
+	@Autowired
+	private RedisConnectionFactory redisConnectionFactory;
+
+	@Autowired
+	private TemplateEngine templateEngine;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	private volatile boolean ready;
+	/** ウォームアップの期限（System.nanoTime）。開始前は0 */
+	private volatile long deadlineNanos;
+
+	/** 処理毎の結果（処理名 → 所要時間(ミリ秒)、失敗時は-1） */
+	private final Map<String, Long> steps = new LinkedHashMap<>();
+
+	@Override
+	public void onApplicationEvent(ApplicationReadyEvent event) {
+		if (!enabled) {
+			ready = true;
+			return;
+		}
+		deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		final Thread thread = new Thread(() -> run(event), "warm-up");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * @return 準備完了、またはウォームアップの期限を過ぎた場合true
+	 */
+	public boolean isReady() {
+		return ready || (deadlineNanos != 0 && System.nanoTime() - deadlineNanos >= 0);
+	}
+
+	/**
+	 * @return 処理毎の所要時間（ミリ秒、失敗時は-1）
+	 */
+	public Map<String, Long> steps() {
+		synchronized (steps) {
+			return new LinkedHashMap<>(steps);
+		}
+	}
+
+	private void run(ApplicationReadyEvent event) {
+		final long start = System.nanoTime();
+		step("controllers", () -> event.getApplicationContext().getBeansWithAnnotation(Controller.class));
+		step("core-connections", this::openCoreConnections);
+		step("redis-connections", this::openRedisConnections);
+		step("templates", this::renderTemplates);
+		step("json", this::serialize);
+		step("jwt", this::sign);
+		ready = true;
+		final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		if (elapsed > timeoutMillis) {
+			log.warn("ウォームアップが期限（{}ms）を過ぎて完了しました。期限の時点で準備完了としています。 : {}ms {}",
+					timeoutMillis, elapsed, steps());
+		} else {
+			log.info("ウォームアップが完了しました。 : {}ms {}", elapsed, steps());
+		}
+	}
+
+	private void step(String name, Runnable task) {
+		final long start = System.nanoTime();
+		long elapsed;
+		try {
+			task.run();
+			elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		} catch (RuntimeException e) {
+			log.warn("ウォームアップに失敗しました。 : {}", name, e);
+			elapsed = -1;
+		}
+		synchronized (steps) {
+			steps.put(name, elapsed);
+		}
+	}
+
+	/**
+	 * <pre>
+	 * Core WebAPIへ並行してHEADリクエストを送信し、コネクションをプールに保持する。
+	 * 応答のステータスは問わない。
+	 * 同時に確立できるのはルート毎の最大接続数（spplogin.core-webapi.pool.max-per-route）までのため、件数はその値で制限する
+	 * （超えた分はプールの空き待ちとなるだけで接続は増えない）。
+	 * 応答がない場合はタイムアウトまで待って打ち切る。送信中のリクエストはデーモンスレッドで継続する。
+	 * </pre>
+	 */
+	private void openCoreConnections() {
+		final int count = Math.min(coreConnections, corePoolMaxPerRoute);
+		if (count < coreConnections) {
+			log.info("Core WebAPIへの事前接続数をルート毎の最大接続数に制限します。 : {} -> {}", coreConnections, count);
+		}
+		if (count <= 0) {
+			return;
+		}
+		final String url = UriComponentsBuilder.fromUriString(coreBaseUrl).port(corePort).path("/").toUriString();
+		final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("warm-up-core-");
+		threadFactory.setDaemon(true);
+		final ExecutorService executor = Executors.newFixedThreadPool(count, threadFactory);
+		try {
+			final List<CompletableFuture<Void>> requests = new ArrayList<>();
+			for (int i = 0; i < count; i++) {
+				requests.add(CompletableFuture.runAsync(() -> {
+					try {
+						restTemplate.headForHeaders(url);
+					} catch (RuntimeException e) {
+						log.debug("Core WebAPIへの接続確認でエラーが発生しました。", e);
+					}
+				}, executor));
+			}
+			CompletableFuture.allOf(requests.toArray(new CompletableFuture[requests.size()]))
+					.get(coreTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			throw new IllegalStateException("Core WebAPIへの接続がタイムアウトしました。 : " + coreTimeoutMillis + "ms");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Redisのコネクションを同時に取得・確認して返却し、プールに保持する。
+	 */
+	private void openRedisConnections() {
+		final List<RedisConnection> connections = new ArrayList<>();
+		try {
+			for (int i = 0; i < redisConnections; i++) {
+				final RedisConnection connection = redisConnectionFactory.getConnection();
+				connections.add(connection);
+				connection.ping();
+			}
+		} finally {
+			for (RedisConnection connection : connections) {
+				connection.close();
+			}
+		}
+	}
+
+	/**
+	 * 全てのテンプレートを処理する。
+	 * フォームのバインド等リクエストが必要な部分は処理できずに例外となるが、解析結果はその前にキャッシュされる。
+	 */
+	private void renderTemplates() {
+		final Resource[] resources;
+		try {
+			resources = new PathMatchingResourcePatternResolver().getResources("classpath*:" + TEMPLATE_PREFIX + "**/*" + TEMPLATE_SUFFIX);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		int rendered = 0;
+		for (Resource resource : resources) {
+			final String name = templateName(resource);
+			if (name == null) {
+				continue;
+			}
+			try {
+				templateEngine.process(name, new Context(Locale.JAPANESE));
+				rendered++;
+			} catch (RuntimeException e) {
+				log.debug("テンプレートは解析のみ行いました。 : {} {}", name, e.getMessage());
+			}
+		}
+		log.debug("テンプレートのウォームアップ : {}件中{}件を処理しました。", resources.length, rendered);
+	}
+
+	private static String templateName(Resource resource) {
+		try {
+			final String url = resource.getURL().toString();
+			final int index = url.lastIndexOf(TEMPLATE_PREFIX);
+			if (index < 0) {
+				return null;
+			}
+			return url.substring(index + TEMPLATE_PREFIX.length(), url.length() - TEMPLATE_SUFFIX.length());
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * 画面、Core WebAPI、Redisで使用する型のJSON変換を繰り返す。
+	 */
+	private void serialize() {
+		final Object[] samples = { new Guest(), new DidMemberDetails(), new SppMemberDetails(), openIdRequest() };
+		try {
+			for (int i = 0; i < iterations; i++) {
+				for (Object sample : samples) {
+					objectMapper.readValue(objectMapper.writeValueAsBytes(sample), sample.getClass());
+				}
+				new ObjectMapper().writeValueAsString(samples[samples.length - 1]);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * 認証認可要求と同じ形式のJWT署名を繰り返す（署名鍵の読み込みを含む）。
+	 */
+	private void sign() {
+		try {
+			final String json = objectMapper.writeValueAsString(openIdRequest());
+			for (int i = 0; i < iterations; i++) {
+				JwtSign.getInstance().sign(json);
+			}
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Map<String, String> openIdRequest() {
+		final Map<String, String> request = new HashMap<>();
+		request.put("member_name", "warmup");
+		request.put("password", "warmup");
+		request.put("client_id", "warmup");
+		request.put("nonce", "warmup");
+		return request;
+	}
+}
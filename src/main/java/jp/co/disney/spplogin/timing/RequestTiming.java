@@ -0,0 +1,107 @@
+package jp.co.disney.spplogin.timing;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * 1リクエストの処理時間の内訳（Core WebAPI呼び出し、セッションの読み込み・保存、連携キー操作、入力チェック、画面描画等）。
+ * リクエストスレッドのThreadLocalに保持し、ServerTimingFilterが開始・終了する。
+ * 開始していないスレッド（非同期処理、対象外のリクエスト）での記録は無視する。
+ * 同じ項目の記録は時間、回数を合算する。
+ * </pre>
+ */
+public final class RequestTiming {
+
+	private static final ThreadLocal<RequestTiming> CURRENT = new ThreadLocal<>();
+
+	private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final long startNanos = System.nanoTime();
+	private final Map<String, long[]> entries = new LinkedHashMap<>();
+
+	private RequestTiming() {}
+
+	/**
+	 * 現在のスレッドで記録を開始する。
+	 * @return 記録先
+	 */
+	public static RequestTiming start() {
+		final RequestTiming timing = new RequestTiming();
+		CURRENT.set(timing);
+		return timing;
+	}
+
+	/**
+	 * 現在のスレッドでの記録を終了する。
+	 */
+	public static void end() {
+		CURRENT.remove();
+	}
+
+	/**
+	 * @return 現在のスレッドで記録中の場合true
+	 */
+	public static boolean isActive() {
+		return CURRENT.get() != null;
+	}
+
+	/**
+	 * 現在のスレッドで記録中の場合、処理時間を記録する。
+	 * @param name 項目名（Server-Timingのメトリクス名として使用するため、英数字と「-」のみ）
+	 * @param nanos 処理時間（ナノ秒）
+	 */
+	public static void record(String name, long nanos) {
+		final RequestTiming timing = CURRENT.get();
+		if (timing != null) {
+			timing.add(name, nanos);
+		}
+	}
+
+	void add(String name, long nanos) {
+		long[] entry = entries.get(name);
+		if (entry == null) {
+			entry = new long[2];
+			entries.put(name, entry);
+		}
+		entry[0] += nanos;
+		entry[1]++;
+	}
+
+	/**
+	 * @return 開始からの経過時間（ナノ秒）
+	 */
+	public long elapsedNanos() {
+		return System.nanoTime() - startNanos;
+	}
+
+	/**
+	 * @return Server-Timingヘッダの値（例 : COR-901;dur=80.1, session-load;dur=1.2, total;dur=95.0）
+	 */
+	public String toServerTiming() {
+		final StringBuilder value = new StringBuilder(128);
+		for (Map.Entry<String, long[]> entry : entries.entrySet()) {
+			value.append(entry.getKey()).append(";dur=").append(millis(entry.getValue()[0])).append(", ");
+		}
+		return value.append("total;dur=").append(millis(elapsedNanos())).toString();
+	}
+
+	/**
+	 * @return ログ出力用の内訳（例 : total=95.0 COR-901=80.1/1 session-load=1.2/1）。値はミリ秒/回数
+	 */
+	public String toLogFields() {
+		final StringBuilder fields = new StringBuilder(128);
+		fields.append("total=").append(millis(elapsedNanos()));
+		for (Map.Entry<String, long[]> entry : entries.entrySet()) {
+			fields.append(' ').append(entry.getKey()).append('=').append(millis(entry.getValue()[0]))
+					.append('/').append(entry.getValue()[1]);
+		}
+		return fields.toString();
+	}
+
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.1f", nanos / NANOS_PER_MILLI);
+	}
+}
@@ -0,0 +1,70 @@
+package jp.co.disney.spplogin.timing;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.session.SessionRepository;
+
+import jp.co.disney.spplogin.service.SessionCoopService;
+
+/**
+ * <pre>
+ * セッションの読み込み・保存、連携キー操作の処理時間をRequestTimingに記録するようBeanをラップする。
+ *   SessionRepository  : getSession → session-load、save → session-save
+ *   SessionCoopService : 全てのpublicメソッド → coop-key
+ * 具象クラスとして注入されている箇所があるため（RedisOperationsSessionRepository等）、クラスのプロキシとする。
+ * 記録中でないスレッドからの呼び出しは計測せずにそのまま実行する。
+ * </pre>
+ */
+public class RequestTimingPostProcessor implements BeanPostProcessor {
+
+	@Override
+	public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+		return bean;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+		if (bean instanceof SessionRepository) {
+			return proxy(bean, invocation -> {
+				final String name = invocation.getMethod().getName();
+				if ("getSession".equals(name)) {
+					return "session-load";
+				}
+				return "save".equals(name) ? "session-save" : null;
+			});
+		}
+		if (bean instanceof SessionCoopService) {
+			return proxy(bean, invocation -> "coop-key");
+		}
+		return bean;
+	}
+
+	private static Object proxy(Object bean, EntryName entryName) {
+		final ProxyFactory factory = new ProxyFactory(bean);
+		factory.setProxyTargetClass(true);
+		factory.addAdvice((MethodInterceptor) invocation -> {
+			final String name = RequestTiming.isActive() ? entryName.of(invocation) : null;
+			if (name == null) {
+				return invocation.proceed();
+			}
+			final long start = System.nanoTime();
+			try {
+				return invocation.proceed();
+			} finally {
+				RequestTiming.record(name, System.nanoTime() - start);
+			}
+		});
+		return factory.getProxy();
+	}
+
+	/**
+	 * 呼び出されたメソッドに対応する項目名。計測しない場合null
+	 */
+	@FunctionalInterface
+	private interface EntryName {
+		String of(MethodInvocation invocation);
+	}
+}
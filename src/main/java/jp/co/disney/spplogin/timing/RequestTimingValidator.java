@@ -0,0 +1,41 @@
+package jp.co.disney.spplogin.timing;
+
+import org.springframework.validation.Errors;
+import org.springframework.validation.SmartValidator;
+
+/**
+ * 入力チェック（@Valid）の処理時間をRequestTimingに「validation」として記録する。
+ */
+public class RequestTimingValidator implements SmartValidator {
+
+	private final SmartValidator delegate;
+
+	public RequestTimingValidator(SmartValidator delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public boolean supports(Class<?> clazz) {
+		return delegate.supports(clazz);
+	}
+
+	@Override
+	public void validate(Object target, Errors errors) {
+		final long start = System.nanoTime();
+		try {
+			delegate.validate(target, errors);
+		} finally {
+			RequestTiming.record("validation", System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public void validate(Object target, Errors errors, Object... validationHints) {
+		final long start = System.nanoTime();
+		try {
+			delegate.validate(target, errors, validationHints);
+		} finally {
+			RequestTiming.record("validation", System.nanoTime() - start);
+		}
+	}
+}
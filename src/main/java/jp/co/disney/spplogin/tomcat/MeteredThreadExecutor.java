@@ -0,0 +1,55 @@
+package jp.co.disney.spplogin.tomcat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.catalina.core.StandardThreadExecutor;
+
+import jp.co.disney.spplogin.metrics.LatencyHistograms;
+import jp.co.disney.spplogin.pool.PoolSaturationMetrics;
+
+/**
+ * <pre>
+ * 処理待ちキューでの待ち時間（投入からスレッドで実行開始まで）をLatencyHistogramsに記録する共有スレッドプール。
+ * 呼び出し先は「pool-wait」、操作は「tomcat-[プール名]」、結果は「acquired」として記録する。
+ * </pre>
+ */
+public class MeteredThreadExecutor extends StandardThreadExecutor {
+
+	private final LatencyHistograms latencyHistograms;
+	private volatile LatencyHistograms.Timer waitTimer;
+
+	public MeteredThreadExecutor(LatencyHistograms latencyHistograms) {
+		this.latencyHistograms = latencyHistograms;
+	}
+
+	@Override
+	public void setName(String name) {
+		super.setName(name);
+		this.waitTimer = latencyHistograms.timer(PoolSaturationMetrics.WAIT_DEPENDENCY, "tomcat-" + name, "acquired");
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		super.execute(new TimedTask(command));
+	}
+
+	@Override
+	public void execute(Runnable command, long timeout, TimeUnit unit) {
+		super.execute(new TimedTask(command), timeout, unit);
+	}
+
+	private class TimedTask implements Runnable {
+		private final Runnable task;
+		private final long queued = System.nanoTime();
+
+		TimedTask(Runnable task) {
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			waitTimer.record(System.nanoTime() - queued);
+			task.run();
+		}
+	}
+}
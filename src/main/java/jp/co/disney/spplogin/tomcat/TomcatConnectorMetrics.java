@@ -0,0 +1,68 @@
+package jp.co.disney.spplogin.tomcat;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * 組み込みTomcatのコネクタとスレッドプールの状態。TomcatがJMXに登録するMBeanから取得する。
+ *   spplogin.tomcat.<コネクタ名>.busy-threads    : 処理中のスレッド数（共有スレッドプール使用時はプール全体の値）
+ *   spplogin.tomcat.<コネクタ名>.connections     : 接続数（処理待ち、Keep-Alive待ちを含む）
+ *   spplogin.tomcat.<コネクタ名>.max-connections : 最大接続数
+ *   spplogin.tomcat.executor.<プール名>.*         : 共有スレッドプールのスレッド数、処理中の数、処理待ちキューの長さ
+ * </pre>
+ */
+@Slf4j
+@Component
+public class TomcatConnectorMetrics implements PublicMetrics {
+
+	private static final String DOMAIN = "Tomcat";
+
+	private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		final List<Metric<?>> metrics = new ArrayList<>();
+		try {
+			for (ObjectName name : server.queryNames(new ObjectName(DOMAIN + ":type=ThreadPool,*"), null)) {
+				final String prefix = "spplogin.tomcat." + ObjectName.unquote(name.getKeyProperty("name"));
+				add(metrics, prefix + ".busy-threads", name, "currentThreadsBusy");
+				add(metrics, prefix + ".connections", name, "connectionCount");
+				add(metrics, prefix + ".max-connections", name, "maxConnections");
+			}
+			for (ObjectName name : server.queryNames(new ObjectName(DOMAIN + ":type=Executor,*"), null)) {
+				final String prefix = "spplogin.tomcat.executor." + name.getKeyProperty("name");
+				add(metrics, prefix + ".pool-size", name, "poolSize");
+				add(metrics, prefix + ".active", name, "activeCount");
+				add(metrics, prefix + ".max-threads", name, "maxThreads");
+				add(metrics, prefix + ".queue-size", name, "queueSize");
+			}
+		} catch (JMException e) {
+			log.debug("Tomcatの状態を取得できませんでした。", e);
+		}
+		return metrics;
+	}
+
+	private void add(List<Metric<?>> metrics, String metricName, ObjectName name, String attribute) {
+		try {
+			final Object value = server.getAttribute(name, attribute);
+			if (value instanceof Number) {
+				metrics.add(new Metric<>(metricName, (Number) value));
+			}
+		} catch (JMException e) {
+			log.debug("Tomcatの状態を取得できませんでした。 : {} {}", name, attribute);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package jp.co.disney.spplogin.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <pre>
+ * 文字列のBloomフィルタ。
+ * mightContainがfalseを返した要素は確実に追加されていない。trueの場合は誤判定の可能性がある。
+ * ビット列はAtomicLongArrayで保持するため、追加と判定は複数スレッドから同時に行える。
+ * ハッシュ関数は64ビットハッシュ2つの線形結合（ダブルハッシング）でk個を生成する。
+ * </pre>
+ */
+public class BloomFilter {
+
+	private final AtomicLongArray bits;
+	private final long bitSize;
+	private final int hashCount;
+
+	/**
+	 * @param expectedInsertions 想定要素数
+	 * @param fpp 想定要素数を追加した時点での誤判定率
+	 */
+	public BloomFilter(long expectedInsertions, double fpp) {
+		if (expectedInsertions <= 0 || fpp <= 0 || fpp >= 1) {
+			throw new IllegalArgumentException("expectedInsertions=" + expectedInsertions + " fpp=" + fpp);
+		}
+		final long m = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+		final int words = (int) Math.min(Integer.MAX_VALUE, (m + 63) >>> 6);
+		this.bits = new AtomicLongArray(words);
+		this.bitSize = (long) words << 6;
+		this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+	}
+
+	/**
+	 * 要素を追加する。
+	 * @param value 要素
+	 */
+	public void put(String value) {
+		final long hash = hash64(value);
+		final long h1 = fmix64(hash);
+		final long h2 = fmix64(hash ^ 0x9E3779B97F4A7C15L) | 1;
+		for (int i = 0; i < hashCount; i++) {
+			final long index = ((h1 + i * h2) & Long.MAX_VALUE) % bitSize;
+			setBit(index);
+		}
+	}
+
+	/**
+	 * 要素が追加されている可能性があるかを判定する。
+	 * @param value 要素
+	 * @return 追加されていない場合false
+	 */
+	public boolean mightContain(String value) {
+		final long hash = hash64(value);
+		final long h1 = fmix64(hash);
+		final long h2 = fmix64(hash ^ 0x9E3779B97F4A7C15L) | 1;
+		for (int i = 0; i < hashCount; i++) {
+			final long index = ((h1 + i * h2) & Long.MAX_VALUE) % bitSize;
+			if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 現在のビットの充填率から誤判定率を推定する。
+	 * @return 推定誤判定率
+	 */
+	public double expectedFpp() {
+		long set = 0;
+		for (int i = 0; i < bits.length(); i++) {
+			set += Long.bitCount(bits.get(i));
+		}
+		return Math.pow((double) set / bitSize, hashCount);
+	}
+
+	/**
+	 * @return ビット数
+	 */
+	public long bitSize() {
+		return bitSize;
+	}
+
+	/**
+	 * @return ハッシュ関数の数
+	 */
+	public int hashCount() {
+		return hashCount;
+	}
+
+	private void setBit(long index) {
+		final int word = (int) (index >>> 6);
+		final long mask = 1L << index;
+		long current;
+		do {
+			current = bits.get(word);
+			if ((current & mask) != 0) {
+				return;
+			}
+		} while (!bits.compareAndSet(word, current, current | mask));
+	}
+
+	/** FNV-1a (64ビット) */
+	private static long hash64(String value) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			h ^= value.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+	/** MurmurHash3のfinalizer */
+	private static long fmix64(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+}
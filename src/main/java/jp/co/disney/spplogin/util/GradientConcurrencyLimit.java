@@ -0,0 +1,176 @@
+package jp.co.disney.spplogin.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <pre>
+ * 応答時間の勾配により上限を調整する同時実行数の制限。
+ *
+ * 一定時間（ウィンドウ）毎に平均応答時間（短期）を求め、その指数移動平均（長期）と比較する。
+ *   勾配 = 長期 × 許容率 / 短期（0.5〜1.0に制限）
+ *   新しい上限 = 現在の上限 × 勾配 + √現在の上限
+ * 応答時間が長期の傾向の許容率倍より悪化すると勾配が1を下回って上限が下がり、安定していれば√上限ずつ増える。
+ * 短期が長期の許容率倍を超えている間は長期を更新しない。
+ * 遅延が続いても長期が短期に追い付かず、遅延した状態を基準として上限が再び増えることはない。
+ * 上限の半分も使用していないウィンドウでは、余裕の有無が判断できないため上限を増やさない。
+ * 長期が短期の2倍を超える（応答時間が大きく改善した）場合は長期を短期に近づけ、上限の回復を早める。
+ *
+ * 取得・解放はCASのみで行い、上限の再計算はウィンドウ毎に1スレッドだけが行う。
+ * </pre>
+ */
+public class GradientConcurrencyLimit {
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final double smoothing;
+	private final long windowNanos;
+	private final int minWindowSamples;
+	private final double longRttFactor;
+	private final double rttTolerance;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final LongAdder rttSum = new LongAdder();
+	private final LongAdder rttCount = new LongAdder();
+	private final AtomicInteger maxInFlight = new AtomicInteger();
+	private final ReentrantLock updateLock = new ReentrantLock();
+
+	private volatile int limit;
+	private volatile long windowEnd;
+	private volatile double shortRttNanos;
+	private volatile double longRttNanos;
+
+	/**
+	 * @param initialLimit 初期の上限
+	 * @param minLimit 上限の最小値
+	 * @param maxLimit 上限の最大値
+	 * @param smoothing 上限の変化の平滑化係数（0〜1、1で平滑化なし）
+	 * @param windowMillis 応答時間を集計する間隔
+	 * @param minWindowSamples 上限を再計算する最小のサンプル数
+	 * @param longWindows 長期の応答時間の指数移動平均に用いるウィンドウ数
+	 * @param rttTolerance 長期に対して許容する短期の応答時間の倍率（1以上）
+	 */
+	public GradientConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double smoothing,
+			long windowMillis, int minWindowSamples, int longWindows, double rttTolerance) {
+		if (minLimit <= 0 || minLimit > maxLimit || smoothing <= 0 || smoothing > 1 || longWindows <= 0
+				|| rttTolerance < 1) {
+			throw new IllegalArgumentException("同時実行数制限の設定が正しくありません。");
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.smoothing = smoothing;
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+		this.minWindowSamples = minWindowSamples;
+		this.longRttFactor = 2.0 / (longWindows + 1);
+		this.rttTolerance = rttTolerance;
+		this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+		this.windowEnd = System.nanoTime() + windowNanos;
+	}
+
+	/**
+	 * 実行枠を取得する。
+	 * @return 取得できた場合true。trueの場合は処理後に必ずreleaseを呼び出すこと
+	 */
+	public boolean tryAcquire() {
+		while (true) {
+			final int current = inFlight.get();
+			if (current >= limit) {
+				return false;
+			}
+			if (inFlight.compareAndSet(current, current + 1)) {
+				final int next = current + 1;
+				int max;
+				while (next > (max = maxInFlight.get()) && !maxInFlight.compareAndSet(max, next)) {
+					// 最大同時実行数を更新するまで繰り返す
+				}
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * 実行枠を解放し、応答時間を記録する。
+	 * @param rttNanos 処理時間（ナノ秒）
+	 * @param nowNanos 現在時刻（System.nanoTime）
+	 */
+	public void release(long rttNanos, long nowNanos) {
+		inFlight.decrementAndGet();
+		rttSum.add(rttNanos);
+		rttCount.increment();
+		if (nowNanos - windowEnd >= 0 && updateLock.tryLock()) {
+			try {
+				if (nowNanos - windowEnd >= 0) {
+					update(nowNanos);
+				}
+			} finally {
+				updateLock.unlock();
+			}
+		}
+	}
+
+	private void update(long nowNanos) {
+		final long count = rttCount.sum();
+		if (count < minWindowSamples) {
+			return;
+		}
+		final long sum = rttSum.sumThenReset();
+		rttCount.add(-count);
+		final int windowMaxInFlight = maxInFlight.getAndSet(inFlight.get());
+		windowEnd = nowNanos + windowNanos;
+
+		final double shortRtt = (double) sum / count;
+		double longRtt;
+		if (longRttNanos == 0) {
+			longRtt = shortRtt;
+		} else if (shortRtt > longRttNanos * rttTolerance) {
+			longRtt = longRttNanos;
+		} else {
+			longRtt = longRttNanos * (1 - longRttFactor) + shortRtt * longRttFactor;
+		}
+		if (longRtt / shortRtt > 2) {
+			longRtt = longRtt * 0.95;
+		}
+		shortRttNanos = shortRtt;
+		longRttNanos = longRtt;
+
+		final int current = limit;
+		final double tolerated = longRtt * rttTolerance;
+		if (windowMaxInFlight < current / 2 && tolerated >= shortRtt) {
+			return;
+		}
+		final double gradient = Math.max(0.5, Math.min(1.0, tolerated / shortRtt));
+		final double target = current * gradient + Math.sqrt(current);
+		final double next = current * (1 - smoothing) + target * smoothing;
+		limit = (int) Math.max(minLimit, Math.min(maxLimit, Math.round(next)));
+	}
+
+	/**
+	 * @return 現在の上限
+	 */
+	public int limit() {
+		return limit;
+	}
+
+	/**
+	 * @return 実行中の数
+	 */
+	public int inFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * @return 直近のウィンドウの平均応答時間（ミリ秒）
+	 */
+	public double shortRttMillis() {
+		return shortRttNanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * @return 長期の応答時間（ミリ秒）
+	 */
+	public double longRttMillis() {
+		return longRttNanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
@@ -0,0 +1,157 @@
+package jp.co.disney.spplogin.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <pre>
+ * 優先度付きの同時実行数制限。
+ * 全体の実行枠のうち一部を上位の優先度のために予約し、下位の優先度は予約分を除いた範囲でのみ実行できる。
+ *   HIGH   : 全ての実行枠を使用できる
+ *   NORMAL : 全体 - HIGHの予約分
+ *   LOW    : 全体 - HIGHの予約分 - NORMALの予約分
+ * 空きがない場合は優先度毎の待ち行列で待機し、実行枠が空くと上位の優先度の待機者から順に実行する。
+ * 待機者数が上限に達している場合、または待機がタイムアウトした場合は実行しない。
+ * </pre>
+ */
+public class PriorityGate {
+
+	/** 優先度（宣言順に高い） */
+	public enum Priority {
+		HIGH, NORMAL, LOW
+	}
+
+	private static final Priority[] PRIORITIES = Priority.values();
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition[] available = new Condition[PRIORITIES.length];
+	private final int[] limits = new int[PRIORITIES.length];
+	private final int[] maxWaiting;
+	private final int[] waiting = new int[PRIORITIES.length];
+	private int inFlight;
+
+	/**
+	 * @param permits 全体の実行枠
+	 * @param reservedHigh HIGHのみが使用できる実行枠
+	 * @param reservedNormal HIGH、NORMALのみが使用できる実行枠（reservedHighを除く）
+	 * @param maxWaiting 優先度毎の最大待機者数（HIGH, NORMAL, LOWの順）
+	 */
+	public PriorityGate(int permits, int reservedHigh, int reservedNormal, int[] maxWaiting) {
+		if (permits - reservedHigh - reservedNormal <= 0 || reservedHigh < 0 || reservedNormal < 0
+				|| maxWaiting.length != PRIORITIES.length) {
+			throw new IllegalArgumentException("優先度付き同時実行数制限の設定が正しくありません。");
+		}
+		limits[Priority.HIGH.ordinal()] = permits;
+		limits[Priority.NORMAL.ordinal()] = permits - reservedHigh;
+		limits[Priority.LOW.ordinal()] = permits - reservedHigh - reservedNormal;
+		this.maxWaiting = maxWaiting.clone();
+		for (int i = 0; i < available.length; i++) {
+			available[i] = lock.newCondition();
+		}
+	}
+
+	/**
+	 * 実行枠を取得する。空きがない場合はタイムアウトまで待機する。
+	 * @param priority 優先度
+	 * @param timeout 最大待機時間
+	 * @param unit 時間の単位
+	 * @return 取得できた場合true。trueの場合は処理後に必ずreleaseを呼び出すこと
+	 * @throws InterruptedException
+	 */
+	public boolean tryAcquire(Priority priority, long timeout, TimeUnit unit) throws InterruptedException {
+		final int p = priority.ordinal();
+		lock.lock();
+		try {
+			// 同じ優先度の待機者がいる場合は追い越さない
+			if (waiting[p] == 0 && canRun(p)) {
+				inFlight++;
+				return true;
+			}
+			if (waiting[p] >= maxWaiting[p]) {
+				return false;
+			}
+			long nanos = unit.toNanos(timeout);
+			waiting[p]++;
+			try {
+				while (!canRun(p)) {
+					if (nanos <= 0) {
+						return false;
+					}
+					nanos = available[p].awaitNanos(nanos);
+				}
+				inFlight++;
+				return true;
+			} finally {
+				waiting[p]--;
+				// 通知を受けたまま実行しなかった場合に備え、次の待機者に通知する
+				signalNext();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 実行枠を解放する。
+	 */
+	public void release() {
+		lock.lock();
+		try {
+			inFlight--;
+			signalNext();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return 実行中の数
+	 */
+	public int inFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param priority 優先度
+	 * @return 待機中の数
+	 */
+	public int waiting(Priority priority) {
+		lock.lock();
+		try {
+			return waiting[priority.ordinal()];
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** 実行枠に空きがあり、上位の優先度の待機者がいない場合に実行できる */
+	private boolean canRun(int p) {
+		if (inFlight >= limits[p]) {
+			return false;
+		}
+		for (int higher = 0; higher < p; higher++) {
+			if (waiting[higher] > 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void signalNext() {
+		for (int p = 0; p < PRIORITIES.length; p++) {
+			if (waiting[p] > 0) {
+				if (inFlight < limits[p]) {
+					available[p].signal();
+				}
+				// 上位の待機者がいる間は下位に通知しない
+				return;
+			}
+		}
+	}
+}
@@ -1,14 +1,11 @@
 package jp.co.disney.spplogin.util;
 
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-
 /**
- * java.security.SecureRandomを使用するユーティリティクラス
+ * セキュアランダムな文字列を生成するユーティリティクラス（SecureTokensを使用する）
  *
  */
 public class SecureRandomUtil {
-	private static int TOKEN_LENGTH = 16;
+	private static final int TOKEN_LENGTH = 16;
 	
 	private SecureRandomUtil(){}
 	
@@ -17,22 +14,15 @@ public class SecureRandomUtil {
 	 * @return ランダムな16進文字列
 	 */
 	public static String genToken() {
-		byte token[] = new byte[TOKEN_LENGTH];
-		StringBuffer buf = new StringBuffer();
-		SecureRandom random = null;
-		
-		try {
-			random = SecureRandom.getInstance("SHA1PRNG");
-			random.nextBytes(token);
-			for(int b : token) {
-				buf.append(Character.forDigit(b >> 4 & 0xF, 16));
-				buf.append(Character.forDigit(b & 0xF, 16));
-			}
-		} catch (NoSuchAlgorithmException e) {
-			throw new RuntimeException(e);
-		}
-	 
-	    return buf.toString();
-
+		return genToken(TOKEN_LENGTH);
+	}
+	
+	/**
+	 * セキュアランダムな16進文字列を生成する。
+	 * @param bytes ランダムなバイト数（文字列長はその2倍）
+	 * @return ランダムな16進文字列
+	 */
+	public static String genToken(int bytes) {
+		return SecureTokens.hex(bytes);
 	}
 }
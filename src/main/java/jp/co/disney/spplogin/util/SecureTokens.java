@@ -0,0 +1,144 @@
+package jp.co.disney.spplogin.util;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <pre>
+ * セキュアランダムなトークンを生成するユーティリティクラス。
+ *
+ * 乱数生成器（SHA1PRNG）をCPU数に応じた複数のストライプに分け、スレッドIDで選択するため、
+ * 全スレッドで1つの乱数生成器を共有するUUID.randomUUID()のような競合が起きない。
+ * 各ストライプは一定のバイト数を生成するか一定時間が経過すると、OSの乱数源から得たシードを追加する。
+ * 生成したバイト列は中間文字列を作らずに16進またはbase64urlの文字配列へ直接変換する。
+ * </pre>
+ */
+public final class SecureTokens {
+
+	private static final String ALGORITHM = "SHA1PRNG";
+	private static final int SEED_BYTES = 32;
+	/** 再シードまでに生成するバイト数 */
+	private static final long RESEED_BYTES = 1L << 20;
+	/** 再シードまでの時間 */
+	private static final long RESEED_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private static final char[] BASE64URL =
+			"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+	/** シードの取得元（OSの乱数源。再シード時のみ使用する） */
+	private static final SecureRandom SEED_SOURCE = new SecureRandom();
+
+	private static final Stripe[] STRIPES = createStripes();
+	private static final int MASK = STRIPES.length - 1;
+
+	private SecureTokens() {}
+
+	/**
+	 * 16進（小文字）のトークンを生成する。
+	 * @param bytes ランダムなバイト数（トークン長はその2倍）
+	 * @return トークン
+	 */
+	public static String hex(int bytes) {
+		final byte[] random = nextBytes(bytes);
+		final char[] out = new char[bytes * 2];
+		for (int i = 0, j = 0; i < bytes; i++) {
+			out[j++] = HEX[(random[i] >> 4) & 0xF];
+			out[j++] = HEX[random[i] & 0xF];
+		}
+		return new String(out);
+	}
+
+	/**
+	 * base64url（パディングなし）のトークンを生成する。
+	 * @param bytes ランダムなバイト数（トークン長は ceil(bytes * 4 / 3)）
+	 * @return トークン
+	 */
+	public static String base64Url(int bytes) {
+		final byte[] random = nextBytes(bytes);
+		final char[] out = new char[(bytes * 4 + 2) / 3];
+		int i = 0;
+		int j = 0;
+		for (; i + 2 < bytes; i += 3) {
+			final int v = (random[i] & 0xFF) << 16 | (random[i + 1] & 0xFF) << 8 | (random[i + 2] & 0xFF);
+			out[j++] = BASE64URL[v >>> 18];
+			out[j++] = BASE64URL[(v >>> 12) & 0x3F];
+			out[j++] = BASE64URL[(v >>> 6) & 0x3F];
+			out[j++] = BASE64URL[v & 0x3F];
+		}
+		if (i < bytes) {
+			final int v = (random[i] & 0xFF) << 16 | (i + 1 < bytes ? (random[i + 1] & 0xFF) << 8 : 0);
+			out[j++] = BASE64URL[v >>> 18];
+			out[j++] = BASE64URL[(v >>> 12) & 0x3F];
+			if (i + 1 < bytes) {
+				out[j++] = BASE64URL[(v >>> 6) & 0x3F];
+			}
+		}
+		return new String(out);
+	}
+
+	/**
+	 * ランダムなバイト列を生成する。
+	 * @param bytes バイト数
+	 * @return バイト列
+	 */
+	public static byte[] nextBytes(int bytes) {
+		if (bytes <= 0) {
+			throw new IllegalArgumentException("bytes=" + bytes);
+		}
+		final byte[] out = new byte[bytes];
+		STRIPES[(int) Thread.currentThread().getId() & MASK].nextBytes(out);
+		return out;
+	}
+
+	private static Stripe[] createStripes() {
+		final int processors = Runtime.getRuntime().availableProcessors();
+		int size = 1;
+		while (size < processors * 2) {
+			size <<= 1;
+		}
+		final Stripe[] stripes = new Stripe[size];
+		for (int i = 0; i < size; i++) {
+			stripes[i] = new Stripe();
+		}
+		return stripes;
+	}
+
+	private static byte[] seed() {
+		final byte[] seed = new byte[SEED_BYTES];
+		SEED_SOURCE.nextBytes(seed);
+		return seed;
+	}
+
+	/**
+	 * 乱数生成器のストライプ。
+	 */
+	private static class Stripe {
+		private final SecureRandom random;
+		private final AtomicLong generated = new AtomicLong();
+		private volatile long seededAt = System.nanoTime();
+
+		Stripe() {
+			try {
+				random = SecureRandom.getInstance(ALGORITHM);
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+			// 最初の生成前に設定したシードのみを使用する
+			random.setSeed(seed());
+		}
+
+		void nextBytes(byte[] out) {
+			final long now = System.nanoTime();
+			if (generated.addAndGet(out.length) > RESEED_BYTES || now - seededAt > RESEED_NANOS) {
+				generated.set(0);
+				seededAt = now;
+				// SHA1PRNGは既存の状態に追加する
+				random.setSeed(seed());
+			}
+			random.nextBytes(out);
+		}
+	}
+}
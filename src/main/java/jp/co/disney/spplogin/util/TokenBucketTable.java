@@ -0,0 +1,162 @@
+package jp.co.disney.spplogin.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <pre>
+ * long値をキーとするトークンバケットの表。
+ * キーと状態をそれぞれAtomicLongArrayに保持するオープンアドレス法（線形探索）の表で、
+ * 取得・追加ともにロックやオブジェクト生成（ボクシング）を伴わない。
+ *
+ * 状態は1つのlong値に「最終更新時刻（表作成時からのミリ秒、上位40ビット）」と
+ * 「残りトークン数（1/1000単位、下位24ビット）」を詰めて保持し、CASで更新する。
+ * トークンが満杯まで回復したバケットは新規のバケットと区別できないため、
+ * 探索範囲に空きがない場合はそのようなスロットを別のキーに再利用する。
+ * 再利用もできない場合は制限せずに許可し、件数をoverflowsに計上する。
+ * </pre>
+ */
+public class TokenBucketTable {
+
+	private static final long EMPTY = 0L;
+	private static final int MILLI = 1000;
+	private static final int TOKEN_BITS = 24;
+	private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+	private static final int MAX_PROBES = 16;
+
+	private final AtomicLongArray keys;
+	private final AtomicLongArray states;
+	private final int mask;
+	private final long baseMillis;
+	private final long capacityMilli;
+	/** 1ミリ秒あたりの回復量（1/1000トークン単位）。1秒あたりのトークン数と同じ値となる */
+	private final double refillPerMilli;
+	private final LongAdder overflows = new LongAdder();
+
+	/**
+	 * @param slots スロット数（2のべき乗に切り上げる）
+	 * @param burst バケットの容量（トークン数）
+	 * @param ratePerSecond 1秒あたりの回復トークン数
+	 */
+	public TokenBucketTable(int slots, int burst, double ratePerSecond) {
+		if (burst <= 0 || (long) burst * MILLI > TOKEN_MASK || ratePerSecond <= 0) {
+			throw new IllegalArgumentException("トークンバケットの設定が正しくありません。");
+		}
+		final int size = Integer.highestOneBit(Math.max(slots, MAX_PROBES) - 1) << 1;
+		this.keys = new AtomicLongArray(size);
+		this.states = new AtomicLongArray(size);
+		this.mask = size - 1;
+		this.capacityMilli = (long) burst * MILLI;
+		this.refillPerMilli = ratePerSecond;
+		// 未使用スロットの状態（0）が常に満杯と判定されるよう、基準時刻を満杯までの回復時間より前にする
+		this.baseMillis = System.currentTimeMillis() - (long) Math.ceil(capacityMilli / refillPerMilli) - TimeUnit.DAYS.toMillis(1);
+	}
+
+	/**
+	 * キーのバケットからトークンを1つ取得する。
+	 * @param key キー
+	 * @param nowMillis 現在日時（エポックミリ秒）
+	 * @return 取得できた（許可する）場合true
+	 */
+	public boolean tryAcquire(long key, long nowMillis) {
+		final long k = key == EMPTY ? 1L : key;
+		final long now = nowMillis - baseMillis;
+		final int start = (int) fmix64(k) & mask;
+		int reusable = -1;
+		for (int probe = 0; probe < MAX_PROBES; probe++) {
+			final int i = (start + probe) & mask;
+			final long current = keys.get(i);
+			if (current == k) {
+				return acquire(i, now);
+			}
+			if (current == EMPTY) {
+				if (keys.compareAndSet(i, EMPTY, k) || keys.get(i) == k) {
+					return acquire(i, now);
+				}
+				continue;
+			}
+			if (reusable < 0 && available(states.get(i), now) >= capacityMilli) {
+				reusable = i;
+			}
+		}
+		if (reusable >= 0) {
+			final long current = keys.get(reusable);
+			if (available(states.get(reusable), now) >= capacityMilli && keys.compareAndSet(reusable, current, k)) {
+				return acquire(reusable, now);
+			}
+		}
+		overflows.increment();
+		return true;
+	}
+
+	/**
+	 * @return 空きスロットがなく制限せずに許可した件数
+	 */
+	public long overflows() {
+		return overflows.sum();
+	}
+
+	/**
+	 * @return 使用中のスロット数（走査のため監視用途のみ）
+	 */
+	public int used() {
+		int used = 0;
+		for (int i = 0; i <= mask; i++) {
+			if (keys.get(i) != EMPTY) {
+				used++;
+			}
+		}
+		return used;
+	}
+
+	/**
+	 * @return スロット数
+	 */
+	public int size() {
+		return mask + 1;
+	}
+
+	private boolean acquire(int i, long now) {
+		while (true) {
+			final long state = states.get(i);
+			final long tokens = available(state, now);
+			if (tokens < MILLI) {
+				return false;
+			}
+			if (states.compareAndSet(i, state, ((Math.max(now, state >>> TOKEN_BITS)) << TOKEN_BITS) | (tokens - MILLI))) {
+				return true;
+			}
+		}
+	}
+
+	private long available(long state, long now) {
+		final long elapsed = Math.max(0L, now - (state >>> TOKEN_BITS));
+		final double refilled = (state & TOKEN_MASK) + elapsed * refillPerMilli;
+		return refilled >= capacityMilli ? capacityMilli : (long) refilled;
+	}
+
+	/** MurmurHash3のfinalizer */
+	private static long fmix64(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+
+	/**
+	 * 文字列からキーを生成する（FNV-1a 64ビット）。
+	 * @param value 文字列
+	 * @return キー
+	 */
+	public static long key(String value) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			h ^= value.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+}
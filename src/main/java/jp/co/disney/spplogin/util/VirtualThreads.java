@@ -0,0 +1,48 @@
+package jp.co.disney.spplogin.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * 仮想スレッド（JDK 21以降）の生成。
+ * コンパイル対象のJavaバージョンでは仮想スレッドのAPIを直接参照できないため、リフレクションで呼び出す。
+ * </pre>
+ */
+@Slf4j
+public final class VirtualThreads {
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * タスク毎に仮想スレッドを生成するExecutorServiceを作成する。
+	 * @param namePrefix スレッド名の接頭辞（連番を付与する）
+	 * @return ExecutorService。実行中のJDKが仮想スレッドに対応していない場合null
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+		try {
+			final Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+			final ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+			final Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) newExecutor.invoke(null, factory);
+		} catch (NoSuchMethodException | ClassNotFoundException e) {
+			log.debug("実行中のJDKは仮想スレッドに対応していません。 : {}", System.getProperty("java.version"));
+			return null;
+		} catch (InvocationTargetException e) {
+			// JDK 19、20でプレビュー機能が無効の場合
+			log.debug("仮想スレッドを使用できません。", e.getCause());
+			return null;
+		} catch (ReflectiveOperationException e) {
+			log.debug("仮想スレッドを使用できません。", e);
+			return null;
+		}
+	}
+}
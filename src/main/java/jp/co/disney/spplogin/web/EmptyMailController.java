@@ -1,19 +1,21 @@
 package jp.co.disney.spplogin.web;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
 
 import javax.servlet.http.HttpSession;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -23,7 +25,10 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import jp.co.disney.spplogin.helper.RandomHelper;
+import jp.co.disney.spplogin.redis.RedisReadRouter;
 import jp.co.disney.spplogin.service.MailService;
+import jp.co.disney.spplogin.service.SessionCoopService;
+import jp.co.disney.spplogin.web.form.AutoReplyEvent;
 import jp.co.disney.spplogin.web.model.Guest;
 import lombok.extern.slf4j.Slf4j;
 
@@ -46,17 +51,17 @@ public class EmptyMailController {
 	@Value("${spplogin.emptymail.session-coop-key.prefix}")
 	private String coopKeyPrefix;
 	
-	@Value("${spplogin.emptymail.session-coop-key.expire}")
-	private int coopKeyExpire;
-
-	@Value("${spplogin.emptymail.session-coop-key.expire-timeunit}")
-	private String coopKeyExpireTimeUnit;
+	@Value("${spplogin.emptymail.auto-reply.batch.max-size}")
+	private int batchMaxSize;
 	
 	@Autowired
 	private Guest guest;
 	
 	@Autowired
-	private RedisTemplate<String, Guest> redisTemplate;
+	private SessionCoopService sessionCoopService;
+	
+	@Autowired
+	private RedisReadRouter redisReadRouter;
 	
 	@Autowired
 	private MailService mailService;
@@ -68,26 +73,31 @@ public class EmptyMailController {
 	 * 空メール送信先アドレスを返す
 	 */
 	@RequestMapping(value = "genToAddress", method = RequestMethod.GET)
-	public ResponseEntity<Map<String, String>> sendEmptMail(HttpSession session) {
+	public CompletableFuture<ResponseEntity<Map<String, String>>> sendEmptMail(HttpSession session) {
 
-		String coopKey;
-		if (session.getAttribute(SESSION_COOP_KEY) == null) {
+		String coopKey = (String) session.getAttribute(SESSION_COOP_KEY);
+		CompletableFuture<Void> saved;
+		// 連携キーの有効期限がセッションより先に切れた場合は再作成する
+		// レプリカ未使用時は呼び出し毎にプライマリへ問い合わせることになるため確認しない
+		if (coopKey == null || (redisReadRouter.hasReplica() && !sessionCoopService.exists(coopKey))) {
 			coopKey = coopKeyPrefix + randomHelper.randomID();
 			session.setAttribute(SESSION_COOP_KEY, coopKey);
-			redisTemplate.opsForValue().set(coopKey, guest.copy());
+			saved = sessionCoopService.saveAsync(coopKey, guest.copy());
 		} else {
-			coopKey = (String) session.getAttribute(SESSION_COOP_KEY);
+			saved = CompletableFuture.completedFuture(null);
 		}
 
-		Map<String, String> res = new HashMap<>();
 		final String toAddress = accountPrefix + accountSeparator + coopKey + "@" + emptyMailDomain;
 		log.debug("会員登録空メール送信先アドレス : {}", toAddress);
-		res.put("to_address", toAddress);
-		return new ResponseEntity<Map<String, String>>(res, HttpStatus.OK);
+		return saved.thenApply(v -> {
+			Map<String, String> res = new HashMap<>();
+			res.put("to_address", toAddress);
+			return new ResponseEntity<Map<String, String>>(res, HttpStatus.OK);
+		});
 	}
 	
 	@RequestMapping(value = "AutoReply", method = RequestMethod.POST, produces = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
-	public ResponseEntity<String> autoReply(
+	public CompletableFuture<ResponseEntity<String>> autoReply(
 			@RequestParam(value = "from", required = true) final String emailAddress,
 			@RequestParam(required = true) final String to) {
 		log.info("空メールの自動応答メール送信処理を開始します。");
@@ -95,42 +105,127 @@ public class EmptyMailController {
 		log.debug("From : {}", emailAddress);
 		log.debug("To : {}", to);
 		
-		String sessionCoopId = null;
+		String sessionCoopId = extractSessionCoopId(to);
 		
-		final String toAccount = to.split("@")[0];
-		
-		final String[] accountInfo = toAccount.split(accountSeparator);
-		if(accountInfo.length == 2) {
-			sessionCoopId = accountInfo[1];
-		}
-		
-		final Map<String, String> res = new HashMap<>();
-		HttpStatus status = HttpStatus.OK;
 		if(!StringUtils.isEmpty(sessionCoopId) && !StringUtils.isEmpty(emailAddress)) {
 			
 			log.debug("sessionCooopId : {}", sessionCoopId);
 			
-			final Guest guest = redisTemplate.opsForValue().get(sessionCoopId);
-			if(guest == null) {
-				log.warn("セッション復元用IDによるRedisからの情報取得に失敗しました。 : {}", sessionCoopId);
-				res.put("status", "NG");
-				res.put("message", "invalid session_coop_id.");
-				status = HttpStatus.BAD_REQUEST;
-			} else {
-				guest.setMailAddress(emailAddress);
-				redisTemplate.opsForValue().set(sessionCoopId, guest);
-				redisTemplate.expire(sessionCoopId, coopKeyExpire, TimeUnit.valueOf(coopKeyExpireTimeUnit));
-				mailService.sendMemberRegisterMail(emailAddress, sessionCoopId);
+			final String coopId = sessionCoopId;
+			return sessionCoopService.updateMailAddressAsync(coopId, emailAddress).thenApply(updated -> {
+				final Map<String, String> res = new HashMap<>();
+				if(!updated) {
+					log.warn("セッション復元用IDによるRedisからの情報取得に失敗しました。 : {}", coopId);
+					res.put("status", "NG");
+					res.put("message", "invalid session_coop_id.");
+					return toJsonResponse(res, HttpStatus.BAD_REQUEST);
+				}
+				mailService.sendMemberRegisterMail(emailAddress, coopId);
 				res.put("status", "OK");
-				status = HttpStatus.OK;
-			}
-		} else {
-			log.warn("セッション復元用IDもしくはメールアドレスが未指定です。 : {}", to);
+				return toJsonResponse(res, HttpStatus.OK);
+			});
+		}
+		
+		log.warn("セッション復元用IDもしくはメールアドレスが未指定です。 : {}", to);
+		final Map<String, String> res = new HashMap<>();
+		res.put("status", "NG");
+		res.put("message", "email_address and session_coop_id is required.");
+		return CompletableFuture.completedFuture(toJsonResponse(res, HttpStatus.BAD_REQUEST));
+	}
+	
+	/**
+	 * <pre>
+	 * 空メールの自動応答メール送信処理（一括）。
+	 * 連携レコードの更新は全件を1回のLuaスクリプト（複数キーの更新）で行い、メールはまとめて送信キューに登録する。
+	 * 結果は受信通知と同順で返す。要素がnull、または宛先、送信元が不正な受信通知はその要素のみNGとする。
+	 * </pre>
+	 * @param events 空メール受信通知
+	 * @return
+	 */
+	@RequestMapping(value = "AutoReply/batch", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE)
+	public CompletableFuture<ResponseEntity<String>> autoReplyBatch(@RequestBody final List<AutoReplyEvent> events) {
+		log.info("空メールの自動応答メール一括送信処理を開始します。 : {}件", events.size());
+		
+		if (events.size() > batchMaxSize) {
+			final Map<String, String> res = new HashMap<>();
 			res.put("status", "NG");
-			res.put("message", "email_address and session_coop_id is required.");
-			status = HttpStatus.BAD_REQUEST;
+			res.put("message", "too many events. max=" + batchMaxSize);
+			return CompletableFuture.completedFuture(toJsonResponse(res, HttpStatus.BAD_REQUEST));
 		}
 		
+		final List<Map<String, String>> results = new ArrayList<>(events.size());
+		final List<Integer> targets = new ArrayList<>(events.size());
+		final List<String> coopIds = new ArrayList<>(events.size());
+		final List<String> emailAddresses = new ArrayList<>(events.size());
+		for (int i = 0; i < events.size(); i++) {
+			final AutoReplyEvent event = events.get(i);
+			if (event == null) {
+				log.warn("空メール受信通知が空です。 : {}件目", i + 1);
+				results.add(result("NG", "event is required."));
+				continue;
+			}
+			final String sessionCoopId = extractSessionCoopId(event.getTo());
+			if (StringUtils.isEmpty(sessionCoopId) || StringUtils.isEmpty(event.getFrom())) {
+				log.warn("セッション復元用IDもしくはメールアドレスが未指定です。 : {}", event.getTo());
+				results.add(result("NG", "email_address and session_coop_id is required."));
+				continue;
+			}
+			results.add(null);
+			targets.add(i);
+			coopIds.add(sessionCoopId);
+			emailAddresses.add(event.getFrom());
+		}
+		
+		return sessionCoopService.updateMailAddressesAsync(coopIds, emailAddresses).thenApply(updated -> {
+			final List<String> sendTo = new ArrayList<>(targets.size());
+			final List<String> sendCoopIds = new ArrayList<>(targets.size());
+			for (int j = 0; j < targets.size(); j++) {
+				if (updated.get(j)) {
+					sendTo.add(emailAddresses.get(j));
+					sendCoopIds.add(coopIds.get(j));
+					results.set(targets.get(j), result("OK", null));
+				} else {
+					log.warn("セッション復元用IDによるRedisからの情報取得に失敗しました。 : {}", coopIds.get(j));
+					results.set(targets.get(j), result("NG", "invalid session_coop_id."));
+				}
+			}
+			if (!sendTo.isEmpty()) {
+				mailService.sendMemberRegisterMails(sendTo, sendCoopIds);
+			}
+			final Map<String, Object> res = new HashMap<>();
+			res.put("results", results);
+			return toJsonResponse(res, HttpStatus.OK);
+		});
+	}
+	
+	/**
+	 * 空メール送信先アドレスからセッション復元用IDを取り出す。
+	 * @param to 空メール送信先アドレス
+	 * @return セッション復元用ID。取り出せない場合null
+	 */
+	private String extractSessionCoopId(String to) {
+		if (to == null) {
+			return null;
+		}
+		final String toAccount = to.split("@")[0];
+		
+		final String[] accountInfo = toAccount.split(accountSeparator);
+		if(accountInfo.length == 2) {
+			return accountInfo[1];
+		}
+		return null;
+	}
+	
+	private static Map<String, String> result(String status, String message) {
+		final Map<String, String> result = new HashMap<>();
+		result.put("status", status);
+		if (message != null) {
+			result.put("message", message);
+		}
+		return result;
+	}
+	
+	private ResponseEntity<String> toJsonResponse(Map<String, ?> res, HttpStatus status) {
 		final HttpHeaders headers = new HttpHeaders();
 		headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
 	
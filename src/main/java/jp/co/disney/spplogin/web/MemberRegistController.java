@@ -3,7 +3,6 @@ package jp.co.disney.spplogin.web;
 import javax.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -25,6 +24,7 @@ import jp.co.disney.spplogin.exception.ApplicationException;
 import jp.co.disney.spplogin.exception.SppMemberRegisterException;
 import jp.co.disney.spplogin.helper.EmailAddressValidator;
 import jp.co.disney.spplogin.service.CoreWebApiService;
+import jp.co.disney.spplogin.service.SessionCoopService;
 import jp.co.disney.spplogin.vo.SppMemberDetails;
 import jp.co.disney.spplogin.web.form.MemberEntryForm;
 import jp.co.disney.spplogin.web.model.Guest;
@@ -40,7 +40,7 @@ public class MemberRegistController {
 	private Guest guest;
 	
     @Autowired
-    private RedisTemplate<String, Guest> redisTemplate;
+    private SessionCoopService sessionCoopService;
     
     @Autowired
     private EmailAddressValidator emailAddressValidator;
@@ -71,13 +71,13 @@ public class MemberRegistController {
 	@RequestMapping(value = "", params = "form", method = RequestMethod.GET)
 	public String entryForm(@RequestParam(required = true) String form, Model model) {
 		if(!guest.isSessionRestored()){
-			final Guest savedGuest = redisTemplate.opsForValue().get(form);
+			final Guest savedGuest = sessionCoopService.findForEntry(form);
 			if(savedGuest == null || StringUtils.isEmpty(savedGuest.getMailAddress())) {
 				// 無効なURL
 				throw new ApplicationException(ApplicationErrors.INVALID_URL);
 			}
 			
-			redisTemplate.delete(form);
+			sessionCoopService.delete(form);
 			
 			emailAddressValidator.validate(savedGuest.getMailAddress());
 			
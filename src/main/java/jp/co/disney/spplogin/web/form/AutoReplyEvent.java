@@ -0,0 +1,14 @@
+package jp.co.disney.spplogin.web.form;
+
+import lombok.Data;
+
+/**
+ * 空メール受信通知（一括受付用）
+ */
+@Data
+public class AutoReplyEvent {
+	/** 送信元メールアドレス */
+	private String from;
+	/** 宛先メールアドレス（空メール送信先アドレス） */
+	private String to;
+}
@@ -1,5 +1,6 @@
 package jp.co.disney.spplogin.controller;
 
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 import java.util.HashMap;
@@ -17,9 +18,11 @@ import org.mockito.junit.MockitoRule;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
@@ -75,8 +78,33 @@ public class EmptyMailControllerTest {
     	
     	toAddress.put("to_address", accountPrefix + accountSeparator + coopKeyPrefix + "abcdefg123456" + "@" + emptyMailDomain);
     	
-    	this.mockMvc.perform(MockMvcRequestBuilders.get("/EmptyMail/genToAddress"))
+    	final MvcResult result = this.mockMvc.perform(MockMvcRequestBuilders.get("/EmptyMail/genToAddress"))
+    	.andExpect(request().asyncStarted())
+    	.andReturn();
+    	
+    	this.mockMvc.perform(asyncDispatch(result))
     	.andExpect(status().isOk())
     	.andExpect(content().string(mapper.writeValueAsString(toAddress)));
     }
+    
+    @Test
+    public void autoReplyBatchメソッド() throws Exception {
+    	final String body = "[{\"from\":\"test@docomo.ne.jp\",\"to\":\"invalid@" + emptyMailDomain + "\"},"
+    			+ "{\"from\":\"test@docomo.ne.jp\",\"to\":\"" + accountPrefix + accountSeparator + coopKeyPrefix
+    			+ "notexists@" + emptyMailDomain + "\"},null]";
+    	
+    	final MvcResult result = this.mockMvc.perform(MockMvcRequestBuilders.post("/EmptyMail/AutoReply/batch")
+    			.contentType(MediaType.APPLICATION_JSON).content(body))
+    	.andExpect(request().asyncStarted())
+    	.andReturn();
+    	
+    	this.mockMvc.perform(asyncDispatch(result))
+    	.andExpect(status().isOk())
+    	.andExpect(jsonPath("$.results[0].status").value("NG"))
+    	.andExpect(jsonPath("$.results[0].message").value("email_address and session_coop_id is required."))
+    	.andExpect(jsonPath("$.results[1].status").value("NG"))
+    	.andExpect(jsonPath("$.results[1].message").value("invalid session_coop_id."))
+    	.andExpect(jsonPath("$.results[2].status").value("NG"))
+    	.andExpect(jsonPath("$.results[2].message").value("event is required."));
+    }
 }
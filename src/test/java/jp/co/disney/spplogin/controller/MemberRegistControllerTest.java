@@ -25,7 +25,6 @@ import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.SpringApplicationConfiguration;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.mock.web.MockHttpSession;
 import org.springframework.test.context.TestContextManager;
 import org.springframework.test.context.web.WebAppConfiguration;
@@ -41,6 +40,7 @@ import jp.co.disney.spplogin.exception.SppMemberRegisterException;
 import jp.co.disney.spplogin.helper.EmailAddressValidator;
 import jp.co.disney.spplogin.helper.RandomHelper;
 import jp.co.disney.spplogin.service.CoreWebApiService;
+import jp.co.disney.spplogin.service.SessionCoopService;
 import jp.co.disney.spplogin.vo.SppMemberDetails;
 import jp.co.disney.spplogin.web.MemberRegistController;
 import jp.co.disney.spplogin.web.model.Guest;
@@ -64,7 +64,7 @@ public class MemberRegistControllerTest {
     private WebApplicationContext wac;
 	
 	@Autowired
-    private RedisTemplate<String, Guest> redisTemplate;
+    private SessionCoopService sessionCoopService;
 	
 	@Autowired
 	private Guest guest;
@@ -100,7 +100,7 @@ public class MemberRegistControllerTest {
     	wGuest.setBirthDayDay("13");
     	wGuest.setMailAddress("test123@gmail.com");
     	final String id = randomHelper.randomID();
-    	redisTemplate.opsForValue().set(id, wGuest.copy());
+    	sessionCoopService.save(id, wGuest.copy());
     	
     	this.mockMvc.perform(MockMvcRequestBuilders.get("/Regist")
     			.param("form", id)
@@ -0,0 +1,87 @@
+package jp.co.disney.spplogin.filter;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class LoginAdmissionFilterTest {
+
+	private LoginAdmissionFilter filter;
+
+	@Before
+	public void setUp() {
+		filter = new LoginAdmissionFilter();
+		ReflectionTestUtils.setField(filter, "enabled", true);
+		ReflectionTestUtils.setField(filter, "slots", 1024);
+		ReflectionTestUtils.setField(filter, "ipBurst", 100);
+		ReflectionTestUtils.setField(filter, "ipRate", 0.001);
+		ReflectionTestUtils.setField(filter, "memberBurst", 2);
+		ReflectionTestUtils.setField(filter, "memberRate", 0.001);
+		ReflectionTestUtils.setField(filter, "forwardedHeader", "");
+		ReflectionTestUtils.setField(filter, "retryAfterSeconds", 30);
+		ReflectionTestUtils.setField(filter, "redisEnabled", false);
+		filter.init();
+	}
+
+	@Test
+	public void ログイン画面のメンバーのバケットが空になると429を返す() throws Exception {
+		assertThat(status(login("/Login", "memberNameOrEmailAddr", "Test@Example.com")), is(200));
+		assertThat(status(login("/Login", "memberNameOrEmailAddr", "test@example.com")), is(200));
+		// 正規化により同じメンバーとして扱う
+		assertThat(status(login("/Login", "memberNameOrEmailAddr", "ＴＥＳＴ@example.com")), is(429));
+	}
+
+	@Test
+	public void 新規登録後のログインもメンバー名で制限する() throws Exception {
+		assertThat(status(login("/Regist", "memberName", "member01")), is(200));
+		assertThat(status(login("/Regist", "memberName", "member01")), is(200));
+		assertThat(status(login("/Regist", "memberName", "member01")), is(429));
+		// 別のメンバーは制限しない
+		assertThat(status(login("/Regist", "memberName", "member02")), is(200));
+	}
+
+	@Test
+	public void IPアドレスのバケットが空になると両方のエンドポイントで429を返す() throws Exception {
+		ReflectionTestUtils.setField(filter, "ipBurst", 2);
+		filter.init();
+
+		assertThat(status(login("/Login", "memberNameOrEmailAddr", "a@example.com")), is(200));
+		assertThat(status(login("/Regist", "memberName", "member03")), is(200));
+		assertThat(status(login("/Login", "memberNameOrEmailAddr", "b@example.com")), is(429));
+		assertThat(status(login("/Regist", "memberName", "member04")), is(429));
+	}
+
+	@Test
+	public void ログイン以外のリクエストは制限しない() throws Exception {
+		ReflectionTestUtils.setField(filter, "ipBurst", 1);
+		filter.init();
+
+		for (int i = 0; i < 3; i++) {
+			final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/spplogin/Regist/register");
+			request.setContextPath("/spplogin");
+			request.setRemoteAddr("192.168.0.1");
+			assertThat(status(request), is(200));
+		}
+	}
+
+	private static MockHttpServletRequest login(String path, String memberParameter, String member) {
+		final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/spplogin" + path);
+		request.setContextPath("/spplogin");
+		request.setRemoteAddr("192.168.0.1");
+		request.addParameter("login", "");
+		request.addParameter(memberParameter, member);
+		return request;
+	}
+
+	private int status(MockHttpServletRequest request) throws Exception {
+		final MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, new MockFilterChain());
+		return response.getStatus();
+	}
+}
@@ -0,0 +1,80 @@
+package jp.co.disney.spplogin.interceptor;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.resource.ResourceHttpRequestHandler;
+
+import jp.co.disney.spplogin.maintenance.MaintenanceSwitch;
+
+public class MaintenanceInterceptorTest {
+
+	private MaintenanceInterceptor interceptor;
+	private MaintenanceSwitch maintenanceSwitch;
+	private MockHttpServletResponse response;
+
+	@Before
+	public void setUp() {
+		maintenanceSwitch = mock(MaintenanceSwitch.class);
+		interceptor = new MaintenanceInterceptor();
+		ReflectionTestUtils.setField(interceptor, "maintenanceSwitch", maintenanceSwitch);
+		response = new MockHttpServletResponse();
+	}
+
+	@Test
+	public void メンテナンス中でなければ通過する() throws Exception {
+		when(maintenanceSwitch.isActive()).thenReturn(false);
+
+		assertThat(interceptor.preHandle(request("/Login"), response, new Object()), is(true));
+		assertThat(response.getRedirectedUrl(), is(nullValue()));
+	}
+
+	@Test
+	public void メンテナンス中はメンテナンスページへリダイレクトする() throws Exception {
+		when(maintenanceSwitch.isActive()).thenReturn(true);
+
+		assertThat(interceptor.preHandle(request("/Login"), response, new Object()), is(false));
+		assertThat(response.getRedirectedUrl(), is("/spplogin/Maintenance"));
+		// 許可判定はコンテキストパスを除いたパスで行う
+		verify(maintenanceSwitch).isAllowed("/Login", "192.168.0.1");
+	}
+
+	@Test
+	public void メンテナンスページ自体はリダイレクトしない() throws Exception {
+		when(maintenanceSwitch.isActive()).thenReturn(true);
+
+		assertThat(interceptor.preHandle(request("/Maintenance"), response, new Object()), is(true));
+		assertThat(response.getRedirectedUrl(), is(nullValue()));
+	}
+
+	@Test
+	public void 許可されたパスまたはIPアドレスは通過する() throws Exception {
+		when(maintenanceSwitch.isActive()).thenReturn(true);
+		when(maintenanceSwitch.isAllowed("/health", "192.168.0.1")).thenReturn(true);
+
+		assertThat(interceptor.preHandle(request("/health"), response, new Object()), is(true));
+		assertThat(response.getRedirectedUrl(), is(nullValue()));
+	}
+
+	@Test
+	public void 静的リソースは通過する() throws Exception {
+		when(maintenanceSwitch.isActive()).thenReturn(true);
+
+		assertThat(interceptor.preHandle(request("/css/common.css"), response, new ResourceHttpRequestHandler()),
+				is(true));
+		verify(maintenanceSwitch, never()).isAllowed(anyString(), anyString());
+	}
+
+	private static MockHttpServletRequest request(String path) {
+		final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/spplogin" + path);
+		request.setContextPath("/spplogin");
+		request.setRemoteAddr("192.168.0.1");
+		return request;
+	}
+}
@@ -0,0 +1,42 @@
+package jp.co.disney.spplogin.interceptor;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import is.tagomor.woothee.Classifier;
+
+import org.junit.Test;
+
+public class UserAgentInterceptorTest {
+
+	private static boolean supported(String userAgent) {
+		return UserAgentInterceptor.Classification.of(Classifier.parse(userAgent)).supported;
+	}
+
+	@Test
+	public void Android5以上のChromeは対象() throws Exception {
+		assertThat(supported("Mozilla/5.0 (Linux; Android 5.0.2; SO-01G Build/23.1.B.1.160) AppleWebKit/537.36 "
+				+ "(KHTML, like Gecko) Chrome/50.0.2661.89 Mobile Safari/537.36"), is(true));
+		// バージョン2桁の判定
+		assertThat(supported("Mozilla/5.0 (Linux; Android 10; SO-01M) AppleWebKit/537.36 "
+				+ "(KHTML, like Gecko) Chrome/86.0.4240.110 Mobile Safari/537.36"), is(true));
+	}
+
+	@Test
+	public void Android4以下は対象外() throws Exception {
+		assertThat(supported("Mozilla/5.0 (Linux; Android 4.4.2; SO-01F Build/14.3.B.0.310) AppleWebKit/537.36 "
+				+ "(KHTML, like Gecko) Chrome/50.0.2661.89 Mobile Safari/537.36"), is(false));
+	}
+
+	@Test
+	public void iOS7以上のSafariは対象() throws Exception {
+		assertThat(supported("Mozilla/5.0 (iPhone; CPU iPhone OS 10_3_1 like Mac OS X) AppleWebKit/603.1.30 "
+				+ "(KHTML, like Gecko) Version/10.0 Mobile/14E304 Safari/602.1"), is(true));
+	}
+
+	@Test
+	public void 判定できないUserAgentは対象() throws Exception {
+		assertThat(supported("curl/7.43.0"), is(true));
+		assertThat(supported(""), is(true));
+	}
+}
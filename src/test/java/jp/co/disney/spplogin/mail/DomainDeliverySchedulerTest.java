@@ -0,0 +1,72 @@
+package jp.co.disney.spplogin.mail;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mail.SimpleMailMessage;
+
+public class DomainDeliverySchedulerTest {
+
+	private DomainDeliveryScheduler scheduler;
+	private long sequence;
+
+	@Before
+	public void setUp() {
+		final DomainDeliveryScheduler.Settings settings = new DomainDeliveryScheduler.Settings();
+		settings.defaultRate = 1;
+		settings.burst = 2;
+		settings.minRate = 0.5;
+		settings.maxRate = 10;
+		settings.increaseStep = 1;
+		settings.decreaseFactor = 0.5;
+		scheduler = new DomainDeliveryScheduler(5, settings, Collections.singletonMap("docomo.ne.jp", 1.0),
+				domain -> domain.equals("ezweb.ne.jp"));
+	}
+
+	private OutboxEntry entry(String to) {
+		final SimpleMailMessage message = new SimpleMailMessage();
+		message.setTo(to);
+		return new OutboxEntry(++sequence, message, System.currentTimeMillis());
+	}
+
+	@Test
+	public void 管理対象外のドメインはotherにまとめる() throws Exception {
+		assertThat(scheduler.domainOf(entry("a@DOCOMO.ne.jp")), is("docomo.ne.jp"));
+		assertThat(scheduler.domainOf(entry("a@ezweb.ne.jp")), is("ezweb.ne.jp"));
+		assertThat(scheduler.domainOf(entry("a@example.com")), is(DomainDeliveryScheduler.OTHER_DOMAIN));
+	}
+
+	@Test
+	public void ドメインを交互に取り出しバケットの容量を超えて取り出さない() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			scheduler.offer(entry("a" + i + "@docomo.ne.jp"));
+		}
+		scheduler.offer(entry("b@ezweb.ne.jp"));
+
+		final List<OutboxEntry> first = scheduler.take(10, 0, TimeUnit.MILLISECONDS);
+		final List<OutboxEntry> second = scheduler.take(10, 0, TimeUnit.MILLISECONDS);
+
+		assertThat(first.size(), is(2));
+		assertThat(scheduler.domainOf(first.get(0)), is("docomo.ne.jp"));
+		assertThat(second.size(), is(1));
+		assertThat(scheduler.domainOf(second.get(0)), is("ezweb.ne.jp"));
+		// docomo.ne.jpはトークンを使い切っている
+		assertThat(scheduler.take(10, 0, TimeUnit.MILLISECONDS), is(empty()));
+		assertThat(scheduler.size(), is(1));
+	}
+
+	@Test
+	public void 上限件数を超えて格納しない() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			assertThat(scheduler.offer(entry("a" + i + "@docomo.ne.jp")), is(true));
+		}
+		assertThat(scheduler.isFull(), is(true));
+		assertThat(scheduler.offer(entry("x@docomo.ne.jp")), is(false));
+	}
+}
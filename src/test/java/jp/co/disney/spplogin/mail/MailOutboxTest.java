@@ -0,0 +1,195 @@
+package jp.co.disney.spplogin.mail;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.mockito.Mockito.*;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.MailSender;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class MailOutboxTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path spoolPath;
+	private FakeMailSender mailSender;
+	private TaskScheduler taskScheduler;
+	private MailOutbox outbox;
+
+	/** 指定回数だけ送信に失敗するMailSender */
+	private static class FakeMailSender implements MailSender {
+
+		final AtomicInteger failures = new AtomicInteger();
+		final List<SimpleMailMessage> sent = new CopyOnWriteArrayList<>();
+
+		@Override
+		public void send(SimpleMailMessage message) throws MailException {
+			send(new SimpleMailMessage[] { message });
+		}
+
+		@Override
+		public void send(SimpleMailMessage... messages) throws MailException {
+			if (failures.getAndDecrement() > 0) {
+				throw new MailSendException("Connection refused");
+			}
+			sent.addAll(Arrays.asList(messages));
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		spoolPath = folder.getRoot().toPath().resolve("mail-outbox.log");
+		mailSender = new FakeMailSender();
+		taskScheduler = mock(TaskScheduler.class);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (outbox != null) {
+			outbox.stop();
+		}
+	}
+
+	private MailOutbox start() throws Exception {
+		final MailOutbox outbox = new MailOutbox();
+		ReflectionTestUtils.setField(outbox, "enabled", true);
+		ReflectionTestUtils.setField(outbox, "capacity", 100);
+		ReflectionTestUtils.setField(outbox, "workerCount", 1);
+		ReflectionTestUtils.setField(outbox, "batchSize", 10);
+		ReflectionTestUtils.setField(outbox, "maxAttempts", 3);
+		ReflectionTestUtils.setField(outbox, "initialBackoffMillis", 1000L);
+		ReflectionTestUtils.setField(outbox, "maxBackoffMillis", 1500L);
+		ReflectionTestUtils.setField(outbox, "domainDefaultRate", 100.0);
+		ReflectionTestUtils.setField(outbox, "domainBurst", 100.0);
+		ReflectionTestUtils.setField(outbox, "domainMinRate", 1.0);
+		ReflectionTestUtils.setField(outbox, "domainMaxRate", 100.0);
+		ReflectionTestUtils.setField(outbox, "domainIncreaseStep", 1.0);
+		ReflectionTestUtils.setField(outbox, "domainDecreaseFactor", 0.5);
+		ReflectionTestUtils.setField(outbox, "domainRates", "");
+		ReflectionTestUtils.setField(outbox, "spoolPath", spoolPath.toString());
+		ReflectionTestUtils.setField(outbox, "spoolFsync", false);
+		ReflectionTestUtils.setField(outbox, "spoolCompactThresholdBytes", 1048576L);
+		ReflectionTestUtils.setField(outbox, "mailSender", mailSender);
+		ReflectionTestUtils.setField(outbox, "taskScheduler", taskScheduler);
+		outbox.start();
+		return outbox;
+	}
+
+	private static SimpleMailMessage message(String to) {
+		final SimpleMailMessage message = new SimpleMailMessage();
+		message.setTo(to);
+		message.setSubject("件名");
+		message.setText("本文");
+		return message;
+	}
+
+	private Number metric(String name) {
+		for (Metric<?> metric : outbox.metrics()) {
+			if (metric.getName().equals(name)) {
+				return metric.getValue();
+			}
+		}
+		throw new AssertionError(name);
+	}
+
+	private void awaitDepth(int depth) throws InterruptedException {
+		for (int i = 0; i < 100 && metric("spplogin.mail.outbox.depth").intValue() != depth; i++) {
+			Thread.sleep(50);
+		}
+		assertThat(metric("spplogin.mail.outbox.depth").intValue(), is(depth));
+	}
+
+	/**
+	 * 再送のスケジュールを待ち、指定した待ち時間であることを確認して実行する
+	 * @return 実行直前の時刻
+	 */
+	private long runScheduledRetry(int count, long before, long backoffMillis) {
+		final ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+		final ArgumentCaptor<Date> at = ArgumentCaptor.forClass(Date.class);
+		verify(taskScheduler, timeout(5000).times(count)).schedule(task.capture(), at.capture());
+		final long scheduled = at.getValue().getTime();
+		assertThat(scheduled, is(greaterThanOrEqualTo(before + backoffMillis)));
+		assertThat(scheduled, is(lessThanOrEqualTo(System.currentTimeMillis() + backoffMillis)));
+		final long now = System.currentTimeMillis();
+		task.getValue().run();
+		return now;
+	}
+
+	@Test
+	public void 送信に失敗したメールは待ち時間をおいて再送される() throws Exception {
+		mailSender.failures.set(1);
+		outbox = start();
+
+		final long before = System.currentTimeMillis();
+		assertThat(outbox.enqueue(message("user@example.com")), is(true));
+		runScheduledRetry(1, before, 1000);
+		awaitDepth(0);
+
+		assertThat(mailSender.sent.size(), is(1));
+		assertThat(metric("spplogin.mail.outbox.retried").longValue(), is(1L));
+		assertThat(metric("spplogin.mail.outbox.sent").longValue(), is(1L));
+	}
+
+	@Test
+	public void 待ち時間は倍増し上限で打ち切られ回数の上限で破棄される() throws Exception {
+		mailSender.failures.set(Integer.MAX_VALUE);
+		outbox = start();
+
+		final long before = System.currentTimeMillis();
+		outbox.enqueue(message("user@example.com"));
+		final long requeued = runScheduledRetry(1, before, 1000);
+		// 2000msは上限の1500msに打ち切られる
+		runScheduledRetry(2, requeued, 1500);
+		awaitDepth(0);
+
+		assertThat(mailSender.sent, is(empty()));
+		assertThat(metric("spplogin.mail.outbox.retried").longValue(), is(2L));
+		assertThat(metric("spplogin.mail.outbox.failed").longValue(), is(1L));
+		outbox.stop();
+		outbox = null;
+
+		// 破棄したメールは再起動後に再送されない
+		mailSender.failures.set(0);
+		outbox = start();
+		assertThat(metric("spplogin.mail.outbox.depth").intValue(), is(0));
+	}
+
+	@Test
+	public void 未送信のまま停止したメールは再起動後に送信される() throws Exception {
+		final MailSpool spool = new MailSpool(spoolPath, false, 1048576);
+		spool.open();
+		spool.enqueued(new OutboxEntry(7, message("user@example.com"), System.currentTimeMillis()));
+		spool.close();
+
+		outbox = start();
+		awaitDepth(0);
+
+		assertThat(mailSender.sent.size(), is(1));
+		assertThat(mailSender.sent.get(0).getTo(), is(new String[] { "user@example.com" }));
+		assertThat(outbox.enqueue(message("next@example.com")), is(true));
+		awaitDepth(0);
+		assertThat(mailSender.sent.size(), is(2));
+	}
+}
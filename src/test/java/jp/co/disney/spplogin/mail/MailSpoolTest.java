@@ -0,0 +1,127 @@
+package jp.co.disney.spplogin.mail;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.mail.SimpleMailMessage;
+
+public class MailSpoolTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path path;
+	private MailSpool spool;
+
+	@Before
+	public void setUp() throws Exception {
+		path = folder.getRoot().toPath().resolve("mail-outbox.log");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (spool != null) {
+			spool.close();
+		}
+	}
+
+	private static OutboxEntry entry(long id) {
+		final SimpleMailMessage message = new SimpleMailMessage();
+		message.setTo("user" + id + "@example.com");
+		message.setFrom("noreply@example.com");
+		message.setSubject("件名" + id);
+		message.setText("本文" + id);
+		return new OutboxEntry(id, message, 1000L + id);
+	}
+
+	@Test
+	public void 完了を記録せずに停止したメールは再度開くと復元される() throws Exception {
+		final MailSpool crashed = new MailSpool(path, false, 1048576);
+		assertThat(crashed.open(), is(empty()));
+		crashed.enqueued(entry(1));
+		crashed.enqueued(entry(2));
+		crashed.done(1);
+		// closeせずに（プロセス停止を想定して）開き直す
+
+		spool = new MailSpool(path, false, 1048576);
+		final List<OutboxEntry> recovered = spool.open();
+		crashed.close();
+
+		assertThat(recovered.size(), is(1));
+		final OutboxEntry entry = recovered.get(0);
+		assertThat(entry.id, is(2L));
+		assertThat(entry.enqueuedAt, is(1002L));
+		assertThat(entry.message.getTo(), is(new String[] { "user2@example.com" }));
+		assertThat(entry.message.getFrom(), is("noreply@example.com"));
+		assertThat(entry.message.getSubject(), is("件名2"));
+		assertThat(entry.message.getText(), is("本文2"));
+	}
+
+	@Test
+	public void 書き込み途中の最終行は読み飛ばす() throws Exception {
+		final MailSpool crashed = new MailSpool(path, false, 1048576);
+		crashed.open();
+		crashed.enqueued(entry(1));
+		crashed.close();
+		Files.write(path, "E 2 {\"to\":[\"us".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+		spool = new MailSpool(path, false, 1048576);
+		final List<OutboxEntry> recovered = spool.open();
+
+		assertThat(recovered.size(), is(1));
+		assertThat(recovered.get(0).id, is(1L));
+	}
+
+	@Test
+	public void 複数メールの登録も復元される() throws Exception {
+		final MailSpool crashed = new MailSpool(path, false, 1048576);
+		crashed.open();
+		crashed.enqueued(Arrays.asList(entry(1), entry(2), entry(3)));
+		crashed.done(2);
+		crashed.close();
+
+		spool = new MailSpool(path, false, 1048576);
+		final List<OutboxEntry> recovered = spool.open();
+
+		assertThat(recovered.size(), is(2));
+		assertThat(recovered.get(0).id, is(1L));
+		assertThat(recovered.get(1).id, is(3L));
+	}
+
+	@Test
+	public void 再送待ちのメールが残っていても閾値を超えると未完了分のみに圧縮される() throws Exception {
+		final long threshold = 4096;
+		spool = new MailSpool(path, false, threshold);
+		spool.open();
+		// 再送待ちで完了しないメール
+		spool.enqueued(entry(1));
+		final long retrying = spool.size();
+		for (long id = 2; id < 500; id++) {
+			spool.enqueued(entry(id));
+			spool.done(id);
+			assertThat(spool.size(), is(lessThanOrEqualTo(threshold + retrying * 2)));
+		}
+		spool.enqueued(entry(500));
+		spool.close();
+
+		spool = new MailSpool(path, false, threshold);
+		final List<OutboxEntry> recovered = spool.open();
+
+		assertThat(recovered.size(), is(2));
+		assertThat(recovered.get(0).id, is(1L));
+		assertThat(recovered.get(1).id, is(500L));
+		assertThat(spool.size(), is(lessThan(retrying * 3)));
+	}
+}
@@ -0,0 +1,59 @@
+package jp.co.disney.spplogin.mail;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class MailTemplateTest {
+
+	private static String render(String source, Map<String, ?> model) {
+		final StringBuilder out = new StringBuilder();
+		MailTemplate.compile("test", source).render(model, out);
+		return out.toString();
+	}
+
+	@Test
+	public void 差し込み項目を置換する() throws Exception {
+		final Map<String, Object> model = new HashMap<>();
+		model.put("url", "https://example.com/Regist?form=a1abc");
+		model.put("name", "ミッキー");
+
+		assertThat(render("URL:$url", model), is("URL:https://example.com/Regist?form=a1abc"));
+		assertThat(render("${name}さん", model), is("ミッキーさん"));
+		assertThat(render("$!name/$!{name}", model), is("ミッキー/ミッキー"));
+		assertThat(render("$url.", model), is("https://example.com/Regist?form=a1abc."));
+	}
+
+	@Test
+	public void 値がない場合はVelocityと同様に出力する() throws Exception {
+		final Map<String, Object> model = Collections.emptyMap();
+
+		assertThat(render("[$url][${url}]", model), is("[$url][${url}]"));
+		assertThat(render("[$!url][$!{url}]", model), is("[][]"));
+	}
+
+	@Test
+	public void 参照でない記述は文字として扱う() throws Exception {
+		final Map<String, Object> model = Collections.singletonMap("url", "x");
+
+		assertThat(render("100$ $1 ${url $!", model), is("100$ $1 ${url $!"));
+		assertThat(render("", model), is(""));
+	}
+
+	@Test
+	public void 会員登録メールのテンプレートを描画できる() throws Exception {
+		final MailTemplateRenderer renderer = new MailTemplateRenderer();
+		renderer.load();
+
+		final String body = renderer.render("mail/member-register.vm",
+				Collections.singletonMap("memberRegisterUrl", "https://example.com/Regist?form=a1abc"));
+
+		assertThat(body, startsWith("ディズニーシェアの新規メンバー登録を行います。"));
+		assertThat(body, endsWith("https://example.com/Regist?form=a1abc"));
+	}
+}
@@ -0,0 +1,166 @@
+package jp.co.disney.spplogin.maintenance;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class MaintenanceSwitchTest {
+
+	private static final String KEY = "spplogin:maintenance";
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private MaintenanceSwitch maintenanceSwitch;
+	private StringRedisTemplate stringRedisTemplate;
+	private ValueOperations<String, String> valueOperations;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		stringRedisTemplate = mock(StringRedisTemplate.class);
+		valueOperations = mock(ValueOperations.class);
+		when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+
+		maintenanceSwitch = new MaintenanceSwitch();
+		ReflectionTestUtils.setField(maintenanceSwitch, "stringRedisTemplate", stringRedisTemplate);
+		ReflectionTestUtils.setField(maintenanceSwitch, "source", "redis");
+		ReflectionTestUtils.setField(maintenanceSwitch, "redisKey", KEY);
+		ReflectionTestUtils.setField(maintenanceSwitch, "file", "");
+		ReflectionTestUtils.setField(maintenanceSwitch, "allowPaths", "/health, /metrics");
+		ReflectionTestUtils.setField(maintenanceSwitch, "allowIps", "10.0.0.1");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		maintenanceSwitch.destroy();
+	}
+
+	@Test
+	public void 起動時にRedisの状態を読み込む() throws Exception {
+		when(valueOperations.get(KEY)).thenReturn("on");
+
+		maintenanceSwitch.init();
+
+		assertThat(maintenanceSwitch.isActive(), is(true));
+	}
+
+	@Test
+	public void PubSubの通知で切り替わる() throws Exception {
+		maintenanceSwitch.init();
+		assertThat(maintenanceSwitch.isActive(), is(false));
+
+		maintenanceSwitch.onMessage(message(" ON "), null);
+		assertThat(maintenanceSwitch.isActive(), is(true));
+
+		maintenanceSwitch.onMessage(message("off"), null);
+		assertThat(maintenanceSwitch.isActive(), is(false));
+	}
+
+	@Test
+	public void 定期的な読み直しで通知の取りこぼしを補正する() throws Exception {
+		maintenanceSwitch.init();
+		when(valueOperations.get(KEY)).thenReturn("on");
+
+		maintenanceSwitch.reconcile();
+		assertThat(maintenanceSwitch.isActive(), is(true));
+
+		when(valueOperations.get(KEY)).thenReturn(null);
+		maintenanceSwitch.reconcile();
+		assertThat(maintenanceSwitch.isActive(), is(false));
+	}
+
+	@Test
+	public void 読み直しに失敗した場合は現在の状態を維持する() throws Exception {
+		when(valueOperations.get(KEY)).thenReturn("on");
+		maintenanceSwitch.init();
+
+		when(valueOperations.get(KEY)).thenThrow(new IllegalStateException("connection refused"));
+		maintenanceSwitch.reconcile();
+
+		assertThat(maintenanceSwitch.isActive(), is(true));
+	}
+
+	@Test
+	public void ファイルの作成と削除を監視して切り替わる() throws Exception {
+		final File file = new File(temporaryFolder.getRoot(), "maintenance/on");
+		ReflectionTestUtils.setField(maintenanceSwitch, "source", "file");
+		ReflectionTestUtils.setField(maintenanceSwitch, "file", file.getPath());
+		maintenanceSwitch.init();
+		assertThat(maintenanceSwitch.isActive(), is(false));
+
+		Files.createFile(file.toPath());
+		assertThat(awaitActive(true), is(true));
+
+		Files.delete(file.toPath());
+		assertThat(awaitActive(false), is(true));
+	}
+
+	@Test
+	public void ファイルの存在を定期的に確認する() throws Exception {
+		final File file = temporaryFolder.newFile("on");
+		ReflectionTestUtils.setField(maintenanceSwitch, "source", "none");
+		maintenanceSwitch.init();
+		ReflectionTestUtils.setField(maintenanceSwitch, "source", "file");
+		ReflectionTestUtils.setField(maintenanceSwitch, "file", file.getPath());
+
+		maintenanceSwitch.reconcile();
+		assertThat(maintenanceSwitch.isActive(), is(true));
+
+		Files.delete(file.toPath());
+		maintenanceSwitch.reconcile();
+		assertThat(maintenanceSwitch.isActive(), is(false));
+	}
+
+	@Test
+	public void 取得元がnoneの場合は常にメンテナンス中でない() throws Exception {
+		ReflectionTestUtils.setField(maintenanceSwitch, "source", "none");
+		when(valueOperations.get(KEY)).thenReturn("on");
+
+		maintenanceSwitch.init();
+
+		assertThat(maintenanceSwitch.isActive(), is(false));
+		verifyZeroInteractions(stringRedisTemplate);
+	}
+
+	@Test
+	public void 許可したパスとIPアドレスのみアクセスできる() throws Exception {
+		maintenanceSwitch.init();
+
+		// パスは前方一致、前後の空白は除去する
+		assertThat(maintenanceSwitch.isAllowed("/health", "192.168.0.1"), is(true));
+		assertThat(maintenanceSwitch.isAllowed("/metrics/spplogin", "192.168.0.1"), is(true));
+		assertThat(maintenanceSwitch.isAllowed("/Login", "10.0.0.1"), is(true));
+		assertThat(maintenanceSwitch.isAllowed("/Login", "192.168.0.1"), is(false));
+	}
+
+	private static DefaultMessage message(String body) {
+		return new DefaultMessage(KEY.getBytes(StandardCharsets.UTF_8), body.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * ファイル監視による切り替えを待つ（監視の実装によっては数秒の遅延がある）
+	 */
+	private boolean awaitActive(boolean expected) throws InterruptedException {
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(15);
+		while (maintenanceSwitch.isActive() != expected && System.nanoTime() < deadline) {
+			TimeUnit.MILLISECONDS.sleep(50);
+		}
+		return maintenanceSwitch.isActive() == expected;
+	}
+}
@@ -0,0 +1,111 @@
+package jp.co.disney.spplogin.metrics;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class LatencyHistogramsTest {
+
+	private LatencyHistograms histograms;
+
+	@Before
+	public void setUp() {
+		histograms = new LatencyHistograms();
+		ReflectionTestUtils.setField(histograms, "significantDigits", 2);
+	}
+
+	@Test
+	public void 集計間隔の切り替え後にパーセンタイルが公開される() throws Exception {
+		for (int i = 1; i <= 100; i++) {
+			histograms.record("core", "COR-901", "success", TimeUnit.MILLISECONDS.toNanos(i));
+		}
+		assertThat(value("spplogin.latency.core.COR-901.success.p99"), is(0.0));
+
+		histograms.rotate();
+
+		assertThat(value("spplogin.latency.core.COR-901.success.count"), is(100.0));
+		assertThat(value("spplogin.latency.core.COR-901.success.p50"), is(closeTo(50.0, 1.0)));
+		assertThat(value("spplogin.latency.core.COR-901.success.p99"), is(closeTo(99.0, 1.0)));
+		assertThat(value("spplogin.latency.core.COR-901.success.max"), is(closeTo(100.0, 1.0)));
+	}
+
+	@Test
+	public void 組み合わせ毎に記録される() throws Exception {
+		histograms.record("redis-primary", "get", "success", 1000);
+		histograms.record("redis-primary", "get", "error", 1000);
+		histograms.record("redis-primary", "get", "error", 1000);
+		histograms.rotate();
+
+		assertThat(value("spplogin.latency.redis-primary.get.success.count"), is(1.0));
+		assertThat(value("spplogin.latency.redis-primary.get.error.count"), is(2.0));
+	}
+
+	@Test
+	public void 保持した記録先への記録は同じ組み合わせに集計される() throws Exception {
+		final LatencyHistograms.Timer timer = histograms.timer("pool-wait", "tomcat-exec", "acquired");
+		assertThat(histograms.timer("pool-wait", "tomcat-exec", "acquired"), is(sameInstance(timer)));
+
+		timer.record(1000);
+		histograms.record("pool-wait", "tomcat-exec", "acquired", 1000);
+		histograms.rotate();
+
+		assertThat(histograms.timers().size(), is(1));
+		assertThat(value("spplogin.latency.pool-wait.tomcat-exec.acquired.count"), is(2.0));
+	}
+
+	@Test
+	public void 記録できる最大値を超える値は最大値として記録される() throws Exception {
+		histograms.record("smtp", "send", "error", TimeUnit.MINUTES.toNanos(10));
+		histograms.rotate();
+
+		assertThat(value("spplogin.latency.smtp.send.error.max"),
+				is(closeTo(TimeUnit.MINUTES.toMillis(1), TimeUnit.MINUTES.toMillis(1) * 0.01)));
+	}
+
+	@Test
+	public void Prometheus形式で出力される() throws Exception {
+		histograms.record("core", "COR-112", "client-error", TimeUnit.MILLISECONDS.toNanos(20));
+		histograms.rotate();
+
+		final String text = new PrometheusEndpoint(histograms).invoke();
+
+		assertThat(text, containsString("# TYPE spplogin_dependency_latency_seconds summary\n"));
+		assertThat(text, containsString(
+				"spplogin_dependency_latency_seconds{dependency=\"core\",operation=\"COR-112\",outcome=\"client-error\",quantile=\"0.99\"} 0.020"));
+		assertThat(text, containsString(
+				"spplogin_dependency_latency_seconds_count{dependency=\"core\",operation=\"COR-112\",outcome=\"client-error\"} 1\n"));
+		assertThat(text, containsString(
+				"spplogin_dependency_latency_seconds_sum{dependency=\"core\",operation=\"COR-112\",outcome=\"client-error\"} 0.02\n"));
+	}
+
+	@Test
+	public void パスからAPIIDが判定される() throws Exception {
+		final Map<String, String> apiIds = new HashMap<>();
+		apiIds.put("/connect/authorize", "COR-901");
+		apiIds.put("/webapi/v1/SPPMembership", "COR-001");
+		final CoreWebApiTimingInterceptor interceptor = new CoreWebApiTimingInterceptor(histograms, apiIds);
+
+		assertThat(interceptor.apiId("/connect/authorize"), is("COR-901"));
+		assertThat(interceptor.apiId("/webapi/v1/SPPMembership"), is("COR-001"));
+		assertThat(interceptor.apiId("/"), is("other"));
+		assertThat(new CoreWebApiTimingInterceptor(histograms, Collections.emptyMap()).apiId(null), is("other"));
+	}
+
+	private double value(String name) {
+		for (Metric<?> metric : histograms.metrics()) {
+			if (metric.getName().equals(name)) {
+				return metric.getValue().doubleValue();
+			}
+		}
+		throw new AssertionError(name);
+	}
+}
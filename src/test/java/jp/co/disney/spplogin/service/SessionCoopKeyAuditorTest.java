@@ -0,0 +1,57 @@
+package jp.co.disney.spplogin.service;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.mockito.Mockito.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import jp.co.disney.spplogin.redis.RedisLeaderLock;
+
+public class SessionCoopKeyAuditorTest {
+
+	private SessionCoopKeyAuditor auditor;
+	private StringRedisTemplate template;
+	private RedisLeaderLock leaderLock;
+
+	@Before
+	public void setUp() {
+		template = mock(StringRedisTemplate.class);
+		leaderLock = mock(RedisLeaderLock.class);
+		when(leaderLock.getNodeId()).thenReturn("node-1");
+
+		auditor = new SessionCoopKeyAuditor();
+		ReflectionTestUtils.setField(auditor, "coopKeyPrefix", "a1");
+		ReflectionTestUtils.setField(auditor, "batchSize", 100);
+		ReflectionTestUtils.setField(auditor, "stringRedisTemplate", template);
+		ReflectionTestUtils.setField(auditor, "leaderLock", leaderLock);
+	}
+
+	@Test
+	public void 棚卸しを実行していないノードはメトリクスを公開しない() throws Exception {
+		when(leaderLock.acquire()).thenReturn(false);
+
+		auditor.audit();
+
+		verify(template, never()).execute(any(RedisCallback.class));
+		assertThat(auditor.metrics(), is(empty()));
+	}
+
+	@Test
+	public void リーダーではなくなったノードは直近の結果を公開しない() throws Exception {
+		when(leaderLock.acquire()).thenReturn(true);
+		when(leaderLock.isLeader()).thenReturn(true);
+		auditor.audit();
+		assertThat(auditor.metrics(), is(not(empty())));
+
+		when(leaderLock.isLeader()).thenReturn(false);
+
+		assertThat(auditor.metrics(), is(empty()));
+	}
+}
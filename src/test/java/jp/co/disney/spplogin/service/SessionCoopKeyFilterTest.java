@@ -0,0 +1,99 @@
+package jp.co.disney.spplogin.service;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import jp.co.disney.spplogin.redis.RedisReadRouter;
+
+public class SessionCoopKeyFilterTest {
+
+	private static final String CHANNEL = "spplogin:coopkey:created";
+	private static final String OTHER_NODE = "other-node";
+
+	private SessionCoopKeyFilter filter;
+	private StringRedisTemplate stringRedisTemplate;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		stringRedisTemplate = mock(StringRedisTemplate.class);
+		// 再構築時の走査結果は空とする
+		when(stringRedisTemplate.execute(any(RedisCallback.class))).thenReturn(0L);
+
+		filter = new SessionCoopKeyFilter();
+		ReflectionTestUtils.setField(filter, "coopKeyPrefix", "a1");
+		ReflectionTestUtils.setField(filter, "enabled", true);
+		ReflectionTestUtils.setField(filter, "channel", CHANNEL);
+		ReflectionTestUtils.setField(filter, "expectedInsertions", 1000L);
+		ReflectionTestUtils.setField(filter, "fpp", 0.001);
+		ReflectionTestUtils.setField(filter, "batchSize", 100);
+		ReflectionTestUtils.setField(filter, "heartbeatIntervalMillis", 10000L);
+		ReflectionTestUtils.setField(filter, "recentWindowSeconds", 120L);
+		ReflectionTestUtils.setField(filter, "stringRedisTemplate", stringRedisTemplate);
+		ReflectionTestUtils.setField(filter, "redisReadRouter", new RedisReadRouter(stringRedisTemplate));
+
+		filter.rebuild();
+		receive(OTHER_NODE, 1, "#heartbeat");
+	}
+
+	@Test
+	public void 通知されたキーのみ存在する可能性ありと判定する() throws Exception {
+		receive(OTHER_NODE, 2, "a1-created");
+
+		assertThat(filter.mightExist("a1-created"), is(true));
+		assertThat(filter.mightExist("a1-unknown"), is(false));
+	}
+
+	@Test
+	public void 通知を取りこぼした場合は再構築まで全て存在する可能性ありと判定する() throws Exception {
+		// 連番3（a1-missed）を取りこぼした
+		receive(OTHER_NODE, 2, "a1-created");
+		receive(OTHER_NODE, 4, "a1-after");
+
+		assertThat(filter.mightExist("a1-missed"), is(true));
+		assertThat(filter.mightExist("a1-unknown"), is(true));
+
+		// 取りこぼし後に開始した再構築（a1-missedはRedisの走査で取得される）でフィルタを再開する
+		when(stringRedisTemplate.execute(any(RedisCallback.class))).thenReturn(1L);
+		filter.rebuild();
+
+		assertThat(filter.mightExist("a1-unknown"), is(false));
+	}
+
+	@Test
+	public void 通知の送信に失敗した場合は再構築まで全て存在する可能性ありと判定する() throws Exception {
+		doThrow(new RedisConnectionFailureException("connection refused"))
+				.when(stringRedisTemplate).convertAndSend(eq(CHANNEL), anyString());
+
+		filter.onCreated("a1-created");
+
+		assertThat(filter.mightExist("a1-created"), is(true));
+		assertThat(filter.mightExist("a1-unknown"), is(true));
+	}
+
+	@Test
+	public void 作成したキーは連番付きで通知する() throws Exception {
+		filter.onCreated("a1-created");
+		filter.heartbeat();
+
+		verify(stringRedisTemplate).convertAndSend(eq(CHANNEL), endsWith(" 1 a1-created"));
+		verify(stringRedisTemplate).convertAndSend(eq(CHANNEL), endsWith(" 2 #heartbeat"));
+	}
+
+	private void receive(String node, long seq, String body) {
+		filter.onMessage(new DefaultMessage(CHANNEL.getBytes(StandardCharsets.UTF_8),
+				(node + " " + seq + " " + body).getBytes(StandardCharsets.UTF_8)), null);
+	}
+}
@@ -0,0 +1,117 @@
+package jp.co.disney.spplogin.service;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import jp.co.disney.spplogin.Application;
+import jp.co.disney.spplogin.web.model.Guest;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = Application.class)
+@WebAppConfiguration
+@ActiveProfiles("unit")
+public class SessionCoopServiceTest {
+
+	@Autowired
+	private SessionCoopService sessionCoopService;
+
+	@Autowired
+	private StringRedisTemplate stringRedisTemplate;
+
+	@Autowired
+	private RedisTemplate<String, Guest> redisTemplate;
+
+	private final String hashKey = "a1-test-" + UUID.randomUUID();
+	private final String legacyKey = "a1-test-" + UUID.randomUUID();
+	private final String missingKey = "a1-test-" + UUID.randomUUID();
+
+	@After
+	public void tearDown() {
+		stringRedisTemplate.delete(hashKey);
+		stringRedisTemplate.delete(legacyKey);
+	}
+
+	@Test
+	public void ハッシュ形式のレコードが復元される() throws Exception {
+		sessionCoopService.save(hashKey, guest("test@example.com"));
+
+		final Guest guest = sessionCoopService.findForEntry(hashKey);
+
+		assertThat(guest.getMailAddress(), is("test@example.com"));
+		assertThat(guest.getBirthDayYear(), is("2000"));
+	}
+
+	@Test
+	public void 旧形式のレコードが例外に依存せず復元される() throws Exception {
+		redisTemplate.opsForValue().set(legacyKey, guest("legacy@example.com"), 1, TimeUnit.MINUTES);
+
+		final Guest guest = sessionCoopService.findForEntry(legacyKey);
+
+		assertThat(guest.getMailAddress(), is("legacy@example.com"));
+	}
+
+	@Test
+	public void 複数レコードのメールアドレスを一括更新する() throws Exception {
+		sessionCoopService.save(hashKey, guest("before@example.com"));
+		redisTemplate.opsForValue().set(legacyKey, guest("legacy@example.com"), 1, TimeUnit.MINUTES);
+
+		final List<Boolean> results = sessionCoopService.updateMailAddresses(
+				Arrays.asList(hashKey, missingKey, legacyKey),
+				Arrays.asList("hash@example.com", "missing@example.com", "legacy-new@example.com"));
+
+		assertThat(results, contains(true, false, true));
+		assertThat(sessionCoopService.findForEntry(hashKey).getMailAddress(), is("hash@example.com"));
+		assertThat(sessionCoopService.findForEntry(legacyKey).getMailAddress(), is("legacy-new@example.com"));
+		assertThat(stringRedisTemplate.hasKey(missingKey), is(false));
+		assertThat(stringRedisTemplate.getExpire(hashKey), is(greaterThan(0L)));
+	}
+
+	@Test
+	public void Jedisの場合非同期APIは呼び出し元スレッドで完了する() throws Exception {
+		final CompletableFuture<Void> saved = sessionCoopService.saveAsync(hashKey, guest("before@example.com"));
+		assertThat(saved.isDone(), is(true));
+		redisTemplate.opsForValue().set(legacyKey, guest("legacy@example.com"), 1, TimeUnit.MINUTES);
+
+		final CompletableFuture<Boolean> updated = sessionCoopService.updateMailAddressAsync(hashKey, "hash@example.com");
+		final CompletableFuture<List<Boolean>> batch = sessionCoopService.updateMailAddressesAsync(
+				Arrays.asList(missingKey, legacyKey), Arrays.asList("missing@example.com", "legacy-new@example.com"));
+
+		assertThat(updated.isDone(), is(true));
+		assertThat(updated.get(), is(true));
+		assertThat(batch.isDone(), is(true));
+		assertThat(batch.get(), contains(false, true));
+		assertThat(sessionCoopService.findForEntry(hashKey).getMailAddress(), is("hash@example.com"));
+		assertThat(sessionCoopService.findForEntry(legacyKey).getMailAddress(), is("legacy-new@example.com"));
+	}
+
+	@Test
+	public void 存在しないレコードはnull() throws Exception {
+		assertThat(sessionCoopService.findForEntry(missingKey), is(nullValue()));
+	}
+
+	private static Guest guest(String mailAddress) {
+		final Guest guest = new Guest();
+		guest.setBirthDayYear("2000");
+		guest.setBirthDayMonth("1");
+		guest.setBirthDayDay("2");
+		guest.setMailAddress(mailAddress);
+		return guest;
+	}
+}
@@ -0,0 +1,71 @@
+package jp.co.disney.spplogin.session;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.Base64;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.springframework.session.MapSession;
+
+import jp.co.disney.spplogin.web.model.Guest;
+
+public class CookieSessionCodecTest {
+
+	private static final String KEY1 = "1:" + Base64.getEncoder().encodeToString("0123456789abcdef".getBytes());
+	private static final String KEY2 = "2:" + Base64.getEncoder().encodeToString("fedcba9876543210".getBytes());
+
+	@Rule
+	public ExpectedException expectedException = ExpectedException.none();
+
+	@Test
+	public void 暗号化したセッションを復元できる() throws Exception {
+		final CookieSessionCodec codec = new CookieSessionCodec(KEY1, 3800);
+		final Guest guest = new Guest();
+		guest.setBirthDayYear("1989");
+		guest.setMailAddress("test@docomo.ne.jp");
+		final MapSession session = new MapSession();
+		session.setAttribute("scopedTarget.guest", guest);
+
+		final MapSession restored = codec.decode(codec.encode(session));
+
+		assertThat(restored, is(notNullValue()));
+		assertThat(restored.getCreationTime(), is(session.getCreationTime()));
+		assertThat(restored.getAttribute("scopedTarget.guest"), is((Object) guest));
+	}
+
+	@Test
+	public void 改ざんされたCookieは復元しない() throws Exception {
+		final CookieSessionCodec codec = new CookieSessionCodec(KEY1, 3800);
+		final MapSession session = new MapSession();
+		session.setAttribute("key", "value");
+		final char[] value = codec.encode(session).toCharArray();
+		value[value.length - 1] = value[value.length - 1] == 'A' ? 'B' : 'A';
+
+		assertThat(codec.decode(new String(value)), is(nullValue()));
+	}
+
+	@Test
+	public void 鍵の切り替え後も旧鍵のCookieを復元できる() throws Exception {
+		final MapSession session = new MapSession();
+		session.setAttribute("key", "value");
+		final String oldValue = new CookieSessionCodec(KEY1, 3800).encode(session);
+
+		final CookieSessionCodec rotated = new CookieSessionCodec(KEY2 + "," + KEY1, 3800);
+
+		assertThat(rotated.decode(oldValue).getAttribute("key"), is((Object) "value"));
+		assertThat(new CookieSessionCodec(KEY2, 3800).decode(oldValue), is(nullValue()));
+	}
+
+	@Test
+	public void 上限を超えるセッションは保存できない() throws Exception {
+		final CookieSessionCodec codec = new CookieSessionCodec(KEY1, 100);
+		final MapSession session = new MapSession();
+		session.setAttribute("key", new java.math.BigInteger(4096, new java.util.Random(1)).toString(16));
+
+		expectedException.expect(IllegalStateException.class);
+		codec.encode(session);
+	}
+}
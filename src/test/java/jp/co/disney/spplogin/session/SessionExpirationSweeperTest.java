@@ -0,0 +1,105 @@
+package jp.co.disney.spplogin.session;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import jp.co.disney.spplogin.redis.RedisLeaderLock;
+
+public class SessionExpirationSweeperTest {
+
+	private SessionExpirationSweeper sweeper;
+	private RedisOperations<Object, Object> template;
+	private SetOperations<Object, Object> setOperations;
+	private RedisLeaderLock leaderLock;
+	private RedisConnection connection;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		template = mock(RedisOperations.class);
+		setOperations = mock(SetOperations.class);
+		leaderLock = mock(RedisLeaderLock.class);
+		connection = mock(RedisConnection.class);
+		when(template.opsForSet()).thenReturn(setOperations);
+		when(template.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+			((RedisCallback<Object>) invocation.getArguments()[0]).doInRedis(connection);
+			return Collections.emptyList();
+		});
+		when(leaderLock.getNodeId()).thenReturn("node-1");
+
+		sweeper = new SessionExpirationSweeper();
+		ReflectionTestUtils.setField(sweeper, "lookbackMinutes", 0);
+		ReflectionTestUtils.setField(sweeper, "batchSize", 100);
+		ReflectionTestUtils.setField(sweeper, "maxKeysPerSecond", 1000000);
+		ReflectionTestUtils.setField(sweeper, "maxKeysPerRun", 1000);
+		ReflectionTestUtils.setField(sweeper, "sessionRedisTemplate", template);
+		ReflectionTestUtils.setField(sweeper, "leaderLock", leaderLock);
+	}
+
+	@Test
+	public void 期限切れ管理用セットの要素からセッションの期限キーを組み立てる() throws Exception {
+		// spring-sessionは期限切れ管理用セットに "expires:" 付きのIDを格納する
+		assertThat(SessionExpirationSweeper.expiresKey("expires:0123-abcd"),
+				is("spring:session:sessions:expires:0123-abcd"));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void 期限切れセッションのキーにアクセスし処理済みのセットを削除する() throws Exception {
+		final Cursor<Object> cursor = mock(Cursor.class);
+		when(cursor.hasNext()).thenReturn(true, false);
+		when(cursor.next()).thenReturn("expires:0123-abcd");
+		when(leaderLock.acquire()).thenReturn(true);
+		when(template.hasKey(any())).thenReturn(true);
+		when(setOperations.scan(any(), any(ScanOptions.class))).thenReturn(cursor);
+
+		sweeper.sweepNow();
+
+		verify(connection).exists("spring:session:sessions:expires:0123-abcd".getBytes(StandardCharsets.UTF_8));
+		verify(template).delete(startsWith("spring:session:expirations:"));
+		verify(cursor).close();
+	}
+
+	@Test
+	public void リーダーでない場合は掃除しない() throws Exception {
+		when(leaderLock.acquire()).thenReturn(false);
+
+		sweeper.sweepNow();
+
+		verify(leaderLock).acquire();
+		verifyZeroInteractions(template);
+	}
+
+	@Test
+	public void スケジュール実行では専用のスレッドで掃除する() throws Exception {
+		final AtomicReference<Thread> sweptOn = new AtomicReference<>();
+		when(leaderLock.acquire()).thenAnswer(invocation -> {
+			sweptOn.set(Thread.currentThread());
+			return false;
+		});
+		sweeper.start();
+		try {
+			sweeper.sweep();
+			verify(leaderLock, timeout(5000)).acquire();
+		} finally {
+			sweeper.stop();
+		}
+
+		assertThat(sweptOn.get().getName().startsWith("session-sweeper-"), is(true));
+	}
+}
@@ -0,0 +1,53 @@
+package jp.co.disney.spplogin.timing;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class RequestTimingTest {
+
+	@After
+	public void tearDown() {
+		RequestTiming.end();
+	}
+
+	@Test
+	public void 開始していない場合は記録されない() throws Exception {
+		RequestTiming.record("COR-901", TimeUnit.MILLISECONDS.toNanos(10));
+		assertThat(RequestTiming.isActive(), is(false));
+	}
+
+	@Test
+	public void 同じ項目は合算される() throws Exception {
+		final RequestTiming timing = RequestTiming.start();
+		RequestTiming.record("session-load", TimeUnit.MICROSECONDS.toNanos(1200));
+		RequestTiming.record("COR-901", TimeUnit.MILLISECONDS.toNanos(80));
+		RequestTiming.record("session-load", TimeUnit.MICROSECONDS.toNanos(300));
+
+		assertThat(timing.toServerTiming(), startsWith("session-load;dur=1.5, COR-901;dur=80.0, total;dur="));
+		assertThat(timing.toLogFields(), endsWith(" session-load=1.5/2 COR-901=80.0/1"));
+	}
+
+	@Test
+	public void 終了後は記録されない() throws Exception {
+		final RequestTiming timing = RequestTiming.start();
+		RequestTiming.end();
+		RequestTiming.record("validation", TimeUnit.MILLISECONDS.toNanos(1));
+
+		assertThat(timing.toServerTiming(), startsWith("total;dur="));
+	}
+
+	@Test
+	public void 別スレッドでの記録は無視される() throws Exception {
+		final RequestTiming timing = RequestTiming.start();
+		final Thread thread = new Thread(() -> RequestTiming.record("coop-key", TimeUnit.MILLISECONDS.toNanos(1)));
+		thread.start();
+		thread.join();
+
+		assertThat(timing.toLogFields(), not(containsString("coop-key")));
+	}
+}
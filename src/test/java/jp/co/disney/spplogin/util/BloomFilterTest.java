@@ -0,0 +1,47 @@
+package jp.co.disney.spplogin.util;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class BloomFilterTest {
+
+	@Test
+	public void 追加した要素は必ず存在すると判定される() throws Exception {
+		final BloomFilter filter = new BloomFilter(10000, 0.01);
+		final String[] values = new String[10000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = "coop_" + UUID.randomUUID().toString().replace("-", "");
+			filter.put(values[i]);
+		}
+		for (String value : values) {
+			assertThat(filter.mightContain(value), is(true));
+		}
+	}
+
+	@Test
+	public void 誤判定率が想定の範囲に収まる() throws Exception {
+		final BloomFilter filter = new BloomFilter(10000, 0.01);
+		for (int i = 0; i < 10000; i++) {
+			filter.put("coop_" + UUID.randomUUID().toString().replace("-", ""));
+		}
+		int falsePositives = 0;
+		for (int i = 0; i < 100000; i++) {
+			if (filter.mightContain("bogus_" + UUID.randomUUID().toString().replace("-", ""))) {
+				falsePositives++;
+			}
+		}
+		assertThat(falsePositives / 100000.0, is(lessThan(0.02)));
+		assertThat(filter.expectedFpp(), is(both(greaterThan(0.005)).and(lessThan(0.02))));
+	}
+
+	@Test
+	public void 空のフィルタは全て存在しないと判定する() throws Exception {
+		final BloomFilter filter = new BloomFilter(1000, 0.01);
+		assertThat(filter.mightContain("coop_abc"), is(false));
+		assertThat(filter.expectedFpp(), is(0.0));
+	}
+}
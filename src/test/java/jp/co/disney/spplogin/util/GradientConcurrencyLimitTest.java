@@ -0,0 +1,105 @@
+package jp.co.disney.spplogin.util;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class GradientConcurrencyLimitTest {
+
+	private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	@Test
+	public void 上限を超える取得は拒否される() throws Exception {
+		final GradientConcurrencyLimit limit = new GradientConcurrencyLimit(2, 1, 10, 0.2, 1000, 10, 10, 1.5);
+		assertThat(limit.tryAcquire(), is(true));
+		assertThat(limit.tryAcquire(), is(true));
+		assertThat(limit.tryAcquire(), is(false));
+		limit.release(TimeUnit.MILLISECONDS.toNanos(50), System.nanoTime());
+		assertThat(limit.tryAcquire(), is(true));
+		assertThat(limit.inFlight(), is(2));
+	}
+
+	@Test
+	public void 応答時間が安定していれば上限が増える() throws Exception {
+		final GradientConcurrencyLimit limit = new GradientConcurrencyLimit(20, 10, 400, 0.5, 1000, 1, 10, 1.5);
+		long now = System.nanoTime();
+		for (int window = 0; window < 10; window++) {
+			now = runWindow(limit, now, 50);
+		}
+		assertThat(limit.limit(), is(greaterThan(20)));
+	}
+
+	@Test
+	public void 応答時間が悪化すると上限が下がる() throws Exception {
+		final GradientConcurrencyLimit limit = new GradientConcurrencyLimit(100, 10, 400, 0.5, 1000, 1, 20, 1.5);
+		long now = System.nanoTime();
+		for (int window = 0; window < 5; window++) {
+			now = runWindow(limit, now, 50);
+		}
+		final int before = limit.limit();
+		for (int window = 0; window < 10; window++) {
+			now = runWindow(limit, now, 2000);
+		}
+		assertThat(limit.limit(), is(lessThan(before / 2)));
+		assertThat(limit.limit(), is(greaterThanOrEqualTo(10)));
+	}
+
+	@Test
+	public void 遅延が続いても上限は元に戻らない() throws Exception {
+		final GradientConcurrencyLimit limit = new GradientConcurrencyLimit(50, 10, 100, 0.2, 1000, 1, 60, 1.5);
+		long now = System.nanoTime();
+		for (int window = 0; window < 5; window++) {
+			now = runWindow(limit, now, 50);
+		}
+		// 長期の指数移動平均のウィンドウ数を大きく超えて遅延が続く
+		for (int window = 0; window < 300; window++) {
+			now = runWindow(limit, now, 2000);
+		}
+		assertThat(limit.limit(), is(lessThan(50)));
+		assertThat(limit.longRttMillis(), is(lessThan(2000.0 / 1.5)));
+	}
+
+	@Test
+	public void 許容範囲内の応答時間の変動では上限を下げない() throws Exception {
+		final GradientConcurrencyLimit limit = new GradientConcurrencyLimit(50, 10, 100, 0.5, 1000, 1, 10, 1.5);
+		long now = System.nanoTime();
+		for (int window = 0; window < 5; window++) {
+			now = runWindow(limit, now, 50);
+		}
+		final int before = limit.limit();
+		for (int window = 0; window < 5; window++) {
+			now = runWindow(limit, now, 70);
+		}
+		assertThat(limit.limit(), is(greaterThanOrEqualTo(before)));
+	}
+
+	@Test
+	public void 使用率が低い間は上限を増やさない() throws Exception {
+		final GradientConcurrencyLimit limit = new GradientConcurrencyLimit(100, 10, 400, 0.5, 1000, 1, 10, 1.5);
+		long now = System.nanoTime();
+		for (int window = 0; window < 10; window++) {
+			now += WINDOW_NANOS;
+			for (int i = 0; i < 5; i++) {
+				assertThat(limit.tryAcquire(), is(true));
+				limit.release(TimeUnit.MILLISECONDS.toNanos(50), now);
+			}
+		}
+		assertThat(limit.limit(), is(100));
+	}
+
+	/** 上限まで同時に実行し、ウィンドウの終了時に全て解放する */
+	private static long runWindow(GradientConcurrencyLimit limit, long now, long rttMillis) {
+		final long next = now + WINDOW_NANOS;
+		int acquired = 0;
+		while (limit.tryAcquire()) {
+			acquired++;
+		}
+		for (int i = 0; i < acquired; i++) {
+			limit.release(TimeUnit.MILLISECONDS.toNanos(rttMillis), next);
+		}
+		return next;
+	}
+}
@@ -0,0 +1,75 @@
+package jp.co.disney.spplogin.util;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import jp.co.disney.spplogin.util.PriorityGate.Priority;
+
+public class PriorityGateTest {
+
+	@Test
+	public void 下位の優先度は予約分を使用できない() throws Exception {
+		final PriorityGate gate = new PriorityGate(4, 1, 1, new int[] { 10, 10, 10 });
+		assertThat(gate.tryAcquire(Priority.LOW, 0, TimeUnit.MILLISECONDS), is(true));
+		assertThat(gate.tryAcquire(Priority.LOW, 0, TimeUnit.MILLISECONDS), is(true));
+		assertThat(gate.tryAcquire(Priority.LOW, 0, TimeUnit.MILLISECONDS), is(false));
+		assertThat(gate.tryAcquire(Priority.NORMAL, 0, TimeUnit.MILLISECONDS), is(true));
+		assertThat(gate.tryAcquire(Priority.NORMAL, 0, TimeUnit.MILLISECONDS), is(false));
+		assertThat(gate.tryAcquire(Priority.HIGH, 0, TimeUnit.MILLISECONDS), is(true));
+		assertThat(gate.tryAcquire(Priority.HIGH, 0, TimeUnit.MILLISECONDS), is(false));
+		assertThat(gate.inFlight(), is(4));
+	}
+
+	@Test
+	public void 実行枠が空くと上位の優先度の待機者から実行される() throws Exception {
+		final PriorityGate gate = new PriorityGate(1, 0, 0, new int[] { 10, 10, 10 });
+		assertThat(gate.tryAcquire(Priority.HIGH, 0, TimeUnit.MILLISECONDS), is(true));
+
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			final Future<Boolean> low = executor.submit(() -> gate.tryAcquire(Priority.LOW, 5, TimeUnit.SECONDS));
+			waitFor(gate, Priority.LOW);
+			final Future<Boolean> high = executor.submit(() -> gate.tryAcquire(Priority.HIGH, 5, TimeUnit.SECONDS));
+			waitFor(gate, Priority.HIGH);
+
+			gate.release();
+			assertThat(high.get(5, TimeUnit.SECONDS), is(true));
+			assertThat(low.isDone(), is(false));
+
+			gate.release();
+			assertThat(low.get(5, TimeUnit.SECONDS), is(true));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void 待機者数の上限を超えると待たずに拒否される() throws Exception {
+		final PriorityGate gate = new PriorityGate(1, 0, 0, new int[] { 10, 10, 0 });
+		assertThat(gate.tryAcquire(Priority.NORMAL, 0, TimeUnit.MILLISECONDS), is(true));
+		final long start = System.nanoTime();
+		assertThat(gate.tryAcquire(Priority.LOW, 5, TimeUnit.SECONDS), is(false));
+		assertThat(System.nanoTime() - start, is(lessThan(TimeUnit.SECONDS.toNanos(1))));
+	}
+
+	@Test
+	public void 待機がタイムアウトすると拒否される() throws Exception {
+		final PriorityGate gate = new PriorityGate(1, 0, 0, new int[] { 10, 10, 10 });
+		assertThat(gate.tryAcquire(Priority.HIGH, 0, TimeUnit.MILLISECONDS), is(true));
+		assertThat(gate.tryAcquire(Priority.LOW, 50, TimeUnit.MILLISECONDS), is(false));
+		assertThat(gate.waiting(Priority.LOW), is(0));
+	}
+
+	private static void waitFor(PriorityGate gate, Priority priority) throws InterruptedException {
+		for (int i = 0; i < 500 && gate.waiting(priority) == 0; i++) {
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+	}
+}
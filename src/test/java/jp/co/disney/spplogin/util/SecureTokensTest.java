@@ -0,0 +1,38 @@
+package jp.co.disney.spplogin.util;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class SecureTokensTest {
+
+	@Test
+	public void 指定したバイト数の16進トークンを生成する() throws Exception {
+		assertThat(SecureTokens.hex(16).matches("^[0-9a-f]{32}$"), is(true));
+		assertThat(SecureTokens.hex(1).length(), is(2));
+	}
+
+	@Test
+	public void 指定したバイト数のbase64urlトークンを生成する() throws Exception {
+		for (int bytes = 1; bytes <= 33; bytes++) {
+			final String token = SecureTokens.base64Url(bytes);
+			assertThat(token.matches("^[A-Za-z0-9_-]+$"), is(true));
+			// 標準のデコーダで復元できること
+			assertThat(Base64.getUrlDecoder().decode(token).length, is(bytes));
+		}
+	}
+
+	@Test
+	public void 重複しない() throws Exception {
+		final Set<String> tokens = new HashSet<>();
+		for (int i = 0; i < 10000; i++) {
+			tokens.add(SecureTokens.hex(16));
+		}
+		assertThat(tokens.size(), is(10000));
+	}
+}
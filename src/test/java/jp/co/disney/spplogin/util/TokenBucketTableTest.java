@@ -0,0 +1,91 @@
+package jp.co.disney.spplogin.util;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TokenBucketTableTest {
+
+	@Test
+	public void バケットの容量を超えると拒否される() throws Exception {
+		final TokenBucketTable table = new TokenBucketTable(1024, 5, 1.0);
+		final long key = TokenBucketTable.key("192.0.2.1");
+		final long now = System.currentTimeMillis();
+		for (int i = 0; i < 5; i++) {
+			assertThat(table.tryAcquire(key, now), is(true));
+		}
+		assertThat(table.tryAcquire(key, now), is(false));
+	}
+
+	@Test
+	public void 時間の経過でトークンが回復する() throws Exception {
+		final TokenBucketTable table = new TokenBucketTable(1024, 2, 0.5);
+		final long key = TokenBucketTable.key("member");
+		final long now = System.currentTimeMillis();
+		assertThat(table.tryAcquire(key, now), is(true));
+		assertThat(table.tryAcquire(key, now), is(true));
+		assertThat(table.tryAcquire(key, now + 1000), is(false));
+		assertThat(table.tryAcquire(key, now + 2000), is(true));
+		assertThat(table.tryAcquire(key, now + 2000), is(false));
+	}
+
+	@Test
+	public void キー毎に独立して制限される() throws Exception {
+		final TokenBucketTable table = new TokenBucketTable(1024, 1, 1.0);
+		final long now = System.currentTimeMillis();
+		assertThat(table.tryAcquire(TokenBucketTable.key("a"), now), is(true));
+		assertThat(table.tryAcquire(TokenBucketTable.key("a"), now), is(false));
+		assertThat(table.tryAcquire(TokenBucketTable.key("b"), now), is(true));
+	}
+
+	@Test
+	public void 回復済みのスロットは別のキーに再利用される() throws Exception {
+		final TokenBucketTable table = new TokenBucketTable(16, 1, 1.0);
+		final long now = System.currentTimeMillis();
+		for (int i = 0; i < 16; i++) {
+			assertThat(table.tryAcquire(i + 1, now), is(true));
+		}
+		// 全スロット使用中かつ回復前のため制限せずに許可する
+		assertThat(table.tryAcquire(100, now), is(true));
+		assertThat(table.overflows(), is(1L));
+		// 回復後は再利用できる
+		assertThat(table.tryAcquire(100, now + 1000), is(true));
+		assertThat(table.tryAcquire(100, now + 1000), is(false));
+		assertThat(table.overflows(), is(1L));
+	}
+
+	@Test
+	public void 複数スレッドから同時に取得しても容量を超えて許可しない() throws Exception {
+		final TokenBucketTable table = new TokenBucketTable(1024, 100, 0.001);
+		final long key = TokenBucketTable.key("203.0.113.5");
+		final long now = System.currentTimeMillis();
+		final AtomicInteger acquired = new AtomicInteger();
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		final CountDownLatch start = new CountDownLatch(1);
+		for (int t = 0; t < 8; t++) {
+			executor.execute(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < 1000; i++) {
+					if (table.tryAcquire(key, now)) {
+						acquired.incrementAndGet();
+					}
+				}
+			});
+		}
+		start.countDown();
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+		assertThat(acquired.get(), is(100));
+	}
+}